@@ -0,0 +1,119 @@
+package com.medallia.word2vec.benchmark;
+
+import com.medallia.word2vec.NormalizedWord2VecModel;
+import com.medallia.word2vec.Word2VecModel;
+import com.medallia.word2vec.thrift.Word2VecModelThrift;
+import com.medallia.word2vec.util.SyntheticModel;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to load a model in each supported format, and to normalize it for search. The inputs are
+ * {@link SyntheticModel}s written to a temporary directory at trial setup, and are deleted afterwards.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ModelLoadBenchmark {
+	@Param({ "10000", "100000" })
+	public int vocabSize;
+
+	@Param({ "100", "300" })
+	public int layerSize;
+
+	private File dir;
+	private File binFile;
+	private File textFile;
+	private Word2VecModel model;
+	private Word2VecModelThrift thrift;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		dir = Files.createTempDirectory("word2vec-benchmark").toFile();
+		binFile = new File(dir, "model.bin");
+		SyntheticModel.writeBinFile(binFile, vocabSize, layerSize, 42);
+		model = Word2VecModel.fromBinFile(binFile);
+		thrift = model.toThrift();
+
+		textFile = new File(dir, "model.txt");
+		writeTextFile(thrift, textFile);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(dir);
+	}
+
+	@Benchmark
+	public Word2VecModel fromBinFile() throws IOException {
+		return Word2VecModel.fromBinFile(binFile);
+	}
+
+	/** Loads the most frequent tenth of the vocabulary, with half the dimensions */
+	@Benchmark
+	public Word2VecModel fromBinFilePartial() throws IOException {
+		return Word2VecModel.loader().setMaxVocabSize(vocabSize / 10).setMaxLayerSize(layerSize / 2).fromBinFile(binFile);
+	}
+
+	@Benchmark
+	public Word2VecModel fromTextFile() throws IOException {
+		return Word2VecModel.fromTextFile(textFile);
+	}
+
+	/** Loads the most frequent tenth of the vocabulary, with half the dimensions */
+	@Benchmark
+	public Word2VecModel fromTextFilePartial() throws IOException {
+		return Word2VecModel.loader().setMaxVocabSize(vocabSize / 10).setMaxLayerSize(layerSize / 2).fromTextFile(textFile);
+	}
+
+	@Benchmark
+	public Word2VecModel fromThrift() {
+		return Word2VecModel.fromThrift(thrift);
+	}
+
+	@Benchmark
+	public Word2VecModelThrift toThrift() {
+		return model.toThrift();
+	}
+
+	@Benchmark
+	public NormalizedWord2VecModel normalize() {
+		return NormalizedWord2VecModel.fromWord2VecModel(model);
+	}
+
+	/** Writes the model in the text output format of the C version of word2vec */
+	private static void writeTextFile(Word2VecModelThrift thrift, File file) throws IOException {
+		final int layerSize = thrift.getLayerSize();
+		try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+			writer.write(String.format("%d %d\n", thrift.getVocabSize(), layerSize));
+			for (int i = 0; i < thrift.getVocabSize(); i++) {
+				writer.write(thrift.getVocab().get(i));
+				for (int j = 0; j < layerSize; j++)
+					writer.write(String.format(" %f", thrift.getVectors().get(i * layerSize + j)));
+				writer.write('\n');
+			}
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package com.medallia.word2vec.benchmark;
+
+import com.medallia.word2vec.NormalizedWord2VecModel;
+import com.medallia.word2vec.Searcher;
+import com.medallia.word2vec.Searcher.Match;
+import com.medallia.word2vec.Word2VecModel;
+import com.medallia.word2vec.util.SyntheticModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of {@link Searcher} queries over {@link SyntheticModel}s. Every call queries the next word of the
+ * vocabulary, so results are not served from the CPU caches of the previous query.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SearchBenchmark {
+	@Param({ "10000", "100000" })
+	public int vocabSize;
+
+	@Param({ "100", "300" })
+	public int layerSize;
+
+	@Param({ "1", "10", "100" })
+	public int maxMatches;
+
+	private Searcher searcher;
+	private String[] words;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		File file = File.createTempFile("word2vec-benchmark", ".bin");
+		Word2VecModel model;
+		try {
+			SyntheticModel.writeBinFile(file, vocabSize, layerSize, 42);
+			model = Word2VecModel.fromBinFile(file);
+		} finally {
+			file.delete();
+		}
+		searcher = NormalizedWord2VecModel.fromWord2VecModel(model).forSearch();
+		words = new String[vocabSize];
+		int i = 0;
+		for (String word : model.getVocab())
+			words[i++] = word;
+	}
+
+	@Benchmark
+	public List<Match> getMatches() {
+		return searcher.getMatches(nextWord(), maxMatches);
+	}
+
+	@Benchmark
+	public float cosineDistance() {
+		return searcher.cosineDistance(nextWord(), nextWord());
+	}
+
+	private String nextWord() {
+		next = next + 1 == words.length ? 0 : next + 1;
+		return words[next];
+	}
+}
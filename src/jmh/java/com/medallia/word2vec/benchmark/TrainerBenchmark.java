@@ -0,0 +1,83 @@
+package com.medallia.word2vec.benchmark;
+
+import com.medallia.word2vec.Word2VecModel;
+import com.medallia.word2vec.Word2VecTrainerBuilder;
+import com.medallia.word2vec.neuralnetwork.NeuralNetworkType;
+import com.medallia.word2vec.util.SyntheticCorpus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Training throughput of {@link Word2VecTrainerBuilder} in words per second, reported by the
+ * {@code words} counter of {@link WordCounters}. Each invocation trains one iteration over a
+ * {@link SyntheticCorpus}, whose word frequencies follow Zipf's law like natural text.
+ * <p>
+ * Run with {@code ./gradlew jmh} or {@code mvn -P jmh test-compile exec:exec}, both of which enable the
+ * GC profiler to report the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class TrainerBenchmark {
+	@Param({ "CBOW", "SKIP_GRAM" })
+	public NeuralNetworkType type;
+
+	/** Either hierarchical softmax, or negative sampling with 5 samples */
+	@Param({ "hs", "neg" })
+	public String objective;
+
+	@Param({ "1", "4" })
+	public int numThreads;
+
+	@Param({ "100", "300" })
+	public int layerSize;
+
+	@Param({ "1000000" })
+	public int corpusSize;
+
+	@Param({ "10000" })
+	public int vocabSize;
+
+	private SyntheticCorpus corpus;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		corpus = SyntheticCorpus.builder()
+				.setVocabSize(vocabSize)
+				.setNumTokens(corpusSize)
+				.build();
+	}
+
+	@Benchmark
+	public Word2VecModel train(WordCounters counters) throws InterruptedException {
+		Word2VecTrainerBuilder builder = Word2VecModel.trainer()
+				.type(type)
+				.setLayerSize(layerSize)
+				.useNumThreads(numThreads)
+				.setNumIterations(1)
+				.setListener((stage, progress) -> { });
+		if (objective.equals("hs"))
+			builder.useHierarchicalSoftmax();
+		else
+			builder.useNegativeSamples(5);
+
+		Word2VecModel model = builder.train(corpus);
+		counters.words += corpusSize;
+		return model;
+	}
+}
@@ -0,0 +1,76 @@
+package com.medallia.word2vec.benchmark;
+
+import com.medallia.word2vec.Word2VecModel;
+import com.medallia.word2vec.Word2VecTrainerBuilder;
+import com.medallia.word2vec.neuralnetwork.NeuralNetworkType;
+import com.medallia.word2vec.util.SyntheticCorpus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scaling of training throughput with the number of threads, in words per second reported by the
+ * {@code words} counter of {@link WordCounters}, with updates of the hot rows written directly
+ * ({@code hotRows = 0}) or buffered per thread with {@link Word2VecTrainerBuilder#useHotRowBuffers(int)}.
+ * <p>
+ * Only meaningful on a machine with at least as many cores as the largest number of threads. Compare
+ * the curves of both settings: direct updates flatten out once the rows of the most frequent words
+ * bounce between cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class TrainerScalingBenchmark {
+	@Param({ "1", "2", "4", "8", "16", "32" })
+	public int numThreads;
+
+	@Param({ "0", "1000" })
+	public int hotRows;
+
+	@Param({ "SKIP_GRAM" })
+	public NeuralNetworkType type;
+
+	@Param({ "4000000" })
+	public int corpusSize;
+
+	@Param({ "30000" })
+	public int vocabSize;
+
+	private SyntheticCorpus corpus;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		corpus = SyntheticCorpus.builder()
+				.setVocabSize(vocabSize)
+				.setNumTokens(corpusSize)
+				.build();
+	}
+
+	@Benchmark
+	public Word2VecModel train(WordCounters counters) throws InterruptedException {
+		Word2VecModel model = Word2VecModel.trainer()
+				.type(type)
+				.useNumThreads(numThreads)
+				.useNegativeSamples(5)
+				.useHotRowBuffers(hotRows)
+				.setNumIterations(1)
+				.setListener((stage, progress) -> { })
+				.train(corpus);
+		counters.words += corpusSize;
+		return model;
+	}
+}
@@ -0,0 +1,22 @@
+package com.medallia.word2vec.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Words processed by the training benchmarks. As operations counters, they are divided by the time of
+ * the iteration, so throughput benchmarks report words per second next to their primary score.
+ */
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+@State(Scope.Thread)
+public class WordCounters {
+	public long words;
+
+	@Setup(Level.Iteration)
+	public void reset() {
+		words = 0;
+	}
+}
@@ -0,0 +1,141 @@
+package com.medallia.word2vec;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.primitives.Floats;
+
+import java.nio.FloatBuffer;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Base of the {@link Searcher}s which scan the normalized vectors of a list of words. Implements the
+ * lookups of words and vectors, and the queries built on {@link #getVector(int, float[])} and
+ * {@link #getMatches(float[], int, Set)}.
+ */
+abstract class AbstractSearcher implements Searcher {
+	final List<String> vocab;
+	final int layerSize;
+
+	/**
+	 * @param vocab words of the rows, looked up with {@link List#indexOf(Object)} unless
+	 * {@link #getWordIndex(String)} is overridden
+	 */
+	AbstractSearcher(List<String> vocab, int layerSize) {
+		this.vocab = vocab;
+		this.layerSize = layerSize;
+	}
+
+	/** Copies the normalized vector of the given row into dest */
+	abstract void getVector(int row, float[] dest);
+
+	/**
+	 * Scans the vectors of all words with {@link #dot(int, float[], float[])}
+	 *
+	 * @param ignored words to leave out of the result
+	 * @return Top matches to the given normalized vector
+	 */
+	List<Match> getMatches(float[] vec, int maxMatches, Set<String> ignored) {
+		// Ignored words are dropped after the scan, so make room for them
+		final TopMatches top = new TopMatches(Math.min(vocab.size(), maxMatches + ignored.size()));
+		final float[] scratch = new float[layerSize];
+		for (int row = 0; row < vocab.size(); row++)
+			top.offer(row, dot(row, vec, scratch));
+		return top.toMatches(vocab, ignored, maxMatches);
+	}
+
+	/**
+	 * @param scratch array of {@link #layerSize} floats which may be overwritten
+	 * @return Dot product of the given vector and the normalized vector of the given row
+	 */
+	float dot(int row, float[] vec, float[] scratch) {
+		getVector(row, scratch);
+		return dot(vec, scratch);
+	}
+
+	@Override public boolean contains(String word) {
+		return getWordIndex(word) != -1;
+	}
+
+	@Override public ImmutableList<Float> getRawVector(String word) throws UnknownWordException {
+		return ImmutableList.copyOf(Floats.asList(getVector(word)));
+	}
+
+	@Override public List<Match> getMatches(String word, int maxMatches) throws UnknownWordException {
+		return getMatches(getVector(word), maxMatches, ImmutableSet.of(word));
+	}
+
+	@Override public List<Match> getMatchesFromVector(float[] wordVector, int maxMatches, Set<String> ignored) {
+		return getMatches(wordVector, maxMatches, ignored);
+	}
+
+	@Override public float cosineDistance(String s1, String s2) throws UnknownWordException {
+		return dot(getVector(s1), getVector(s2));
+	}
+
+	@Override public SemanticDifference similarity(String s1, String s2) throws UnknownWordException {
+		final float[] v1 = getVector(s1);
+		final float[] v2 = getVector(s2);
+		final float[] diff = new float[layerSize];
+		for (int i = 0; i < layerSize; i++)
+			diff[i] = v1[i] - v2[i];
+
+		return (word, maxMatches) -> {
+			final float[] target = getVector(word);
+			for (int i = 0; i < layerSize; i++)
+				target[i] -= diff[i];
+			return getMatches(target, maxMatches, ImmutableSet.of(word));
+		};
+	}
+
+	@Override public int getLayerSize() {
+		return layerSize;
+	}
+
+	@Override public int getWordIndex(String word) {
+		return vocab.indexOf(word);
+	}
+
+	@Override public void getRawVector(String word, float[] dest) throws UnknownWordException {
+		getVector(getRow(word), dest);
+	}
+
+	@Override public void getRawVector(int index, float[] dest) {
+		Preconditions.checkElementIndex(index, vocab.size());
+		getVector(index, dest);
+	}
+
+	/** Returns a read-only copy, since the vectors are not stored as floats */
+	@Override public FloatBuffer getRawVectorBuffer(String word) throws UnknownWordException {
+		return FloatBuffer.wrap(getVector(word)).asReadOnlyBuffer();
+	}
+
+	/**
+	 * @return Row of the given word
+	 * @throws UnknownWordException If word is not in the vocabulary
+	 */
+	int getRow(String word) throws UnknownWordException {
+		final int row = getWordIndex(word);
+		if (row == -1)
+			throw new UnknownWordException(word);
+		return row;
+	}
+
+	/**
+	 * @return Normalized vector for the given word
+	 * @throws UnknownWordException If word is not in the vocabulary
+	 */
+	float[] getVector(String word) throws UnknownWordException {
+		final float[] vec = new float[layerSize];
+		getVector(getRow(word), vec);
+		return vec;
+	}
+
+	private static float dot(float[] v1, float[] v2) {
+		float d = 0;
+		for (int i = 0; i < v1.length; i++)
+			d += v1[i] * v2[i];
+		return d;
+	}
+}
@@ -0,0 +1,271 @@
+package com.medallia.word2vec;
+
+import com.google.common.base.Preconditions;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.medallia.word2vec.util.AutoLog;
+import com.medallia.word2vec.util.DirectBuffers;
+import org.apache.commons.logging.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Sidecar index of a file in the binary format of the C version of word2vec, giving random access to
+ * the words and vectors of the file without loading it.
+ * <p>
+ * The index is built once with {@link #build(File, ByteOrder)} and written next to the bin file. It
+ * holds, after a small header, the byte offset and length of every word in the bin file, and an open
+ * addressing hash table from the UTF-8 bytes of the words to their rows. Both the index and the bin
+ * file are memory mapped when opened, so the only pages read from disk are the ones needed by
+ * lookups, and opening takes the same time for any size of model. Closing the index unmaps both
+ * files right away, after which neither the index nor its searchers may be used.
+ */
+public class BinFileIndex implements Closeable {
+	private static final Log LOG = AutoLog.getLog();
+
+	/** Suffix of the index file next to the bin file, see {@link #fileFor(File)} */
+	public static final String FILE_SUFFIX = ".index";
+
+	static final int MAGIC = 0x57324249;
+	static final int VERSION = 1;
+	/** Magic, version, vocab size, layer size, byte order, hash table size and bin file size */
+	private static final int HEADER_SIZE = 6 * 4 + 8;
+	private static final HashFunction HASH = Hashing.murmur3_32();
+
+	final int vocabSize;
+	final int layerSize;
+	private final ByteOrder byteOrder;
+	private final MappedFile bin;
+	/** Mapping of the index file, which the buffers below are views of */
+	private final MappedByteBuffer data;
+	private final LongBuffer wordOffsets;
+	private final IntBuffer wordLengths;
+	/** Rows plus one of the words, at the slot of their hash or after it; zero for empty slots */
+	private final IntBuffer table;
+
+	private BinFileIndex(int vocabSize, int layerSize, ByteOrder byteOrder, MappedFile bin, MappedByteBuffer data) {
+		this.vocabSize = vocabSize;
+		this.layerSize = layerSize;
+		this.byteOrder = byteOrder;
+		this.bin = bin;
+		this.data = data;
+		this.wordOffsets = slice(data, 0).asLongBuffer();
+		this.wordLengths = slice(data, 8L * vocabSize).asIntBuffer();
+		this.table = slice(data, 12L * vocabSize).asIntBuffer();
+	}
+
+	/** @return File holding the index of the given bin file */
+	public static File fileFor(File binFile) {
+		return new File(binFile.getPath() + FILE_SUFFIX);
+	}
+
+	/** Forwards to {@link #build(File, ByteOrder)} with the default ByteOrder.LITTLE_ENDIAN */
+	public static void build(File binFile) throws IOException {
+		build(binFile, ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Scans the given bin file, with floats of the given byte order, and writes its index to
+	 * {@link #fileFor(File)}, replacing any previous index
+	 */
+	public static void build(File binFile, ByteOrder byteOrder) throws IOException {
+		final MappedFile bin;
+		try (RandomAccessFile raf = new RandomAccessFile(binFile, "r")) {
+			bin = new MappedFile(raf.getChannel());
+		}
+
+		try {
+			long pos = 0;
+			while (pos < bin.size && bin.get(pos) != '\n')
+				pos++;
+			checkState(pos < bin.size, binFile, "Expected a header line");
+			final String firstLine = bin.decode(0, (int) pos);
+			final int index = firstLine.indexOf(' ');
+			checkState(index != -1, binFile, "Expected a space in the first line: '%s'", firstLine);
+			final int vocabSize = Integer.parseInt(firstLine.substring(0, index).trim());
+			final int layerSize = Integer.parseInt(firstLine.substring(index + 1).trim());
+
+			final int tableSize = tableSize(vocabSize);
+			checkState(dataSize(vocabSize, tableSize) <= Integer.MAX_VALUE, binFile, "Too many words to index: %s", vocabSize);
+			final ByteBuffer buffer = ByteBuffer.allocate((int) dataSize(vocabSize, tableSize)).order(ByteOrder.LITTLE_ENDIAN);
+			final LongBuffer wordOffsets = buffer.asLongBuffer();
+			final IntBuffer wordLengths = slice(buffer, 8L * vocabSize).asIntBuffer();
+			final IntBuffer table = slice(buffer, 12L * vocabSize).asIntBuffer();
+
+			final ByteBuffer[] views = bin.views();
+			final long vectorBytes = 4L * layerSize;
+			int duplicates = 0;
+			pos++;
+			for (int row = 0; row < vocabSize; row++) {
+				// Some files have a newline after each vector, some don't
+				while (pos < bin.size && bin.get(pos) == '\n')
+					pos++;
+				final long start = pos;
+				while (pos < bin.size && bin.get(pos) != ' ')
+					pos++;
+				checkState(pos + vectorBytes < bin.size, binFile, "Expected %s words, but the file ends at word %s", vocabSize, row);
+				final int length = (int) (pos - start);
+				wordOffsets.put(row, start);
+				wordLengths.put(row, length);
+				pos += 1 + vectorBytes;
+
+				final byte[] word = new byte[length];
+				MappedFile.read(views, start, word, length);
+				int slot = HASH.hashBytes(word).asInt() & (tableSize - 1);
+				while (table.get(slot) != 0 && !matches(table.get(slot) - 1, word, bin, wordOffsets, wordLengths))
+					slot = (slot + 1) & (tableSize - 1);
+				// The first of duplicate words wins, like in the C version
+				if (table.get(slot) == 0)
+					table.put(slot, row + 1);
+				else
+					duplicates++;
+			}
+			if (duplicates > 0)
+				LOG.warn(String.format("Bin file '%s' has %d duplicate words", binFile.getAbsolutePath(), duplicates));
+
+			final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC).putInt(VERSION).putInt(vocabSize).putInt(layerSize)
+					.putInt(byteOrder == ByteOrder.LITTLE_ENDIAN ? 0 : 1).putInt(tableSize).putLong(bin.size);
+			header.flip();
+
+			// Written next to the final file and moved there, so readers never see a partial index
+			final File indexFile = fileFor(binFile);
+			final File tmpFile = new File(indexFile.getPath() + ".tmp");
+			try (RandomAccessFile raf = new RandomAccessFile(tmpFile, "rw")) {
+				raf.setLength(0);
+				final FileChannel channel = raf.getChannel();
+				while (header.hasRemaining())
+					channel.write(header);
+				while (buffer.hasRemaining())
+					channel.write(buffer);
+			}
+			Files.move(tmpFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			bin.close();
+		}
+	}
+
+	/**
+	 * @return {@link BinFileIndex} of the given bin file, memory mapped from {@link #fileFor(File)}
+	 * @throws IllegalStateException if the index is missing or was built for a different file
+	 */
+	public static BinFileIndex open(File binFile) throws IOException {
+		final File indexFile = fileFor(binFile);
+		checkState(indexFile.exists(), binFile, "No index, build it first");
+		final MappedFile bin;
+		try (RandomAccessFile raf = new RandomAccessFile(binFile, "r")) {
+			bin = new MappedFile(raf.getChannel());
+		}
+		try (RandomAccessFile raf = new RandomAccessFile(indexFile, "r")) {
+			final FileChannel channel = raf.getChannel();
+			final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+			}
+			header.flip();
+			checkState(header.remaining() == HEADER_SIZE && header.getInt() == MAGIC && header.getInt() == VERSION,
+					binFile, "File '%s' is not an index", indexFile.getAbsolutePath());
+			final int vocabSize = header.getInt();
+			final int layerSize = header.getInt();
+			final ByteOrder byteOrder = header.getInt() == 0 ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+			final int tableSize = header.getInt();
+			final long binSize = header.getLong();
+			checkState(binSize == bin.size && channel.size() == HEADER_SIZE + dataSize(vocabSize, tableSize),
+					binFile, "Index '%s' was built for a different file", indexFile.getAbsolutePath());
+
+			final MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, dataSize(vocabSize, tableSize));
+			return new BinFileIndex(vocabSize, layerSize, byteOrder, bin, data);
+		} catch (IOException | RuntimeException e) {
+			// Closed with the index otherwise
+			bin.close();
+			throw e;
+		}
+	}
+
+	/** @return Number of words in the bin file */
+	public int getVocabSize() {
+		return vocabSize;
+	}
+
+	/** @return Size of the word vectors */
+	public int getLayerSize() {
+		return layerSize;
+	}
+
+	/**
+	 * @return {@link Searcher} reading the vectors from the bin file as they are needed. Lookups of
+	 * single words are cheap; searches for matches read every vector.
+	 */
+	public Searcher forSearch() {
+		return new BinFileSearcher(this);
+	}
+
+	/** Unmaps the index and the bin file; neither this index nor its searchers may be used afterwards */
+	@Override public void close() {
+		bin.close();
+		DirectBuffers.unmap(data);
+	}
+
+	/** @return Row of the given word, or -1 if it is not in the bin file */
+	int row(String word) {
+		final byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+		final int mask = table.capacity() - 1;
+		int slot = HASH.hashBytes(bytes).asInt() & mask;
+		int entry;
+		while ((entry = table.get(slot)) != 0) {
+			if (matches(entry - 1, bytes, bin, wordOffsets, wordLengths))
+				return entry - 1;
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	/** @return True if the word at the given row has the given UTF-8 bytes */
+	private static boolean matches(int row, byte[] word, MappedFile bin, LongBuffer wordOffsets, IntBuffer wordLengths) {
+		return wordLengths.get(row) == word.length && bin.matches(wordOffsets.get(row), word);
+	}
+
+	/** @return Word at the given row */
+	String word(int row) {
+		return bin.decode(wordOffsets.get(row), wordLengths.get(row));
+	}
+
+	/** Copies the vector at the given row, as stored in the bin file, into the given array */
+	void readVector(int row, float[] dest) {
+		bin.readFloats(wordOffsets.get(row) + wordLengths.get(row) + 1, byteOrder, dest, layerSize);
+	}
+
+	/** @return Size of a hash table with a load factor of at most one half */
+	private static int tableSize(int vocabSize) {
+		return Integer.highestOneBit(Math.max(1, vocabSize)) << 2;
+	}
+
+	/** @return Size of the index after the header */
+	private static long dataSize(int vocabSize, int tableSize) {
+		return 12L * vocabSize + 4L * tableSize;
+	}
+
+	/** @return Little endian view of the given buffer from the given offset */
+	private static ByteBuffer slice(ByteBuffer buffer, long offset) {
+		final ByteBuffer result = buffer.duplicate();
+		result.position((int) offset);
+		return result.slice().order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/** Like {@link Preconditions#checkState(boolean, String, Object...)}, naming the bin file in the message */
+	private static void checkState(boolean expression, File binFile, String message, Object... args) {
+		if (!expression)
+			throw new IllegalStateException(String.format("File '%s': %s", binFile.getAbsolutePath(), String.format(message, args)));
+	}
+}
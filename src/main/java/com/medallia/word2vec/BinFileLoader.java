@@ -0,0 +1,218 @@
+package com.medallia.word2vec;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.medallia.word2vec.util.ProfilingTimer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Parallel loader for the binary format of the C version of word2vec: a "vocabSize layerSize" header
+ * line, then for every word its UTF-8 bytes, a space and layerSize floats, usually followed by a
+ * newline.
+ * <p>
+ * The file is memory mapped as a {@link MappedFile}. A first sequential pass only reads the words
+ * to find where every record starts, skipping over the vectors. The words are then decoded and the
+ * vectors copied in parallel, in contiguous ranges of rows, with bulk copies.
+ * <p>
+ * With the options of {@link ModelLoaderBuilder}, the first pass also applies the word filter and
+ * stops once enough words are kept, and only the kept dimensions of the kept records are copied.
+ * The vectors are stored by {@link Rows}, as doubles by default, so that other representations can be
+ * filled without going through a full precision model.
+ */
+class BinFileLoader {
+	/** Number of ranges of rows per thread, so that threads finishing early can help the others */
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	private final File file;
+	private final ByteOrder byteOrder;
+	private final ModelLoaderBuilder options;
+	private final MappedFile mapped;
+	private final long fileSize;
+
+	private BinFileLoader(File file, ByteOrder byteOrder, ModelLoaderBuilder options, FileChannel channel) throws IOException {
+		this.file = file;
+		this.byteOrder = byteOrder;
+		this.options = options;
+		this.mapped = new MappedFile(channel);
+		this.fileSize = mapped.size;
+	}
+
+	/** Storage of the loaded vectors, written concurrently in disjoint ranges of rows */
+	interface Rows<T> {
+		/** Stores the vector of the given row, which has the loaded dimensionality */
+		void set(int row, float[] vector);
+
+		/** @return Model of the given words and the stored vectors */
+		T build(List<String> vocab);
+	}
+
+	/** Allocates the {@link Rows} of a model */
+	interface RowsFactory<T> {
+		/** @return Storage for the given number of vectors of the given dimensionality */
+		Rows<T> allocate(int vocabSize, int layerSize);
+	}
+
+	/** Stores the vectors as doubles in a {@link Word2VecModel} */
+	static final RowsFactory<Word2VecModel> DOUBLE_ROWS = (vocabSize, layerSize) -> {
+		final double[] vectors = new double[vocabSize * layerSize];
+		return new Rows<Word2VecModel>() {
+			@Override public void set(int row, float[] vector) {
+				final int offset = row * layerSize;
+				for (int j = 0; j < layerSize; j++)
+					vectors[offset + j] = vector[j];
+			}
+
+			@Override public Word2VecModel build(List<String> vocab) {
+				return new Word2VecModel(vocab, layerSize, vectors);
+			}
+		};
+	};
+
+	/** @return {@link Word2VecModel} read from the given file with the given number of threads */
+	static Word2VecModel load(File file, ByteOrder byteOrder, ProfilingTimer timer, int numThreads, ModelLoaderBuilder options) throws IOException {
+		return load(file, byteOrder, timer, numThreads, options, DOUBLE_ROWS);
+	}
+
+	/** @return Model read from the given file with the given number of threads into the given storage */
+	static <T> T load(File file, ByteOrder byteOrder, ProfilingTimer timer, int numThreads, ModelLoaderBuilder options, RowsFactory<T> storage) throws IOException {
+		Preconditions.checkArgument(numThreads > 0, "Value must be positive");
+		try (final FileInputStream fis = new FileInputStream(file)) {
+			timer.start("Loading vectors from bin file");
+			try {
+				return new BinFileLoader(file, byteOrder, options, fis.getChannel()).load(timer, numThreads, storage);
+			} finally {
+				timer.end();
+			}
+		}
+	}
+
+	private <T> T load(ProfilingTimer timer, int numThreads, RowsFactory<T> storage) throws IOException {
+		long pos = 0;
+		while (pos < fileSize && get(pos) != '\n')
+			pos++;
+		checkState(pos < fileSize, "Expected a header line");
+		final String firstLine = mapped.decode(0, (int) pos);
+		final int index = firstLine.indexOf(' ');
+		checkState(index != -1, "Expected a space in the first line: '%s'", firstLine);
+		final int vocabSize = Integer.parseInt(firstLine.substring(0, index).trim());
+		final int layerSize = Integer.parseInt(firstLine.substring(index + 1).trim());
+		final int maxVocabSize = Math.min(vocabSize, options.maxVocabSize);
+		final int loadedLayerSize = Math.min(layerSize, options.maxLayerSize);
+		checkState((long) maxVocabSize * loadedLayerSize <= Integer.MAX_VALUE,
+				"Model of %s vectors with dimensionality %s is too large", maxVocabSize, loadedLayerSize);
+		timer.appendToLog(String.format("Loading %d vectors with dimensionality %d", vocabSize, layerSize));
+
+		// Record boundaries of the kept words: words start at wordStarts[i] and are followed by a space
+		// and the vector. Words are only decoded here if they have to be filtered.
+		final long[] wordStarts = new long[maxVocabSize];
+		final int[] wordLengths = new int[maxVocabSize];
+		final String[] vocab = new String[maxVocabSize];
+		final long vectorBytes = 4L * layerSize;
+		int size = 0;
+		timer.start("Scanning up to %d records", vocabSize);
+		final ByteBuffer[] views = mapped.views();
+		pos++;
+		for (int row = 0; row < vocabSize && size < maxVocabSize; row++) {
+			// Some files have a newline after each vector, some don't
+			while (pos < fileSize && get(pos) == '\n')
+				pos++;
+			final long start = pos;
+			while (pos < fileSize && get(pos) != ' ')
+				pos++;
+			if (pos + vectorBytes >= fileSize)
+				checkState(false, "Expected %s words, but the file ends at word %s", vocabSize, row);
+			final int length = (int) (pos - start);
+			pos += 1 + vectorBytes;
+			if (options.filtersWords()) {
+				final String word = MappedFile.decode(views, start, length);
+				if (!options.wordFilter.apply(word))
+					continue;
+				vocab[size] = word;
+			}
+			wordStarts[size] = start;
+			wordLengths[size] = length;
+			size++;
+		}
+		timer.end();
+		final int loadedVocabSize = size;
+		timer.appendToLog(String.format("Keeping %d vectors with dimensionality %d", loadedVocabSize, loadedLayerSize));
+
+		final Rows<T> vectors = storage.allocate(loadedVocabSize, loadedLayerSize);
+		timer.start("Copying vectors with %d threads", numThreads);
+		final int numChunks = Math.min(loadedVocabSize, numThreads * CHUNKS_PER_THREAD);
+		final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		try {
+			final List<Future<?>> futures = new ArrayList<>();
+			for (int chunk = 0; chunk < numChunks; chunk++) {
+				final int start = (int) ((long) loadedVocabSize * chunk / numChunks);
+				final int end = (int) ((long) loadedVocabSize * (chunk + 1) / numChunks);
+				futures.add(executor.submit(() -> {
+					copyRows(start, end, loadedLayerSize, wordStarts, wordLengths, vocab, vectors);
+					return null;
+				}));
+			}
+			for (Future<?> future : futures)
+				future.get();
+		} catch (ExecutionException e) {
+			throw Throwables.propagate(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while loading " + file.getAbsolutePath());
+		} finally {
+			executor.shutdownNow();
+		}
+		timer.end();
+		// Every copy has completed, so the file can be unmapped right away. On failure it is left to
+		// the garbage collector, since copies which are still running may read it.
+		mapped.close();
+
+		return vectors.build(Arrays.asList(vocab).subList(0, loadedVocabSize));
+	}
+
+	/**
+	 * Decodes the words that are not decoded yet and copies the first layerSize values of the vectors
+	 * of the rows from start to end
+	 */
+	private void copyRows(int start, int end, int layerSize, long[] wordStarts, int[] wordLengths, String[] vocab, Rows<?> vectors) {
+		final int vectorBytes = 4 * layerSize;
+		final byte[] bytes = new byte[vectorBytes];
+		final FloatBuffer floatView = ByteBuffer.wrap(bytes).order(byteOrder).asFloatBuffer();
+		final float[] floats = new float[layerSize];
+		final ByteBuffer[] views = mapped.views();
+
+		for (int row = start; row < end; row++) {
+			if (vocab[row] == null)
+				vocab[row] = MappedFile.decode(views, wordStarts[row], wordLengths[row]);
+			MappedFile.read(views, wordStarts[row] + wordLengths[row] + 1, bytes, vectorBytes);
+			floatView.clear();
+			floatView.get(floats);
+			vectors.set(row, floats);
+		}
+	}
+
+	/** @return Byte at the given position of the file */
+	private byte get(long pos) {
+		return mapped.get(pos);
+	}
+
+	/** Like {@link Preconditions#checkState(boolean, String, Object...)}, naming the file in the message */
+	private void checkState(boolean expression, String message, Object... args) {
+		if (!expression)
+			throw new IllegalStateException(String.format("File '%s': %s", file.getAbsolutePath(), String.format(message, args)));
+	}
+}
@@ -0,0 +1,44 @@
+package com.medallia.word2vec;
+
+import java.util.AbstractList;
+
+/**
+ * {@link Searcher} over a {@link BinFileIndex}, which reads words and vectors from the memory mapped
+ * bin file when they are needed and normalizes vectors as they are read.
+ * <p>
+ * Queries on given words only touch the pages of these words. Searches for matches have to read and
+ * normalize every vector, so they are much slower than with {@link SearcherImpl}.
+ */
+class BinFileSearcher extends AbstractSearcher {
+	private final BinFileIndex binFileIndex;
+
+	BinFileSearcher(final BinFileIndex binFileIndex) {
+		// Words of the bin file, decoded when they are accessed
+		super(new AbstractList<String>() {
+			@Override public String get(int row) {
+				return binFileIndex.word(row);
+			}
+
+			@Override public int size() {
+				return binFileIndex.vocabSize;
+			}
+		}, binFileIndex.layerSize);
+		this.binFileIndex = binFileIndex;
+	}
+
+	/** Looks the word up in the hash table of the index */
+	@Override public int getWordIndex(String word) {
+		return binFileIndex.row(word);
+	}
+
+	/** Zero vectors stay zero, like in {@link NormalizedWord2VecModel} */
+	@Override void getVector(int row, float[] dest) {
+		binFileIndex.readVector(row, dest);
+		double len = 0;
+		for (int j = 0; j < layerSize; j++)
+			len += (double) dest[j] * dest[j];
+		final double scale = len == 0 ? 0 : 1 / Math.sqrt(len);
+		for (int j = 0; j < layerSize; j++)
+			dest[j] = (float) (dest[j] * scale);
+	}
+}
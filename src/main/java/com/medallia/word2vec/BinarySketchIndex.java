@@ -0,0 +1,116 @@
+package com.medallia.word2vec;
+
+import com.google.common.base.Preconditions;
+
+import java.nio.DoubleBuffer;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Signed random projection sketches of the vectors of a {@link NormalizedWord2VecModel}.
+ * <p>
+ * Each vector is projected onto a fixed set of random hyperplanes and only the sign of each
+ * projection is kept, packed 64 to a long. The fraction of differing bits between two sketches
+ * estimates the angle between the two vectors, so a Hamming distance scan over the sketches is a
+ * cheap prefilter for cosine similarity.
+ * <p>
+ * Building the sketches takes a single parallel pass over the vectors and has no parameters to
+ * tune besides the number of bits, which makes it suitable for models that are refreshed often.
+ */
+public class BinarySketchIndex {
+	/** Default number of hyperplanes */
+	public static final int DEFAULT_NUM_BITS = 256;
+
+	final NormalizedWord2VecModel model;
+	final int numBits;
+	/** Longs per sketch */
+	final int numWords;
+	/** Hyperplane normals, one row of {@link Word2VecModel#layerSize} components per bit */
+	private final float[] hyperplanes;
+	/** Sketches of the vectors, {@link #numWords} longs per row */
+	private final long[] sketches;
+
+	private BinarySketchIndex(NormalizedWord2VecModel model, int numBits, float[] hyperplanes, long[] sketches) {
+		this.model = model;
+		this.numBits = numBits;
+		this.numWords = numBits / 64;
+		this.hyperplanes = hyperplanes;
+		this.sketches = sketches;
+	}
+
+	/** Forwards to {@link #build(NormalizedWord2VecModel, int, long)} with {@link #DEFAULT_NUM_BITS} and a fixed seed */
+	public static BinarySketchIndex build(NormalizedWord2VecModel model) {
+		return build(model, DEFAULT_NUM_BITS, 0);
+	}
+
+	/**
+	 * @param numBits number of random hyperplanes, must be a positive multiple of 64
+	 * @param seed seed for generating the hyperplanes
+	 * @return {@link BinarySketchIndex} of the vectors of the given model
+	 */
+	public static BinarySketchIndex build(NormalizedWord2VecModel model, int numBits, long seed) {
+		Preconditions.checkArgument(numBits > 0 && numBits % 64 == 0, "Number of bits must be a positive multiple of 64, got %s", numBits);
+
+		final int layerSize = model.layerSize;
+		final Random random = new Random(seed);
+		final float[] hyperplanes = new float[numBits * layerSize];
+		for (int i = 0; i < hyperplanes.length; i++)
+			hyperplanes[i] = (float) random.nextGaussian();
+
+		final int numWords = numBits / 64;
+		final long[] sketches = new long[model.vocab.size() * numWords];
+		final BinarySketchIndex index = new BinarySketchIndex(model, numBits, hyperplanes, sketches);
+		// Only absolute gets are used, which do not touch the position of the shared buffer
+		final DoubleBuffer vectors = model.vectors;
+
+		IntStream.range(0, model.vocab.size()).parallel().forEach(row -> {
+			final float[] vec = new float[layerSize];
+			for (int j = 0; j < layerSize; j++)
+				vec[j] = (float) vectors.get(row * layerSize + j);
+			index.sketch(vec, sketches, row * numWords);
+		});
+
+		return index;
+	}
+
+	/** @return Number of hyperplanes */
+	public int getNumBits() {
+		return numBits;
+	}
+
+	/**
+	 * @param candidatesPerMatch how many candidates with the closest sketches are re-ranked by exact
+	 * cosine similarity for every requested match
+	 * @return {@link Searcher} which prefilters by Hamming distance between sketches
+	 */
+	public Searcher forSearch(int candidatesPerMatch) {
+		Preconditions.checkArgument(candidatesPerMatch > 0, "Value must be positive");
+		return new BinarySketchSearcherImpl(this, candidatesPerMatch);
+	}
+
+	/** Writes the sketch of the given vector to dest, starting at the given offset */
+	void sketch(float[] vec, long[] dest, int offset) {
+		final int layerSize = model.layerSize;
+		for (int w = 0; w < numWords; w++) {
+			long bits = 0;
+			for (int b = 0; b < 64; b++) {
+				final int plane = (w * 64 + b) * layerSize;
+				float d = 0;
+				for (int j = 0; j < layerSize; j++)
+					d += vec[j] * hyperplanes[plane + j];
+				if (d >= 0)
+					bits |= 1L << b;
+			}
+			dest[offset + w] = bits;
+		}
+	}
+
+	/** @return Number of differing bits between the given sketch and the sketch of the given row */
+	int hammingDistance(long[] sketch, int row) {
+		final int offset = row * numWords;
+		int distance = 0;
+		for (int w = 0; w < numWords; w++)
+			distance += Long.bitCount(sketch[w] ^ sketches[offset + w]);
+		return distance;
+	}
+}
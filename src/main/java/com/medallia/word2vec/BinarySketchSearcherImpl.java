@@ -0,0 +1,55 @@
+package com.medallia.word2vec;
+
+import com.google.common.collect.ImmutableSet;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Implementation of {@link Searcher} over a {@link BinarySketchIndex}
+ * <p>
+ * Candidates are the rows whose sketches are closest to the sketch of the query in Hamming
+ * distance; they are then re-ranked by exact cosine similarity against the normalized vectors.
+ */
+class BinarySketchSearcherImpl extends AbstractSearcher {
+	private final BinarySketchIndex index;
+	private final NormalizedWord2VecModel model;
+	private final int candidatesPerMatch;
+
+	BinarySketchSearcherImpl(BinarySketchIndex index, int candidatesPerMatch) {
+		super(index.model.vocab, index.model.layerSize);
+		this.index = index;
+		this.model = index.model;
+		this.candidatesPerMatch = candidatesPerMatch;
+	}
+
+	@Override List<Match> getMatches(float[] vec, int maxMatches, Set<String> ignored) {
+		final long[] sketch = new long[index.numWords];
+		index.sketch(vec, sketch, 0);
+
+		// Ignored words are dropped after the prefilter, so make room for them
+		final int vocabSize = vocab.size();
+		final TopMatches candidates = new TopMatches(Math.min(vocabSize, maxMatches * candidatesPerMatch + ignored.size()));
+		for (int row = 0; row < vocabSize; row++)
+			candidates.offer(row, -index.hammingDistance(sketch, row));
+
+		final TopMatches top = new TopMatches(maxMatches);
+		for (int i = 0; i < candidates.size(); i++) {
+			final int row = candidates.row(i);
+			if (ignored.contains(vocab.get(row)))
+				continue;
+			final int offset = row * layerSize;
+			float d = 0;
+			for (int j = 0; j < layerSize; j++)
+				d += vec[j] * model.vectors.get(offset + j);
+			top.offer(row, d);
+		}
+		return top.toMatches(vocab, ImmutableSet.<String>of(), maxMatches);
+	}
+
+	@Override void getVector(int row, float[] dest) {
+		final int offset = row * layerSize;
+		for (int j = 0; j < layerSize; j++)
+			dest[j] = (float) model.vectors.get(offset + j);
+	}
+}
@@ -0,0 +1,256 @@
+package com.medallia.word2vec;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * {@link Searcher} which caches the results of the match queries of another {@link Searcher}
+ * <p>
+ * Results of {@link #getMatches(String, int)}, {@link #getMatchesFromVector(float[], int, Set)} and
+ * of the {@link SemanticDifference}s returned by {@link #similarity(String, String)} are cached,
+ * keyed on the query word or vector, the number of matches and the ignored words. All other calls
+ * are forwarded as is. Word indexes are only valid as long as the underlying {@link Searcher} is
+ * not swapped.
+ * <p>
+ * The underlying {@link Searcher} is obtained from a {@link Supplier} on every call. When it returns
+ * a different instance, e.g. because the model has been swapped, all cached results are dropped
+ * and results computed against the previous instance are never returned again.
+ * <p>
+ * This class is thread safe.
+ */
+public class CachingSearcher implements Searcher {
+	private final Supplier<? extends Searcher> source;
+	private final Cache<Query, List<Match>> cache;
+	private volatile Generation generation;
+
+	/** The {@link Searcher} cached results are currently computed with */
+	private static final class Generation {
+		final Searcher searcher;
+		final int id;
+
+		Generation(Searcher searcher, int id) {
+			this.searcher = searcher;
+			this.id = id;
+		}
+	}
+
+	private CachingSearcher(Supplier<? extends Searcher> source, Cache<Query, List<Match>> cache) {
+		this.source = source;
+		this.cache = cache;
+		this.generation = new Generation(source.get(), 0);
+	}
+
+	/** @return {@link Builder} for creating a {@link CachingSearcher} */
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/** @return Hit, miss, load and eviction statistics of the cache */
+	public CacheStats stats() {
+		return cache.stats();
+	}
+
+	/** @return Number of cached results */
+	public long size() {
+		return cache.size();
+	}
+
+	/** Drops all cached results */
+	public void invalidateAll() {
+		cache.invalidateAll();
+	}
+
+	@Override public List<Match> getMatches(final String word, final int maxMatches) throws UnknownWordException {
+		final Generation current = current();
+		return get(new Query(current.id, new String[] { word }, null, maxMatches, ImmutableSet.<String>of()),
+				() -> current.searcher.getMatches(word, maxMatches));
+	}
+
+	@Override public List<Match> getMatchesFromVector(final float[] wordVector, final int maxMatches, final Set<String> ignored) {
+		final Generation current = current();
+		final Query query = new Query(current.id, null, wordVector.clone(), maxMatches, ImmutableSet.copyOf(ignored));
+		return get(query, () -> current.searcher.getMatchesFromVector(query.vector, maxMatches, query.ignored));
+	}
+
+	@Override public SemanticDifference similarity(final String s1, final String s2) throws UnknownWordException {
+		final Generation captured = current();
+		final SemanticDifference difference = captured.searcher.similarity(s1, s2);
+		return (word, maxMatches) -> {
+			final Generation current = current();
+			return get(new Query(current.id, new String[] { s1, s2, word }, null, maxMatches, ImmutableSet.<String>of()),
+					() -> current == captured
+							? difference.getMatches(word, maxMatches)
+							: current.searcher.similarity(s1, s2).getMatches(word, maxMatches));
+		};
+	}
+
+	@Override public boolean contains(String word) {
+		return current().searcher.contains(word);
+	}
+
+	@Override public ImmutableList<Float> getRawVector(String word) throws UnknownWordException {
+		return current().searcher.getRawVector(word);
+	}
+
+	@Override public float cosineDistance(String s1, String s2) throws UnknownWordException {
+		return current().searcher.cosineDistance(s1, s2);
+	}
+
+	@Override public int getLayerSize() {
+		return current().searcher.getLayerSize();
+	}
+
+	@Override public int getWordIndex(String word) {
+		return current().searcher.getWordIndex(word);
+	}
+
+	@Override public void getRawVector(String word, float[] dest) throws UnknownWordException {
+		current().searcher.getRawVector(word, dest);
+	}
+
+	@Override public void getRawVector(int index, float[] dest) {
+		current().searcher.getRawVector(index, dest);
+	}
+
+	@Override public FloatBuffer getRawVectorBuffer(String word) throws UnknownWordException {
+		return current().searcher.getRawVectorBuffer(word);
+	}
+
+	/** @return Current {@link Generation}, starting a new one if the source returns a different {@link Searcher} */
+	private Generation current() {
+		final Searcher searcher = source.get();
+		Generation current = generation;
+		if (current.searcher != searcher) {
+			synchronized (this) {
+				current = generation;
+				if (current.searcher != searcher) {
+					current = new Generation(searcher, current.id + 1);
+					generation = current;
+					cache.invalidateAll();
+				}
+			}
+		}
+		return current;
+	}
+
+	private List<Match> get(Query query, Callable<List<Match>> loader) {
+		try {
+			return cache.get(query, () -> ImmutableList.copyOf(loader.call()));
+		} catch (ExecutionException | UncheckedExecutionException e) {
+			throw Throwables.propagate(e.getCause());
+		}
+	}
+
+	/** Key of a cached result */
+	private static final class Query {
+		final int generation;
+		/** Query word, or the two words of a {@link SemanticDifference} followed by the query word */
+		final String[] words;
+		final float[] vector;
+		final int maxMatches;
+		final ImmutableSet<String> ignored;
+		private final int hash;
+
+		Query(int generation, String[] words, float[] vector, int maxMatches, ImmutableSet<String> ignored) {
+			this.generation = generation;
+			this.words = words;
+			this.vector = vector;
+			this.maxMatches = maxMatches;
+			this.ignored = ignored;
+			this.hash = Objects.hash(generation, Arrays.hashCode(words), Arrays.hashCode(vector), maxMatches, ignored);
+		}
+
+		@Override public int hashCode() {
+			return hash;
+		}
+
+		@Override public boolean equals(Object obj) {
+			if (!(obj instanceof Query))
+				return false;
+			final Query other = (Query) obj;
+			return hash == other.hash
+					&& generation == other.generation
+					&& maxMatches == other.maxMatches
+					&& Arrays.equals(words, other.words)
+					&& Arrays.equals(vector, other.vector)
+					&& ignored.equals(other.ignored);
+		}
+	}
+
+	/** Builder pattern for creating a {@link CachingSearcher} */
+	public static class Builder {
+		private Long maximumSize;
+		private Long maximumWeight;
+
+		private Builder() {
+		}
+
+		/**
+		 * Maximum number of cached results, least recently used results are evicted first
+		 * <p>
+		 * Defaults to 10000; cannot be combined with {@link #setMaximumWeight(long)}
+		 */
+		public Builder setMaximumSize(long maximumSize) {
+			Preconditions.checkArgument(maximumSize >= 0, "Value must be non-negative");
+			Preconditions.checkState(maximumWeight == null, "Maximum weight is already set");
+			this.maximumSize = maximumSize;
+			return this;
+		}
+
+		/**
+		 * Maximum total number of matches over all cached results, least recently used results are
+		 * evicted first
+		 * <p>
+		 * Cannot be combined with {@link #setMaximumSize(long)}
+		 */
+		public Builder setMaximumWeight(long maximumWeight) {
+			Preconditions.checkArgument(maximumWeight >= 0, "Value must be non-negative");
+			Preconditions.checkState(maximumSize == null, "Maximum size is already set");
+			this.maximumWeight = maximumWeight;
+			return this;
+		}
+
+		/** @return {@link CachingSearcher} over the given {@link Searcher} */
+		public CachingSearcher build(Searcher searcher) {
+			return build(Suppliers.ofInstance(searcher));
+		}
+
+		/**
+		 * @return {@link CachingSearcher} over the {@link Searcher} returned by the given
+		 * {@link Supplier}, which is called on every query
+		 */
+		public CachingSearcher build(Supplier<? extends Searcher> source) {
+			final Cache<Query, List<Match>> cache;
+			if (maximumWeight != null) {
+				cache = CacheBuilder.newBuilder()
+						.recordStats()
+						.maximumWeight(maximumWeight)
+						.weigher((Weigher<Query, List<Match>>) (query, matches) -> matches.size() + 1)
+						.build();
+			} else {
+				cache = CacheBuilder.newBuilder()
+						.recordStats()
+						.maximumSize(maximumSize == null ? 10000 : maximumSize)
+						.build();
+			}
+			return new CachingSearcher(source, cache);
+		}
+	}
+}
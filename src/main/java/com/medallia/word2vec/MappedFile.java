@@ -0,0 +1,109 @@
+package com.medallia.word2vec;
+
+import com.medallia.word2vec.util.DirectBuffers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Read-only memory mapping of a whole file, in segments of one gigabyte since Java can only map up
+ * to 2GB at once. Pages are only read from disk when they are first accessed.
+ * <p>
+ * Absolute reads with {@link #get(long)} are thread-safe; reads through {@link #views()} use the
+ * positions of the views, which must then be used by a single thread.
+ */
+class MappedFile implements Closeable {
+	static final int SEGMENT_BITS = 30;
+	static final long SEGMENT_SIZE = 1L << SEGMENT_BITS;
+
+	final long size;
+	private final MappedByteBuffer[] segments;
+
+	/** Maps the whole file of the given channel, which can be closed afterwards */
+	MappedFile(FileChannel channel) throws IOException {
+		this.size = channel.size();
+		this.segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) >>> SEGMENT_BITS)];
+		for (int i = 0; i < segments.length; i++) {
+			final long start = (long) i << SEGMENT_BITS;
+			segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, size - start));
+		}
+	}
+
+	/**
+	 * Unmaps the file right away, instead of when the mapping is garbage collected. The file must not be
+	 * read afterwards.
+	 */
+	@Override public void close() {
+		for (MappedByteBuffer segment : segments)
+			DirectBuffers.unmap(segment);
+	}
+
+	/** @return Byte at the given position of the file */
+	byte get(long pos) {
+		return segments[(int) (pos >>> SEGMENT_BITS)].get((int) (pos & (SEGMENT_SIZE - 1)));
+	}
+
+	/** @return True if the given bytes are at the given position of the file */
+	boolean matches(long pos, byte[] bytes) {
+		if (pos + bytes.length > size)
+			return false;
+		for (int i = 0; i < bytes.length; i++) {
+			if (get(pos + i) != bytes[i])
+				return false;
+		}
+		return true;
+	}
+
+	/** Copies count floats of the given byte order from the given position of the file */
+	void readFloats(long pos, ByteOrder order, float[] dest, int count) {
+		final MappedByteBuffer segment = segments[(int) (pos >>> SEGMENT_BITS)];
+		final int offset = (int) (pos & (SEGMENT_SIZE - 1));
+		final ByteBuffer bytes;
+		if (offset + 4L * count <= segment.limit()) {
+			bytes = segment.duplicate();
+			bytes.position(offset);
+		} else {
+			// The floats span two segments
+			bytes = ByteBuffer.allocate(4 * count);
+			read(views(), pos, bytes.array(), 4 * count);
+		}
+		bytes.order(order).asFloatBuffer().get(dest, 0, count);
+	}
+
+	/** @return Views of the segments with their own positions, for use by a single thread */
+	ByteBuffer[] views() {
+		final ByteBuffer[] views = new ByteBuffer[segments.length];
+		for (int i = 0; i < segments.length; i++)
+			views[i] = segments[i].duplicate();
+		return views;
+	}
+
+	/** @return String decoded from the UTF-8 bytes at the given position of the file */
+	String decode(long pos, int length) {
+		return decode(views(), pos, length);
+	}
+
+	/** @return String decoded from the UTF-8 bytes at the given position of the file */
+	static String decode(ByteBuffer[] views, long pos, int length) {
+		final byte[] bytes = new byte[length];
+		read(views, pos, bytes, length);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/** Copies length bytes from the given position of the file, which may span two segments */
+	static void read(ByteBuffer[] views, long pos, byte[] dest, int length) {
+		int copied = 0;
+		while (copied < length) {
+			final ByteBuffer view = views[(int) ((pos + copied) >>> SEGMENT_BITS)];
+			view.position((int) ((pos + copied) & (SEGMENT_SIZE - 1)));
+			final int n = Math.min(length - copied, view.remaining());
+			view.get(dest, copied, n);
+			copied += n;
+		}
+	}
+}
@@ -0,0 +1,25 @@
+package com.medallia.word2vec;
+
+import com.medallia.word2vec.Searcher.Match;
+import com.medallia.word2vec.util.Pair;
+
+/** Implementation of {@link Match} */
+class MatchImpl extends Pair<String, Float> implements Match {
+	private static final long serialVersionUID = 1L;
+
+	MatchImpl(String first, Float second) {
+		super(first, second);
+	}
+
+	@Override public String match() {
+		return first;
+	}
+
+	@Override public float distance() {
+		return second;
+	}
+
+	@Override public String toString() {
+		return String.format("%s [%s]", first, second);
+	}
+}
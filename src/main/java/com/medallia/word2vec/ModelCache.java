@@ -0,0 +1,137 @@
+package com.medallia.word2vec;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalNotification;
+import com.medallia.word2vec.util.AutoLog;
+import org.apache.commons.logging.Log;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of {@link Searcher}s over many models, loaded on demand and evicted to stay within a budget
+ * of memory.
+ * <p>
+ * Every model is weighed by the bytes of the heap arrays and off-heap buffers of its searcher, and
+ * the least recently used models are evicted when the total goes over the budget. Models are loaded
+ * concurrently, but each key is only loaded once at a time: other threads asking for a key that is
+ * being loaded wait for that load. Loaded models are normalized in place and searched without a
+ * copy, so each cached model takes a single copy of its vectors, as long as the {@link Loader} does
+ * not keep the models it returns.
+ * <p>
+ * Evicted models are released by the garbage collector once the last query using them is done,
+ * so memory use can briefly exceed the budget.
+ *
+ * @param <K> Key identifying a model, for example the customer and the version of the model
+ */
+public class ModelCache<K> {
+	private static final Log LOG = AutoLog.getLog();
+	/** Unit of the weights of the models, so that models of more than 2 GB are weighed correctly */
+	private static final long WEIGHT_UNIT = 1024;
+
+	/** Loads the model of a key */
+	public interface Loader<K> {
+		/**
+		 * @return New model of the given key, which the cache takes over: its vectors are normalized in
+		 * place, so it must not be shared with other code
+		 */
+		Word2VecModel load(K key) throws IOException;
+	}
+
+	private final long maxBytes;
+	private final AtomicLong usedBytes = new AtomicLong();
+	private final LoadingCache<K, SearcherImpl> cache;
+
+	/**
+	 * @param maxBytes budget of memory for the models, on-heap and off-heap together. Models are weighed
+	 * in kilobytes rounded up, so the budget is rounded down to whole kilobytes.
+	 * @param loader loads the model of a key when it is not cached
+	 */
+	public ModelCache(long maxBytes, final Loader<? super K> loader) {
+		Preconditions.checkArgument(maxBytes > 0, "Value must be positive");
+		this.maxBytes = maxBytes;
+		this.cache = CacheBuilder.newBuilder()
+				// A single segment, so that the whole budget is available to every model
+				.concurrencyLevel(1)
+				// Weights are rounded up and the budget down, so that the models never exceed it
+				.maximumWeight(maxBytes / WEIGHT_UNIT)
+				.<K, SearcherImpl>weigher((key, searcher) -> weight(bytes(searcher)))
+				.removalListener(this::onRemoval)
+				.recordStats()
+				.build(new CacheLoader<K, SearcherImpl>() {
+					@Override public SearcherImpl load(K key) throws IOException {
+						final SearcherImpl searcher = new SearcherImpl(NormalizedWord2VecModel.fromWord2VecModel(loader.load(key), true));
+						usedBytes.addAndGet(bytes(searcher));
+						return searcher;
+					}
+				});
+	}
+
+	/**
+	 * @return {@link Searcher} of the model of the given key, loading it if it is not cached
+	 * @throws IOException if the model could not be loaded
+	 */
+	public Searcher get(K key) throws IOException {
+		try {
+			return cache.get(key);
+		} catch (ExecutionException e) {
+			Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+			throw Throwables.propagate(e.getCause());
+		}
+	}
+
+	/** @return {@link Searcher} of the model of the given key if it is cached, null otherwise */
+	public Searcher getIfPresent(K key) {
+		return cache.getIfPresent(key);
+	}
+
+	/** Removes the model of the given key from the cache, for example because it has been updated */
+	public void invalidate(K key) {
+		cache.invalidate(key);
+	}
+
+	/** @return Number of cached models */
+	public long size() {
+		return cache.size();
+	}
+
+	/** @return Bytes of the cached models */
+	public long getUsedBytes() {
+		return usedBytes.get();
+	}
+
+	/** @return Budget of memory for the models */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * @return Statistics of the cache, such as {@link CacheStats#hitRate()},
+	 * {@link CacheStats#averageLoadPenalty()} in nanoseconds and {@link CacheStats#evictionCount()}
+	 */
+	public CacheStats getStats() {
+		return cache.stats();
+	}
+
+	private void onRemoval(RemovalNotification<K, SearcherImpl> notification) {
+		final long bytes = bytes(notification.getValue());
+		usedBytes.addAndGet(-bytes);
+		if (notification.wasEvicted())
+			LOG.info(String.format("Evicted model %s of %d bytes", notification.getKey(), bytes));
+	}
+
+	/** @return Weight of a model of the given number of bytes, in {@link #WEIGHT_UNIT}s rounded up */
+	static int weight(long bytes) {
+		return (int) Math.min(Integer.MAX_VALUE, (bytes + WEIGHT_UNIT - 1) / WEIGHT_UNIT);
+	}
+
+	private static long bytes(SearcherImpl searcher) {
+		return searcher.getHeapBytes() + searcher.getOffHeapBytes();
+	}
+}
@@ -0,0 +1,165 @@
+package com.medallia.word2vec;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.medallia.word2vec.util.Format;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Parallel writer for the binary and text formats of the C version of word2vec.
+ * <p>
+ * Rows are split into batches of a few megabytes once encoded. Threads encode a wave of batches into
+ * direct buffers, which are then written in order with a single gathering write, before the buffers
+ * are reused for the next wave. Memory use is bounded by the size of one wave.
+ */
+class ModelExporter {
+	/** Supported file formats */
+	enum FileFormat {
+		/** Word, space, little-endian floats and newline per row */
+		BIN,
+		/** Word and values formatted like %f, each followed by a space, and newline per row */
+		TEXT,
+	}
+
+	/** Target size of an encoded batch */
+	private static final int BATCH_BYTES = 4 << 20;
+	/** Number of batches per thread in a wave, so that threads finishing early can help the others */
+	private static final int BATCHES_PER_THREAD = 2;
+
+	private final Word2VecModel model;
+	private final FileFormat format;
+
+	private ModelExporter(Word2VecModel model, FileFormat format) {
+		this.model = model;
+		this.format = format;
+	}
+
+	/** Writes the model to the given channel in the given format with the given number of threads */
+	static void write(Word2VecModel model, WritableByteChannel channel, FileFormat format, int numThreads) throws IOException {
+		Preconditions.checkArgument(numThreads > 0, "Value must be positive");
+		new ModelExporter(model, format).write(channel, numThreads);
+	}
+
+	private void write(WritableByteChannel channel, int numThreads) throws IOException {
+		final int vocabSize = model.vocab.size();
+		final int layerSize = model.layerSize;
+		writeFully(channel, new ByteBuffer[] {
+				ByteBuffer.wrap(String.format("%d %d\n", vocabSize, layerSize).getBytes(StandardCharsets.UTF_8))
+		}, 1);
+
+		final int rowBytes = 16 + layerSize * (format == FileFormat.BIN ? 4 : 10);
+		final int rowsPerBatch = Math.max(1, BATCH_BYTES / rowBytes);
+		final ByteBuffer[] buffers = new ByteBuffer[numThreads * BATCHES_PER_THREAD];
+
+		final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		try {
+			for (int waveStart = 0; waveStart < vocabSize; ) {
+				final List<Future<?>> futures = new ArrayList<>();
+				int slot = 0;
+				for (; slot < buffers.length && waveStart < vocabSize; slot++) {
+					final int start = waveStart;
+					final int end = Math.min(vocabSize, start + rowsPerBatch);
+					final int s = slot;
+					futures.add(executor.submit(() -> {
+						buffers[s] = encode(start, end, buffers[s]);
+						return null;
+					}));
+					waveStart = end;
+				}
+				for (Future<?> future : futures)
+					future.get();
+				writeFully(channel, buffers, slot);
+			}
+		} catch (ExecutionException e) {
+			throw Throwables.propagate(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while writing model");
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/** @return Buffer, possibly a new one, holding the encoded rows from start to end, ready to be written */
+	private ByteBuffer encode(int start, int end, ByteBuffer buffer) {
+		final int layerSize = model.layerSize;
+		// Words are encoded first so that the size of the batch is known
+		final byte[][] words = new byte[end - start][];
+		int size = 0;
+		for (int row = start; row < end; row++) {
+			words[row - start] = model.vocab.get(row).getBytes(StandardCharsets.UTF_8);
+			size += words[row - start].length + 2 + layerSize * (format == FileFormat.BIN ? 4 : 10);
+		}
+		if (buffer == null || buffer.capacity() < size)
+			buffer = ByteBuffer.allocateDirect(Math.max(size, buffer == null ? 0 : 2 * buffer.capacity()));
+		buffer.clear();
+		buffer.order(ByteOrder.LITTLE_ENDIAN);	// The C version uses this byte order.
+
+		final byte[] scratch = new byte[Format.MAX_FIXED_LENGTH + 1];
+		for (int row = start; row < end; row++) {
+			final int offset = row * layerSize;
+			final int fixedBytes = words[row - start].length + 2 + (format == FileFormat.BIN ? 4 * layerSize : 0);
+			if (buffer.remaining() < fixedBytes)
+				buffer = grow(buffer, fixedBytes);
+			buffer.put(words[row - start]);
+			buffer.put((byte) ' ');
+			if (format == FileFormat.BIN) {
+				for (int j = 0; j < layerSize; j++)
+					buffer.putFloat((float) model.vectors.get(offset + j));
+			} else {
+				for (int j = 0; j < layerSize; j++) {
+					int length = Format.formatFixed(model.vectors.get(offset + j), scratch, 0);
+					scratch[length++] = ' ';
+					if (buffer.remaining() < length + 1)
+						buffer = grow(buffer, length + 1);
+					buffer.put(scratch, 0, length);
+				}
+			}
+			if (!buffer.hasRemaining())
+				buffer = grow(buffer, 1);
+			buffer.put((byte) '\n');
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/** @return Copy of the buffer with room for at least the given number of extra bytes */
+	private static ByteBuffer grow(ByteBuffer buffer, int extra) {
+		final ByteBuffer bigger = ByteBuffer.allocateDirect(Math.max(2 * buffer.capacity(), buffer.position() + extra));
+		bigger.order(buffer.order());
+		buffer.flip();
+		bigger.put(buffer);
+		return bigger;
+	}
+
+	/** Writes the first count buffers in order, with gathering writes if the channel supports them */
+	private static void writeFully(WritableByteChannel channel, ByteBuffer[] buffers, int count) throws IOException {
+		if (channel instanceof GatheringByteChannel) {
+			final GatheringByteChannel gathering = (GatheringByteChannel) channel;
+			int first = 0;
+			while (first < count) {
+				gathering.write(buffers, first, count - first);
+				while (first < count && !buffers[first].hasRemaining())
+					first++;
+			}
+		} else {
+			for (int i = 0; i < count; i++) {
+				while (buffers[i].hasRemaining())
+					channel.write(buffers[i]);
+			}
+		}
+	}
+}
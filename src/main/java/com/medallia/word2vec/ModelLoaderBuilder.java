@@ -0,0 +1,121 @@
+package com.medallia.word2vec;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.medallia.word2vec.QuantizedWord2VecModel.Precision;
+import com.medallia.word2vec.util.ProfilingTimer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+
+/**
+ * Builder pattern for loading a {@link Word2VecModel} from the files of the C version of word2vec,
+ * optionally keeping only part of it.
+ * <p>
+ * Files list words from most to least frequent, so limiting the vocabulary size keeps the most
+ * frequent words. Loading stops as soon as enough words have been kept, rejected words are skipped
+ * without parsing their vectors, and only the kept dimensions are copied, so memory use and loading
+ * time depend on the size of the loaded model rather than on the size of the file.
+ */
+public class ModelLoaderBuilder {
+	int maxVocabSize = Integer.MAX_VALUE;
+	Predicate<? super String> wordFilter = Predicates.alwaysTrue();
+	int maxLayerSize = Integer.MAX_VALUE;
+	private ByteOrder byteOrder = ByteOrder.LITTLE_ENDIAN;
+	private ProfilingTimer timer = ProfilingTimer.NONE;
+	private int numThreads = Runtime.getRuntime().availableProcessors();
+
+	ModelLoaderBuilder() {
+	}
+
+	/**
+	 * Maximum number of words to load. Words are kept in the order of the file, after applying
+	 * {@link #setWordFilter(Predicate)}.
+	 * <p>
+	 * Defaults to all words
+	 */
+	public ModelLoaderBuilder setMaxVocabSize(int maxVocabSize) {
+		Preconditions.checkArgument(maxVocabSize > 0, "Value must be positive");
+		this.maxVocabSize = maxVocabSize;
+		return this;
+	}
+
+	/**
+	 * Only load the words accepted by the given predicate
+	 * <p>
+	 * Defaults to all words
+	 */
+	public ModelLoaderBuilder setWordFilter(Predicate<? super String> wordFilter) {
+		this.wordFilter = Preconditions.checkNotNull(wordFilter);
+		return this;
+	}
+
+	/**
+	 * Only load the first dimensions of the vectors, up to the given number
+	 * <p>
+	 * Defaults to all dimensions
+	 */
+	public ModelLoaderBuilder setMaxLayerSize(int maxLayerSize) {
+		Preconditions.checkArgument(maxLayerSize > 0, "Value must be positive");
+		this.maxLayerSize = maxLayerSize;
+		return this;
+	}
+
+	/**
+	 * Byte order of the floats in bin files
+	 * <p>
+	 * Defaults to {@link ByteOrder#LITTLE_ENDIAN}, like the C version
+	 */
+	public ModelLoaderBuilder setByteOrder(ByteOrder byteOrder) {
+		this.byteOrder = Preconditions.checkNotNull(byteOrder);
+		return this;
+	}
+
+	/**
+	 * {@link ProfilingTimer} to report the steps of loading bin files to
+	 * <p>
+	 * Defaults to {@link ProfilingTimer#NONE}
+	 */
+	public ModelLoaderBuilder setProfilingTimer(ProfilingTimer timer) {
+		this.timer = Preconditions.checkNotNull(timer);
+		return this;
+	}
+
+	/**
+	 * Specify number of threads to use for parallelization
+	 * <p>
+	 * Defaults to {@link Runtime#availableProcessors()}
+	 */
+	public ModelLoaderBuilder useNumThreads(int numThreads) {
+		Preconditions.checkArgument(numThreads > 0, "Value must be positive");
+		this.numThreads = numThreads;
+		return this;
+	}
+
+	/** @return {@link Word2VecModel} read from a file in the binary format of the C version of word2vec */
+	public Word2VecModel fromBinFile(File file) throws IOException {
+		return BinFileLoader.load(file, byteOrder, timer, numThreads, this);
+	}
+
+	/**
+	 * @return {@link QuantizedWord2VecModel} read from a file in the binary format of the C version of
+	 * word2vec, with every vector quantized to the given precision as it is read
+	 */
+	public QuantizedWord2VecModel fromBinFile(File file, Precision precision) throws IOException {
+		Preconditions.checkNotNull(precision);
+		return BinFileLoader.load(file, byteOrder, timer, numThreads, this,
+				(vocabSize, layerSize) -> new QuantizedWord2VecModel.Quantizer(vocabSize, layerSize, precision));
+	}
+
+	/** @return {@link Word2VecModel} read from a file in the text format of the C version of word2vec */
+	public Word2VecModel fromTextFile(File file) throws IOException {
+		return TextFileLoader.load(file, numThreads, this);
+	}
+
+	/** @return True if some words may be rejected by the word filter */
+	boolean filtersWords() {
+		return wordFilter != Predicates.alwaysTrue();
+	}
+}
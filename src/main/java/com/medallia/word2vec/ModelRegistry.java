@@ -0,0 +1,280 @@
+package com.medallia.word2vec;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Closer;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.medallia.word2vec.util.AutoLog;
+import org.apache.commons.logging.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Registry of named models which can be replaced by newer versions while they are being queried.
+ * <p>
+ * Queries {@link #acquire(String)} a {@link Lease} on the current version of a model, which keeps
+ * using that version until the lease is closed, even if a newer version is published in the meantime.
+ * Publishing loads and optionally warms up the new version, then swaps it in atomically. The previous
+ * version is released as soon as its last lease is closed: the resources registered with the
+ * {@link Closer} when it was loaded are closed right away, which unmaps the files of a
+ * {@link BinFileIndex}, instead of waiting for the garbage collector.
+ * <p>
+ * For example, with a model reloaded every hour in the background:
+ * <pre>
+ * registry.publishAsync("en", version, closer -> closer.register(BinFileIndex.open(file)).forSearch());
+ * ...
+ * try (ModelRegistry.Lease lease = registry.acquire("en")) {
+ *     return lease.getSearcher().getMatches(word, 10);
+ * }
+ * </pre>
+ */
+public class ModelRegistry implements Closeable {
+	private static final Log LOG = AutoLog.getLog();
+
+	/** Loads a version of a model */
+	public interface Loader {
+		/**
+		 * @param closer {@link Closer} to register the resources of the model with, which are closed when
+		 * the version is released
+		 * @return {@link Searcher} of the loaded model
+		 */
+		Searcher load(Closer closer) throws IOException;
+	}
+
+	private final ConcurrentMap<String, Version> models = new ConcurrentHashMap<>();
+	/** Order in which publishing started, so that a slow load does not replace a newer version */
+	private final AtomicLong sequence = new AtomicLong();
+	private final ExecutorService executor = Executors.newSingleThreadExecutor(
+			new ThreadFactoryBuilder().setDaemon(true).setNameFormat("model-registry-%d").build());
+	private volatile boolean closed;
+
+	/**
+	 * @return {@link Lease} on the current version of the given model, which must be closed once the
+	 * query is done
+	 * @throws IllegalArgumentException if no version of the model has been published
+	 */
+	public Lease acquire(String name) {
+		while (true) {
+			final Version version = models.get(name);
+			Preconditions.checkArgument(version != null, "No model named '%s'", name);
+			// Fails if the version was released after it was read, in which case there is a newer one
+			if (version.retain())
+				return new Lease(version);
+		}
+	}
+
+	/** @return Names of the published models */
+	public Set<String> getNames() {
+		return ImmutableSet.copyOf(models.keySet());
+	}
+
+	/** Loads the given version of a model and makes it the current one */
+	public void publish(String name, String version, Loader loader) throws IOException {
+		publish(name, version, loader, null);
+	}
+
+	/**
+	 * Loads the given version of a model, runs the given warm-up on it, for example with
+	 * {@link #warmUpWith(Iterable, int)}, and makes it the current one
+	 */
+	public void publish(String name, String version, Loader loader, Consumer<? super Searcher> warmUp) throws IOException {
+		publish(sequence.incrementAndGet(), name, version, loader, warmUp);
+	}
+
+	/** Like {@link #publish(String, String, Loader)}, but loads the model in a background thread */
+	public Future<?> publishAsync(String name, String version, Loader loader) {
+		return publishAsync(name, version, loader, null);
+	}
+
+	/** Like {@link #publish(String, String, Loader, Consumer)}, but loads the model in a background thread */
+	public Future<?> publishAsync(final String name, final String version, final Loader loader, final Consumer<? super Searcher> warmUp) {
+		final long seq = sequence.incrementAndGet();
+		return executor.submit(() -> {
+			try {
+				publish(seq, name, version, loader, warmUp);
+			} catch (IOException | RuntimeException e) {
+				LOG.error(String.format("Failed to publish version %s of model '%s'", version, name), e);
+				throw e;
+			}
+			return null;
+		});
+	}
+
+	private void publish(long seq, String name, String versionName, Loader loader, Consumer<? super Searcher> warmUp) throws IOException {
+		Preconditions.checkState(!closed, "Registry is closed");
+		final Closer closer = Closer.create();
+		final Searcher searcher;
+		try {
+			searcher = loader.load(closer);
+			if (warmUp != null)
+				warmUp.accept(searcher);
+		} catch (Throwable e) {
+			// Closer#rethrow only records the failure, the resources loaded so far still have to be closed
+			try {
+				throw closer.rethrow(e);
+			} finally {
+				closer.close();
+			}
+		}
+
+		final Version version = new Version(name, versionName, seq, searcher, closer);
+		final Version[] replaced = new Version[1];
+		final boolean[] refused = new boolean[1];
+		final Version current = models.compute(name, (key, old) -> {
+			// Models published after close() started would never be released
+			if (closed) {
+				refused[0] = true;
+				return old;
+			}
+			if (old != null && old.seq > seq)
+				return old;
+			replaced[0] = old;
+			return version;
+		});
+		final Version previous = replaced[0];
+		if (refused[0]) {
+			version.release();
+			throw new IllegalStateException("Registry is closed");
+		} else if (current != version) {
+			LOG.info(String.format("Version %s of model '%s' is older than version %s, dropping it", versionName, name, current.version));
+			version.release();
+			return;
+		} else if (previous != null) {
+			LOG.info(String.format("Replaced version %s of model '%s' with version %s", previous.version, name, versionName));
+			previous.release();
+		} else {
+			LOG.info(String.format("Published version %s of model '%s'", versionName, name));
+		}
+
+		// close() may have listed the models right before this version was swapped in
+		if (closed && models.remove(name, version)) {
+			version.release();
+			throw new IllegalStateException("Registry is closed");
+		}
+	}
+
+	/**
+	 * Removes the given model from the registry. It is released once its last lease is closed.
+	 *
+	 * @return True if the model was in the registry
+	 */
+	public boolean remove(String name) {
+		final Version version = models.remove(name);
+		if (version == null)
+			return false;
+		version.release();
+		return true;
+	}
+
+	/** Removes all models from the registry and stops loading models in the background */
+	@Override public void close() {
+		closed = true;
+		executor.shutdownNow();
+		for (String name : getNames())
+			remove(name);
+	}
+
+	/**
+	 * @return Warm-up which looks up the vectors and matches of the given words, which loads their
+	 * pages from disk and compiles the search code before the model gets queries
+	 */
+	public static Consumer<Searcher> warmUpWith(final Iterable<String> words, final int maxMatches) {
+		return searcher -> {
+			final float[] vector = new float[searcher.getLayerSize()];
+			for (String word : words) {
+				if (!searcher.contains(word))
+					continue;
+				searcher.getRawVector(word, vector);
+				searcher.getMatches(word, maxMatches);
+			}
+		};
+	}
+
+	/**
+	 * Lease on a version of a model, which stays usable until the lease is closed. Leases are meant to
+	 * be used by a single thread.
+	 */
+	public static final class Lease implements AutoCloseable {
+		private final Version version;
+		private boolean closed;
+
+		private Lease(Version version) {
+			this.version = version;
+		}
+
+		/** @return Name of the model */
+		public String getName() {
+			return version.name;
+		}
+
+		/** @return Version of the model */
+		public String getVersion() {
+			return version.version;
+		}
+
+		/** @return {@link Searcher} of the version of the model */
+		public Searcher getSearcher() {
+			Preconditions.checkState(!closed, "Lease is closed");
+			return version.searcher;
+		}
+
+		/** Releases the version if it has been replaced and this was its last lease */
+		@Override public void close() {
+			if (closed)
+				return;
+			closed = true;
+			version.release();
+		}
+	}
+
+	/** Published version of a model with its reference count */
+	private static final class Version {
+		private final String name;
+		private final String version;
+		private final long seq;
+		private final Searcher searcher;
+		private final Closer closer;
+		/** Number of leases, plus one while the version is in the registry */
+		private final AtomicInteger references = new AtomicInteger(1);
+
+		private Version(String name, String version, long seq, Searcher searcher, Closer closer) {
+			this.name = name;
+			this.version = version;
+			this.seq = seq;
+			this.searcher = searcher;
+			this.closer = closer;
+		}
+
+		/** @return False if the version has already been released and must not be used */
+		private boolean retain() {
+			while (true) {
+				final int count = references.get();
+				if (count == 0)
+					return false;
+				if (references.compareAndSet(count, count + 1))
+					return true;
+			}
+		}
+
+		private void release() {
+			if (references.decrementAndGet() != 0)
+				return;
+			try {
+				closer.close();
+				LOG.info(String.format("Released version %s of model '%s'", version, name));
+			} catch (IOException e) {
+				LOG.warn(String.format("Failed to release version %s of model '%s'", version, name), e);
+			}
+		}
+	}
+}
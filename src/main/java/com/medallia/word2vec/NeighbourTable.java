@@ -0,0 +1,182 @@
+package com.medallia.word2vec;
+
+import com.google.common.base.Preconditions;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.primitives.Ints;
+import com.medallia.word2vec.util.DirectBuffers;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Precomputed table of the nearest neighbours of every word of a model, memory-mapped from a file
+ * written by {@link NeighbourTableBuilder}.
+ * <p>
+ * The file holds, after a small header, the row numbers of the neighbours of every word followed
+ * by their cosine similarities, both as little endian arrays of {@link #getNumNeighbours()} entries
+ * per word, ordered by decreasing similarity and excluding the word itself.
+ * <p>
+ * {@link #close()} unmaps the file right away instead of when the table is garbage collected.
+ */
+public class NeighbourTable implements Closeable {
+	/** Suffix of the table file next to the model file, see {@link #fileFor(File)} */
+	public static final String FILE_SUFFIX = ".neighbours";
+
+	static final int MAGIC = 0x57324E54;
+	static final int VERSION = 1;
+	/** Magic, version, vocab size, number of neighbours, block size and vocabulary hash */
+	private static final int FIXED_HEADER_SIZE = 5 * 4 + 8;
+
+	final int vocabSize;
+	final int numNeighbours;
+	private final MappedByteBuffer rowsMapping;
+	private final MappedByteBuffer scoresMapping;
+	private final IntBuffer rows;
+	private final FloatBuffer scores;
+
+	private NeighbourTable(int vocabSize, int numNeighbours, MappedByteBuffer rowsMapping, MappedByteBuffer scoresMapping) {
+		this.vocabSize = vocabSize;
+		this.numNeighbours = numNeighbours;
+		this.rowsMapping = rowsMapping;
+		this.scoresMapping = scoresMapping;
+		this.rows = rowsMapping.duplicate().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+		this.scores = scoresMapping.duplicate().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+	}
+
+	/** @return File holding the table for the given model file */
+	public static File fileFor(File modelFile) {
+		return new File(modelFile.getPath() + FILE_SUFFIX);
+	}
+
+	/** @return {@link NeighbourTableBuilder} for computing the table of the given model */
+	public static NeighbourTableBuilder builder(NormalizedWord2VecModel model) {
+		return new NeighbourTableBuilder(model);
+	}
+
+	/**
+	 * @return {@link NeighbourTable} memory-mapped from the given file, which must have been built for
+	 * the given model
+	 * @throws IllegalStateException if the file belongs to a different model or has not been completely built
+	 */
+	public static NeighbourTable open(File file, Word2VecModel model) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			final FileChannel channel = raf.getChannel();
+			final ByteBuffer fixed = read(channel, 0, FIXED_HEADER_SIZE);
+			Preconditions.checkState(fixed.getInt() == MAGIC && fixed.getInt() == VERSION,
+					"File '%s' is not a neighbour table", file.getAbsolutePath());
+			final int vocabSize = fixed.getInt();
+			final int numNeighbours = fixed.getInt();
+			final int blockSize = fixed.getInt();
+			final long vocabHash = fixed.getLong();
+			Preconditions.checkState(vocabSize == model.vocab.size() && vocabHash == vocabHash(model.vocab),
+					"Neighbour table '%s' was built for a different model", file.getAbsolutePath());
+
+			final int numBlocks = numBlocks(vocabSize, blockSize);
+			final ByteBuffer done = read(channel, FIXED_HEADER_SIZE, numBlocks);
+			for (int block = 0; block < numBlocks; block++) {
+				Preconditions.checkState(done.get(block) != 0,
+						"Neighbour table '%s' is incomplete, block %s has not been computed", file.getAbsolutePath(), block);
+			}
+
+			final long size = (long) vocabSize * numNeighbours * 4;
+			final long rowsOffset = dataOffset(numBlocks);
+			return new NeighbourTable(vocabSize, numNeighbours,
+					channel.map(FileChannel.MapMode.READ_ONLY, rowsOffset, size),
+					channel.map(FileChannel.MapMode.READ_ONLY, rowsOffset + size, size));
+		}
+	}
+
+	/** Unmaps the table; neither this table nor its searchers may be used afterwards */
+	@Override public void close() {
+		DirectBuffers.unmap(rowsMapping);
+		DirectBuffers.unmap(scoresMapping);
+	}
+
+	/** @return Number of neighbours stored for every word */
+	public int getNumNeighbours() {
+		return numNeighbours;
+	}
+
+	/**
+	 * @param fallback {@link Searcher} over the same model, used for every query the table cannot answer
+	 * @return {@link Searcher} which answers {@link Searcher#getMatches(String, int)} from this table
+	 */
+	public Searcher forSearch(Word2VecModel model, Searcher fallback) {
+		Preconditions.checkArgument(model.vocab.size() == vocabSize,
+				"Model has %s words, but the neighbour table has %s", model.vocab.size(), vocabSize);
+		return new NeighbourTableSearcher(this, model.vocab, fallback);
+	}
+
+	/** @return Row of the i-th nearest neighbour of the given row */
+	int neighbour(int row, int i) {
+		return rows.get(row * numNeighbours + i);
+	}
+
+	/** @return Cosine similarity of the i-th nearest neighbour of the given row */
+	float score(int row, int i) {
+		return scores.get(row * numNeighbours + i);
+	}
+
+	/** @return Hash identifying the vocabulary a table was built for */
+	static long vocabHash(List<String> vocab) {
+		final Hasher hasher = Hashing.murmur3_128().newHasher();
+		for (String word : vocab) {
+			hasher.putString(word, StandardCharsets.UTF_8);
+			hasher.putByte((byte) 0);
+		}
+		return hasher.hash().asLong();
+	}
+
+	static int numBlocks(int vocabSize, int blockSize) {
+		return (vocabSize + blockSize - 1) / blockSize;
+	}
+
+	/** @return Offset of the block completion flags */
+	static long flagsOffset() {
+		return FIXED_HEADER_SIZE;
+	}
+
+	/** @return Offset of the neighbour rows, after the header aligned to 8 bytes */
+	static long dataOffset(int numBlocks) {
+		return (FIXED_HEADER_SIZE + numBlocks + 7) & ~7L;
+	}
+
+	/** @return Header of a table with the given dimensions, without the block completion flags */
+	static ByteBuffer header(int vocabSize, int numNeighbours, int blockSize, long vocabHash) {
+		final ByteBuffer header = ByteBuffer.allocate(FIXED_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC).putInt(VERSION).putInt(vocabSize).putInt(numNeighbours).putInt(blockSize).putLong(vocabHash);
+		header.flip();
+		return header;
+	}
+
+	/** @return Little endian buffer with the given range of the channel, or an empty one past the end */
+	static ByteBuffer read(FileChannel channel, long position, int size) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0)
+				break;
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/** @return Size in bytes of a complete table with the given dimensions */
+	static long fileSize(int vocabSize, int numNeighbours, int blockSize) {
+		return dataOffset(numBlocks(vocabSize, blockSize)) + 2L * vocabSize * numNeighbours * Ints.BYTES;
+	}
+
+	@Override public String toString() {
+		return String.format("%s neighbours of %s words", numNeighbours, vocabSize);
+	}
+}
@@ -0,0 +1,191 @@
+package com.medallia.word2vec;
+
+import com.google.common.base.Preconditions;
+import com.medallia.word2vec.util.AutoLog;
+import org.apache.commons.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builder pattern for computing a {@link NeighbourTable}
+ * <p>
+ * The vocabulary is split into blocks of words whose neighbours are computed together in a single
+ * pass over all vectors, with blocks spread over a thread pool. Each finished block is flagged in
+ * the file header, so an interrupted build resumes with the blocks that are still missing when it
+ * is run again with the same parameters.
+ */
+public class NeighbourTableBuilder {
+	private static final Log LOG = AutoLog.getLog();
+
+	private final NormalizedWord2VecModel model;
+	private int numNeighbours = 50;
+	private int blockSize = 256;
+	private int numThreads = Runtime.getRuntime().availableProcessors();
+
+	NeighbourTableBuilder(NormalizedWord2VecModel model) {
+		this.model = model;
+	}
+
+	/**
+	 * Number of neighbours to store for every word
+	 * <p>
+	 * Defaults to 50
+	 */
+	public NeighbourTableBuilder setNumNeighbours(int numNeighbours) {
+		Preconditions.checkArgument(numNeighbours > 0, "Value must be positive");
+		this.numNeighbours = numNeighbours;
+		return this;
+	}
+
+	/**
+	 * Number of words whose neighbours are computed in one pass over the vectors
+	 * <p>
+	 * Defaults to 256
+	 */
+	public NeighbourTableBuilder setBlockSize(int blockSize) {
+		Preconditions.checkArgument(blockSize > 0, "Value must be positive");
+		this.blockSize = blockSize;
+		return this;
+	}
+
+	/**
+	 * Specify number of threads to use for parallelization
+	 * <p>
+	 * Defaults to {@link Runtime#availableProcessors()}
+	 */
+	public NeighbourTableBuilder useNumThreads(int numThreads) {
+		Preconditions.checkArgument(numThreads > 0, "Value must be positive");
+		this.numThreads = numThreads;
+		return this;
+	}
+
+	/**
+	 * Computes the table into the given file, resuming a previous build of the same table if the file
+	 * already exists
+	 *
+	 * @throws IllegalStateException if the file holds a table with different parameters
+	 */
+	public NeighbourTable build(File file) throws IOException, InterruptedException {
+		final int vocabSize = model.vocab.size();
+		final int k = Math.min(numNeighbours, vocabSize - 1);
+		Preconditions.checkState(k > 0, "Vocabulary is too small to have neighbours");
+		final int numBlocks = NeighbourTable.numBlocks(vocabSize, blockSize);
+		final ByteBuffer header = NeighbourTable.header(vocabSize, k, blockSize, NeighbourTable.vocabHash(model.vocab));
+
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			final FileChannel channel = raf.getChannel();
+			final boolean[] done = new boolean[numBlocks];
+			if (channel.size() == 0) {
+				channel.write(header, 0);
+				raf.setLength(NeighbourTable.fileSize(vocabSize, k, blockSize));
+			} else {
+				Preconditions.checkState(
+						NeighbourTable.read(channel, 0, header.remaining()).equals(header)
+								&& channel.size() == NeighbourTable.fileSize(vocabSize, k, blockSize),
+						"File '%s' holds a different neighbour table, delete it to start over", file.getAbsolutePath());
+				final ByteBuffer flags = NeighbourTable.read(channel, NeighbourTable.flagsOffset(), numBlocks);
+				for (int block = 0; block < numBlocks; block++)
+					done[block] = flags.get(block) != 0;
+			}
+
+			final AtomicInteger finished = new AtomicInteger();
+			final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+			try {
+				final List<Future<?>> futures = new ArrayList<>();
+				for (int block = 0; block < numBlocks; block++) {
+					if (done[block]) {
+						finished.incrementAndGet();
+						continue;
+					}
+					final int b = block;
+					futures.add(executor.submit(() -> {
+						computeBlock(b, k, channel);
+						final int count = finished.incrementAndGet();
+						if (count % 100 == 0 || count == numBlocks)
+							LOG.info(String.format("Computed neighbours for %d/%d blocks", count, numBlocks));
+						return null;
+					}));
+				}
+				for (Future<?> future : futures)
+					future.get();
+			} catch (ExecutionException e) {
+				throw new IOException("Failed to compute neighbour table " + file.getAbsolutePath(), e.getCause());
+			} finally {
+				executor.shutdownNow();
+			}
+		}
+
+		return NeighbourTable.open(file, model);
+	}
+
+	/** Computes and writes the neighbours of one block of words, then flags the block as done */
+	private void computeBlock(int block, int k, FileChannel channel) throws IOException {
+		final int layerSize = model.layerSize;
+		final int vocabSize = model.vocab.size();
+		final int start = block * blockSize;
+		final int end = Math.min(start + blockSize, vocabSize);
+		// Only absolute gets are used, which do not touch the position of the shared buffer
+		final DoubleBuffer vectors = model.vectors;
+
+		final TopMatches[] tops = new TopMatches[end - start];
+		for (int q = 0; q < tops.length; q++)
+			tops[q] = new TopMatches(k);
+		final float[] queries = new float[tops.length * layerSize];
+		for (int i = 0; i < queries.length; i++)
+			queries[i] = (float) vectors.get(start * layerSize + i);
+		// Each vector is read once per block and compared against every word of the block
+		final float[] vec = new float[layerSize];
+		for (int row = 0; row < vocabSize; row++) {
+			final int rowOffset = row * layerSize;
+			for (int j = 0; j < layerSize; j++)
+				vec[j] = (float) vectors.get(rowOffset + j);
+			for (int q = 0; q < tops.length; q++) {
+				if (start + q == row)
+					continue;
+				final int queryOffset = q * layerSize;
+				float d = 0;
+				for (int j = 0; j < layerSize; j++)
+					d += queries[queryOffset + j] * vec[j];
+				tops[q].offer(row, d);
+			}
+		}
+
+		final ByteBuffer rows = ByteBuffer.allocate(tops.length * k * 4).order(ByteOrder.LITTLE_ENDIAN);
+		final ByteBuffer scores = ByteBuffer.allocate(tops.length * k * 4).order(ByteOrder.LITTLE_ENDIAN);
+		for (TopMatches top : tops) {
+			top.sort();
+			for (int i = 0; i < k; i++) {
+				rows.putInt(top.row(i));
+				scores.putFloat(top.score(i));
+			}
+		}
+		rows.flip();
+		scores.flip();
+
+		final long rowsOffset = NeighbourTable.dataOffset(NeighbourTable.numBlocks(vocabSize, blockSize));
+		final long blockOffset = (long) start * k * 4;
+		write(channel, rows, rowsOffset + blockOffset);
+		write(channel, scores, rowsOffset + (long) vocabSize * k * 4 + blockOffset);
+		// Make sure the data is on disk before flagging the block as done
+		channel.force(false);
+		write(channel, ByteBuffer.wrap(new byte[] { 1 }), NeighbourTable.flagsOffset() + block);
+	}
+
+	private static void write(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining())
+			channel.write(buffer, position + buffer.position());
+	}
+}
@@ -0,0 +1,76 @@
+package com.medallia.word2vec;
+
+import com.google.common.collect.ImmutableList;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * {@link Searcher} which answers {@link #getMatches(String, int)} for known words and at most
+ * {@link NeighbourTable#getNumNeighbours()} matches straight from a {@link NeighbourTable}, and
+ * forwards every other query to a fallback {@link Searcher}.
+ */
+class NeighbourTableSearcher implements Searcher {
+	private final NeighbourTable table;
+	private final Vocabulary vocab;
+	private final Searcher fallback;
+
+	NeighbourTableSearcher(NeighbourTable table, Vocabulary vocab, Searcher fallback) {
+		this.table = table;
+		this.vocab = vocab;
+		this.fallback = fallback;
+	}
+
+	@Override public List<Match> getMatches(String word, int maxMatches) throws UnknownWordException {
+		final int row = vocab.indexOf(word);
+		if (row == -1 || maxMatches > table.numNeighbours)
+			return fallback.getMatches(word, maxMatches);
+
+		final List<Match> result = new ArrayList<>(maxMatches);
+		for (int i = 0; i < maxMatches; i++)
+			result.add(new MatchImpl(vocab.get(table.neighbour(row, i)), table.score(row, i)));
+		return result;
+	}
+
+	@Override public boolean contains(String word) {
+		return vocab.contains(word);
+	}
+
+	@Override public ImmutableList<Float> getRawVector(String word) throws UnknownWordException {
+		return fallback.getRawVector(word);
+	}
+
+	@Override public int getLayerSize() {
+		return fallback.getLayerSize();
+	}
+
+	@Override public int getWordIndex(String word) {
+		return vocab.indexOf(word);
+	}
+
+	@Override public void getRawVector(String word, float[] dest) throws UnknownWordException {
+		fallback.getRawVector(word, dest);
+	}
+
+	@Override public void getRawVector(int index, float[] dest) {
+		fallback.getRawVector(index, dest);
+	}
+
+	@Override public FloatBuffer getRawVectorBuffer(String word) throws UnknownWordException {
+		return fallback.getRawVectorBuffer(word);
+	}
+
+	@Override public List<Match> getMatchesFromVector(float[] wordVector, int maxMatches, Set<String> ignored) {
+		return fallback.getMatchesFromVector(wordVector, maxMatches, ignored);
+	}
+
+	@Override public SemanticDifference similarity(String s1, String s2) throws UnknownWordException {
+		return fallback.similarity(s1, s2);
+	}
+
+	@Override public float cosineDistance(String s1, String s2) throws UnknownWordException {
+		return fallback.cosineDistance(s1, s2);
+	}
+}
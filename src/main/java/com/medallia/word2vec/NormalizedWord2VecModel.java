@@ -1,49 +1,136 @@
 package com.medallia.word2vec;
 
+import com.medallia.word2vec.Searcher.UnknownWordException;
 import com.medallia.word2vec.thrift.Word2VecModelThrift;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.nio.DoubleBuffer;
+import java.util.stream.IntStream;
 
 /**
  * Represents a word2vec model where all the vectors are normalized to unit length.
+ * <p>
+ * The length each vector had before normalization is kept, so raw dot products can be answered
+ * from the normalized vectors without keeping a second copy of the raw ones.
  */
 public class NormalizedWord2VecModel extends Word2VecModel {
-	private NormalizedWord2VecModel(Iterable<String> vocab, int layerSize, final DoubleBuffer vectors) {
-		super(vocab, layerSize, vectors);
-		normalize();
-	}
+	/** Length of every vector before normalization */
+	private final double[] norms;
 
-	private NormalizedWord2VecModel(Iterable<String> vocab, int layerSize, double[] vectors) {
+	private NormalizedWord2VecModel(Vocabulary vocab, int layerSize, DoubleBuffer vectors, double[] norms) {
 		super(vocab, layerSize, vectors);
-		normalize();
+		this.norms = norms;
 	}
 
+	/**
+	 * @return {@link NormalizedWord2VecModel} with the normalized vectors of the given model in new
+	 * storage. The given model is not modified.
+	 */
 	public static NormalizedWord2VecModel fromWord2VecModel(Word2VecModel model) {
-		return new NormalizedWord2VecModel(model.vocab, model.layerSize, model.vectors.duplicate());
+		return fromWord2VecModel(model, false);
+	}
+
+	/**
+	 * @param inPlace if true, the vectors are normalized in the storage of the given model, which
+	 * then holds normalized vectors as well, instead of in new storage. This avoids a second copy of
+	 * the vectors when the raw model is no longer needed.
+	 * @return {@link NormalizedWord2VecModel} with the normalized vectors of the given model, which
+	 * are normalized in parallel
+	 */
+	public static NormalizedWord2VecModel fromWord2VecModel(Word2VecModel model, boolean inPlace) {
+		if (model instanceof NormalizedWord2VecModel)
+			return (NormalizedWord2VecModel) model;
+
+		final int vocabSize = model.vocab.size();
+		final int layerSize = model.layerSize;
+		// Only absolute gets and puts are used, which do not touch the position of the shared buffers
+		final DoubleBuffer raw = model.vectors;
+		final DoubleBuffer normalized = inPlace ? raw : DoubleBuffer.wrap(new double[vocabSize * layerSize]);
+		final double[] norms = new double[vocabSize];
+
+		IntStream.range(0, vocabSize).parallel().forEach(row -> {
+			final int offset = row * layerSize;
+			double len = 0;
+			for (int j = offset; j < offset + layerSize; j++)
+				len += raw.get(j) * raw.get(j);
+			len = Math.sqrt(len);
+			norms[row] = len;
+			// Leave all zero vectors as zero rather than dividing by zero
+			final double scale = len == 0 ? 0 : 1 / len;
+			for (int j = offset; j < offset + layerSize; j++)
+				normalized.put(j, raw.get(j) * scale);
+		});
+
+		return new NormalizedWord2VecModel(model.vocab, layerSize, normalized, norms);
 	}
 
 	/** @return {@link NormalizedWord2VecModel} created from a thrift representation */
 	public static NormalizedWord2VecModel fromThrift(final Word2VecModelThrift thrift) {
-		return fromWord2VecModel(Word2VecModel.fromThrift(thrift));
+		return fromWord2VecModel(Word2VecModel.fromThrift(thrift), true);
 	}
 
 	public static NormalizedWord2VecModel fromBinFile(final File file) throws IOException {
-		return fromWord2VecModel(Word2VecModel.fromBinFile(file));
+		return fromWord2VecModel(Word2VecModel.fromBinFile(file), true);
 	}
 
-	/** Normalizes the vectors in this model */
-	private void normalize() {
-		for(int i = 0; i < vocab.size(); ++i) {
-			double len = 0;
-			for(int j = i * layerSize; j < (i + 1) * layerSize; ++j)
-				len += vectors.get(j) * vectors.get(j);
-			len = Math.sqrt(len);
+	@Override public Searcher forSearch() {
+		return new SearcherImpl(this);
+	}
+
+	@Override public long getHeapBytes() {
+		return super.getHeapBytes() + 8L * norms.length;
+	}
+
+	/**
+	 * @return Length of the vector of the given word before normalization
+	 * @throws UnknownWordException If word is not in the model's vocabulary
+	 */
+	public double getNorm(String word) throws UnknownWordException {
+		return norms[getRow(word)];
+	}
+
+	/**
+	 * @return Cosine similarity of the vectors of the given words
+	 * @throws UnknownWordException If a word is not in the model's vocabulary
+	 */
+	public double cosineSimilarity(String s1, String s2) throws UnknownWordException {
+		return dot(getRow(s1), getRow(s2));
+	}
+
+	/**
+	 * @return Dot product of the vectors of the given words before normalization
+	 * @throws UnknownWordException If a word is not in the model's vocabulary
+	 */
+	public double rawDotProduct(String s1, String s2) throws UnknownWordException {
+		final int row1 = getRow(s1);
+		final int row2 = getRow(s2);
+		return dot(row1, row2) * norms[row1] * norms[row2];
+	}
+
+	/** @return Length of the vector at the given row before normalization */
+	double norm(int row) {
+		return norms[row];
+	}
+
+	/** @return Dot product of the normalized vectors at the given rows */
+	private double dot(int row1, int row2) {
+		final int offset1 = row1 * layerSize;
+		final int offset2 = row2 * layerSize;
+		double d = 0;
+		for (int j = 0; j < layerSize; j++)
+			d += vectors.get(offset1 + j) * vectors.get(offset2 + j);
+		return d;
+	}
 
-			for(int j = i * layerSize; j < (i + 1) * layerSize; ++j)
-				vectors.put(j, vectors.get(j) / len);
-		}
+	/**
+	 * @return Row of the given word
+	 * @throws UnknownWordException If word is not in the model's vocabulary
+	 */
+	private int getRow(String word) throws UnknownWordException {
+		final int row = vocab.indexOf(word);
+		if (row == -1)
+			throw new UnknownWordException(word);
+		return row;
 	}
 }
@@ -0,0 +1,77 @@
+package com.medallia.word2vec;
+
+import com.google.common.collect.ImmutableSet;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Implementation of {@link Searcher} over a {@link QuantizedWord2VecModel}
+ * <p>
+ * Matches are found by scanning the reduced precision vectors. If a full precision model is given,
+ * the best candidates of that scan are rescored against it, and the vectors of the vocabulary
+ * words are read from it as well.
+ */
+class QuantizedSearcherImpl extends AbstractSearcher {
+	private final QuantizedWord2VecModel model;
+	private final Word2VecModel fullPrecision;
+	private final int candidatesPerMatch;
+
+	QuantizedSearcherImpl(QuantizedWord2VecModel model, Word2VecModel fullPrecision, int candidatesPerMatch) {
+		super(model.vocab, model.layerSize);
+		this.model = model;
+		this.fullPrecision = fullPrecision;
+		this.candidatesPerMatch = candidatesPerMatch;
+	}
+
+	@Override List<Match> getMatches(float[] vec, int maxMatches, Set<String> ignored) {
+		// Ignored words are dropped after the scan, so make room for them
+		final int vocabSize = vocab.size();
+		final int candidates = fullPrecision == null ? maxMatches : maxMatches * candidatesPerMatch;
+		final TopMatches top = new TopMatches(Math.min(vocabSize, candidates + ignored.size()));
+		for (int row = 0; row < vocabSize; row++)
+			top.offer(row, model.dot(row, vec));
+
+		if (fullPrecision == null)
+			return top.toMatches(vocab, ignored, maxMatches);
+
+		final TopMatches rescored = new TopMatches(maxMatches);
+		for (int i = 0; i < top.size(); i++) {
+			final int row = top.row(i);
+			if (!ignored.contains(vocab.get(row)))
+				rescored.offer(row, fullPrecisionDot(row, vec));
+		}
+		return rescored.toMatches(vocab, ImmutableSet.<String>of(), maxMatches);
+	}
+
+	/** @return Dot product of the given vector with the normalized full precision vector of the given row */
+	private float fullPrecisionDot(int row, float[] vec) {
+		final int offset = row * layerSize;
+		double d = 0;
+		double len = 0;
+		for (int j = 0; j < layerSize; j++) {
+			final double x = fullPrecision.vectors.get(offset + j);
+			d += x * vec[j];
+			len += x * x;
+		}
+		return len == 0 ? 0 : (float) (d / Math.sqrt(len));
+	}
+
+	/** Copies the normalized vector of the given row into dest, in full precision if available */
+	@Override void getVector(int row, float[] dest) {
+		if (fullPrecision == null) {
+			model.getVector(row, dest);
+			return;
+		}
+
+		final int offset = row * layerSize;
+		double len = 0;
+		for (int j = 0; j < layerSize; j++) {
+			final double x = fullPrecision.vectors.get(offset + j);
+			len += x * x;
+		}
+		len = len == 0 ? 1 : Math.sqrt(len);
+		for (int j = 0; j < layerSize; j++)
+			dest[j] = (float) (fullPrecision.vectors.get(offset + j) / len);
+	}
+}
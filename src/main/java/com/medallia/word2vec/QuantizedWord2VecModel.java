@@ -0,0 +1,202 @@
+package com.medallia.word2vec;
+
+import com.google.common.base.Preconditions;
+import com.medallia.word2vec.util.HalfFloats;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Represents a word2vec model where the vectors are normalized to unit length and stored at
+ * reduced precision, either as one byte per component with a scale per row, or as IEEE 754 half
+ * precision floats.
+ * <p>
+ * Compared to the 8 bytes per component of {@link Word2VecModel} this uses 4 to 8 times less
+ * memory, at the cost of a small error in the similarity scores. {@link #forSearch(Word2VecModel, int)}
+ * can recover exact scores by rescoring the best candidates against the full precision model.
+ * <p>
+ * Instances of this class are obtained via:
+ * <ul>
+ * <li> {@link #fromWord2VecModel(Word2VecModel, Precision)}
+ * <li> {@link #fromBinFile(File, Precision)}
+ * </ul>
+ */
+public class QuantizedWord2VecModel {
+	/** Supported reduced precision storage formats */
+	public enum Precision {
+		/** One signed byte per component plus one float scale per row */
+		INT8,
+		/** One IEEE 754 half precision float per component */
+		FLOAT16,
+		;
+	}
+
+	final Vocabulary vocab;
+	final int layerSize;
+	final Precision precision;
+	/** Components scaled to [-127, 127], only used with {@link Precision#INT8} */
+	private final byte[] bytes;
+	/** Scale of each row, only used with {@link Precision#INT8} */
+	private final float[] scales;
+	/** Half precision components, only used with {@link Precision#FLOAT16} */
+	private final short[] halves;
+
+	private QuantizedWord2VecModel(Vocabulary vocab, int layerSize, Precision precision, byte[] bytes, float[] scales, short[] halves) {
+		this.vocab = vocab;
+		this.layerSize = layerSize;
+		this.precision = precision;
+		this.bytes = bytes;
+		this.scales = scales;
+		this.halves = halves;
+	}
+
+	/**
+	 * @return {@link QuantizedWord2VecModel} holding the normalized vectors of the given model at the
+	 * given precision. The given model is not modified.
+	 */
+	public static QuantizedWord2VecModel fromWord2VecModel(Word2VecModel model, final Precision precision) {
+		final int layerSize = model.layerSize;
+		final Quantizer quantizer = new Quantizer(model.vocab.size(), layerSize, precision);
+		// Only absolute gets are used, which do not touch the position of the shared buffer
+		final DoubleBuffer vectors = model.vectors;
+
+		IntStream.range(0, model.vocab.size()).parallel().forEach(row -> {
+			final double[] vector = new double[layerSize];
+			for (int j = 0; j < layerSize; j++)
+				vector[j] = vectors.get(row * layerSize + j);
+			quantizer.set(row, vector);
+		});
+
+		return quantizer.build(model.vocab);
+	}
+
+	/**
+	 * @return {@link QuantizedWord2VecModel} read from the binary representation output by the open
+	 * source C version of word2vec, stored at the given precision. The vectors are quantized while
+	 * they are read, without loading a full precision model first.
+	 *
+	 * @see ModelLoaderBuilder#fromBinFile(File, Precision)
+	 */
+	public static QuantizedWord2VecModel fromBinFile(File file, Precision precision) throws IOException {
+		return Word2VecModel.loader().fromBinFile(file, precision);
+	}
+
+	/** Reduced precision storage, filled concurrently in disjoint rows */
+	static class Quantizer implements BinFileLoader.Rows<QuantizedWord2VecModel> {
+		private final int layerSize;
+		private final Precision precision;
+		private final byte[] bytes;
+		private final float[] scales;
+		private final short[] halves;
+
+		Quantizer(int vocabSize, int layerSize, Precision precision) {
+			this.layerSize = layerSize;
+			this.precision = Preconditions.checkNotNull(precision);
+			this.bytes = precision == Precision.INT8 ? new byte[vocabSize * layerSize] : null;
+			this.scales = precision == Precision.INT8 ? new float[vocabSize] : null;
+			this.halves = precision == Precision.FLOAT16 ? new short[vocabSize * layerSize] : null;
+		}
+
+		@Override public void set(int row, float[] vector) {
+			final double[] doubles = new double[layerSize];
+			for (int j = 0; j < layerSize; j++)
+				doubles[j] = vector[j];
+			set(row, doubles);
+		}
+
+		/** Normalizes and stores the vector of the given row */
+		void set(int row, double[] vector) {
+			final int offset = row * layerSize;
+			double len = 0;
+			double max = 0;
+			for (double d : vector) {
+				len += d * d;
+				max = Math.max(max, Math.abs(d));
+			}
+			len = Math.sqrt(len);
+			// Leave all zero vectors as zero rather than dividing by zero
+			final double norm = len == 0 ? 0 : 1 / len;
+
+			if (precision == Precision.INT8) {
+				final float scale = (float) (max * norm / 127);
+				scales[row] = scale;
+				if (scale == 0)
+					return;
+				for (int j = 0; j < layerSize; j++)
+					bytes[offset + j] = (byte) Math.round(vector[j] * norm / scale);
+			} else {
+				for (int j = 0; j < layerSize; j++)
+					halves[offset + j] = HalfFloats.fromFloat((float) (vector[j] * norm));
+			}
+		}
+
+		@Override public QuantizedWord2VecModel build(List<String> vocab) {
+			return new QuantizedWord2VecModel(Vocabulary.copyOf(vocab), layerSize, precision, bytes, scales, halves);
+		}
+	}
+
+	/** @return Vocabulary */
+	public Iterable<String> getVocab() {
+		return vocab;
+	}
+
+	/** @return Size of the vectors */
+	public int getLayerSize() {
+		return layerSize;
+	}
+
+	/** @return {@link Precision} of the stored vectors */
+	public Precision getPrecision() {
+		return precision;
+	}
+
+	/** @return {@link Searcher} which only scans the reduced precision vectors */
+	public Searcher forSearch() {
+		return new QuantizedSearcherImpl(this, null, 0);
+	}
+
+	/**
+	 * @param fullPrecision model this one was created from, which must have the same vocabulary
+	 * @param candidatesPerMatch how many candidates found in the reduced precision scan are rescored
+	 * in full precision for every requested match
+	 * @return {@link Searcher} which scans the reduced precision vectors and rescores the best
+	 * candidates in full precision
+	 */
+	public Searcher forSearch(Word2VecModel fullPrecision, int candidatesPerMatch) {
+		Preconditions.checkArgument(fullPrecision.vocab.size() == vocab.size() && fullPrecision.layerSize == layerSize,
+				"Full precision model has %s vectors of size %s, expected %s vectors of size %s",
+				fullPrecision.vocab.size(), fullPrecision.layerSize, vocab.size(), layerSize);
+		Preconditions.checkArgument(candidatesPerMatch > 0, "Value must be positive");
+		return new QuantizedSearcherImpl(this, fullPrecision, candidatesPerMatch);
+	}
+
+	/** @return Dot product of the given vector with the stored vector of the given row */
+	float dot(int row, float[] vec) {
+		final int offset = row * layerSize;
+		float d = 0;
+		if (precision == Precision.INT8) {
+			for (int j = 0; j < layerSize; j++)
+				d += vec[j] * bytes[offset + j];
+			return d * scales[row];
+		}
+		for (int j = 0; j < layerSize; j++)
+			d += vec[j] * HalfFloats.toFloat(halves[offset + j]);
+		return d;
+	}
+
+	/** Copies the stored vector of the given row, expanded to floats, into the given array */
+	void getVector(int row, float[] dest) {
+		final int offset = row * layerSize;
+		if (precision == Precision.INT8) {
+			final float scale = scales[row];
+			for (int j = 0; j < layerSize; j++)
+				dest[j] = bytes[offset + j] * scale;
+		} else {
+			for (int j = 0; j < layerSize; j++)
+				dest[j] = HalfFloats.toFloat(halves[offset + j]);
+		}
+	}
+}
@@ -1,5 +1,6 @@
 package com.medallia.word2vec;
 
+import java.nio.FloatBuffer;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Set;
@@ -15,6 +16,30 @@ public interface Searcher {
 	
 	/** @return Raw word vector */
 	ImmutableList<Float> getRawVector(String word);
+
+	/** @return Size of the word vectors */
+	int getLayerSize();
+
+	/**
+	 * @return Index of the word in the model's vocabulary, or -1 if it is not in the vocabulary.
+	 * Indexes are only valid for this {@link Searcher}.
+	 */
+	int getWordIndex(String word);
+
+	/**
+	 * Copies the raw word vector into the given array of at least {@link #getLayerSize()} elements,
+	 * without boxing
+	 */
+	void getRawVector(String word, float[] dest);
+
+	/** Copies the raw vector of the word at the given index into the given array */
+	void getRawVector(int index, float[] dest);
+
+	/**
+	 * @return Read-only view of the raw word vector. Implementations which do not store the vector
+	 * as floats return a read-only copy.
+	 */
+	FloatBuffer getRawVectorBuffer(String word);
 	
 	/** @return Top matches to the given word, not including the given word. */
 	List<Match> getMatches(String word, int maxMatches);
@@ -40,6 +65,15 @@ public interface Searcher {
 
 	/** @return cosine similarity between two words. */
 	float cosineDistance(String s1, String s2);
+
+	/** Exception when a word is unknown to the {@link Word2VecModel}'s vocabulary */
+	class UnknownWordException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		UnknownWordException(String word) {
+			super(String.format("Unknown search word '%s'", word));
+		}
+	}
 	
 	/** Represents a match to a search word */
 	interface Match {
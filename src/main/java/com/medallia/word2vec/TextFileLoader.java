@@ -0,0 +1,411 @@
+package com.medallia.word2vec;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Parallel loader for the text format of the C version of word2vec: a "vocabSize layerSize" header
+ * line, then one line per word with the word and its layerSize values, separated by spaces.
+ * <p>
+ * The file is split into byte ranges that end on line boundaries. Threads first count the lines of
+ * every range, which gives the row each range starts at, then parse their ranges straight into the
+ * model's vectors. Ranges are read through a buffer with positional channel reads, and numbers are
+ * parsed from the bytes without creating a String per value.
+ * <p>
+ * With the options of {@link ModelLoaderBuilder}, when fewer words than in the file are wanted, the
+ * end of the last kept line is first found with a sequential pass that only reads the words, and the
+ * rest of the file is never read. Rejected lines and the values of dropped dimensions are skipped
+ * without being parsed.
+ */
+class TextFileLoader {
+	/** Size of the read buffer of each thread */
+	private static final int BUFFER_SIZE = 1 << 16;
+	/** Number of ranges per thread, so that threads finishing early can help the others */
+	private static final int CHUNKS_PER_THREAD = 4;
+	/** Powers of ten that are exact as doubles */
+	private static final double[] POW10 = new double[23];
+	static {
+		POW10[0] = 1;
+		for (int i = 1; i < POW10.length; i++)
+			POW10[i] = POW10[i - 1] * 10;
+	}
+
+	private final File file;
+	private final ModelLoaderBuilder options;
+	private final FileChannel channel;
+	private final long fileSize;
+
+	private TextFileLoader(File file, ModelLoaderBuilder options, FileChannel channel) throws IOException {
+		this.file = file;
+		this.options = options;
+		this.channel = channel;
+		this.fileSize = channel.size();
+	}
+
+	/** @return {@link Word2VecModel} read from the given file with the given number of threads */
+	static Word2VecModel load(File file, int numThreads, ModelLoaderBuilder options) throws IOException {
+		Preconditions.checkArgument(numThreads > 0, "Value must be positive");
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			return new TextFileLoader(file, options, channel).load(numThreads);
+		}
+	}
+
+	private Word2VecModel load(int numThreads) throws IOException {
+		final Reader header = new Reader(0, fileSize);
+		final ByteArray firstLine = new ByteArray();
+		int b;
+		while ((b = header.next()) != -1 && b != '\n')
+			firstLine.add((byte) b);
+		final String[] dimensions = firstLine.toString().trim().split(" ");
+		Preconditions.checkArgument(dimensions.length == 2,
+				"For file '%s', expected vocab size and layer size in the first line, but found '%s'",
+				file.getAbsolutePath(), firstLine);
+		final int vocabSize = Integer.parseInt(dimensions[0]);
+		final int layerSize = Integer.parseInt(dimensions[1]);
+		final int maxVocabSize = Math.min(vocabSize, options.maxVocabSize);
+		final int loadedLayerSize = Math.min(layerSize, options.maxLayerSize);
+		Preconditions.checkArgument((long) maxVocabSize * loadedLayerSize <= Integer.MAX_VALUE,
+				"For file '%s', model of %s vectors with dimensionality %s is too large",
+				file.getAbsolutePath(), maxVocabSize, loadedLayerSize);
+
+		final long dataStart = header.position();
+		// Only the lines up to the last kept one are read; the whole file if it is not known in advance
+		final long dataEnd = maxVocabSize < vocabSize ? new Reader(dataStart, fileSize).skipKeptLines(maxVocabSize) : fileSize;
+		final int numChunks = (int) Math.max(1, Math.min(numThreads * CHUNKS_PER_THREAD, (dataEnd - dataStart) / BUFFER_SIZE));
+		final long[] chunkStarts = new long[numChunks + 1];
+		chunkStarts[0] = dataStart;
+		for (int chunk = 1; chunk < numChunks; chunk++)
+			chunkStarts[chunk] = Math.min(dataEnd, Math.max(chunkStarts[chunk - 1], nextLine(dataStart + (dataEnd - dataStart) * chunk / numChunks)));
+		chunkStarts[numChunks] = dataEnd;
+
+		final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		try {
+			final List<Future<LineCount>> counts = new ArrayList<>();
+			for (int chunk = 0; chunk < numChunks; chunk++) {
+				final Reader reader = new Reader(chunkStarts[chunk], chunkStarts[chunk + 1]);
+				counts.add(executor.submit(reader::countLines));
+			}
+			final int[] firstLines = new int[numChunks + 1];
+			final int[] firstRows = new int[numChunks + 1];
+			for (int chunk = 0; chunk < numChunks; chunk++) {
+				final LineCount count = counts.get(chunk).get();
+				firstLines[chunk + 1] = firstLines[chunk] + count.lines;
+				firstRows[chunk + 1] = firstRows[chunk] + count.keptLines;
+			}
+			if (dataEnd == fileSize) {
+				Preconditions.checkArgument(
+						vocabSize == firstLines[numChunks],
+						"For file '%s', vocab size is %s, but there are %s word vectors in the file",
+						file.getAbsolutePath(),
+						vocabSize,
+						firstLines[numChunks]
+				);
+			}
+			final int loadedVocabSize = Math.min(maxVocabSize, firstRows[numChunks]);
+
+			final String[] vocab = new String[loadedVocabSize];
+			final double[] vectors = new double[loadedVocabSize * loadedLayerSize];
+			final List<Future<?>> futures = new ArrayList<>();
+			for (int chunk = 0; chunk < numChunks; chunk++) {
+				final Reader reader = new Reader(chunkStarts[chunk], chunkStarts[chunk + 1]);
+				final int chunkFirstLine = firstLines[chunk];
+				final int firstRow = firstRows[chunk];
+				futures.add(executor.submit(() -> {
+					reader.parseLines(chunkFirstLine, firstRow, layerSize, loadedLayerSize, vocab, vectors);
+					return null;
+				}));
+			}
+			for (Future<?> future : futures)
+				future.get();
+
+			return new Word2VecModel(Arrays.asList(vocab), loadedLayerSize, vectors);
+		} catch (ExecutionException e) {
+			Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+			throw Throwables.propagate(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while loading " + file.getAbsolutePath());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/** @return Position right after the first newline at or after the given position */
+	private long nextLine(long pos) throws IOException {
+		final Reader reader = new Reader(pos, fileSize);
+		int b;
+		while ((b = reader.next()) != -1 && b != '\n') {
+		}
+		return reader.position();
+	}
+
+	/** Buffered reader of a range of the file */
+	private class Reader {
+		private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		private final long end;
+		/** Position of the file the buffer was filled from */
+		private long bufferStart;
+
+		private Reader(long start, long end) {
+			this.end = end;
+			this.bufferStart = start;
+			buffer.limit(0);
+		}
+
+		/** @return Next byte of the range, or -1 at its end */
+		private int next() throws IOException {
+			if (!buffer.hasRemaining()) {
+				bufferStart += buffer.limit();
+				if (bufferStart >= end)
+					return -1;
+				buffer.clear();
+				buffer.limit((int) Math.min(BUFFER_SIZE, end - bufferStart));
+				while (buffer.hasRemaining()) {
+					if (channel.read(buffer, bufferStart + buffer.position()) < 0)
+						throw new IOException("Unexpected end of file " + file.getAbsolutePath());
+				}
+				buffer.flip();
+			}
+			return buffer.get() & 0xFF;
+		}
+
+		/** @return Position of the next byte */
+		private long position() {
+			return bufferStart + buffer.position();
+		}
+
+		/**
+		 * Reads lines until the given number of them are accepted by the word filter
+		 *
+		 * @return Position right after the last of these lines, or the end of the range if there are fewer
+		 */
+		private long skipKeptLines(int count) throws IOException {
+			final ByteArray word = new ByteArray();
+			int kept = 0;
+			int b = next();
+			while (b != -1 && kept < count) {
+				b = readWord(b, word);
+				if (!options.filtersWords() || options.wordFilter.apply(word.toString()))
+					kept++;
+				while (b != '\n' && b != -1)
+					b = next();
+				b = next();
+			}
+			return b == -1 ? end : position() - 1;
+		}
+
+		/** @return Number of lines in the range, and how many are accepted by the word filter */
+		private LineCount countLines() throws IOException {
+			final LineCount count = new LineCount();
+			if (!options.filtersWords()) {
+				int b, last = '\n';
+				while ((b = next()) != -1) {
+					if (b == '\n')
+						count.lines++;
+					last = b;
+				}
+				if (last != '\n')
+					count.lines++;
+				count.keptLines = count.lines;
+				return count;
+			}
+
+			final ByteArray word = new ByteArray();
+			int b = next();
+			while (b != -1) {
+				b = readWord(b, word);
+				count.lines++;
+				if (options.wordFilter.apply(word.toString()))
+					count.keptLines++;
+				while (b != '\n' && b != -1)
+					b = next();
+				b = next();
+			}
+			return count;
+		}
+
+		/**
+		 * Parses the lines of the range that are accepted by the word filter into the given rows of vocab
+		 * and vectors, stopping once all rows are filled. Only the first loadedLayerSize values of each
+		 * line are parsed.
+		 */
+		private void parseLines(int firstLine, int firstRow, int layerSize, int loadedLayerSize, String[] vocab, double[] vectors) throws IOException {
+			final ByteArray token = new ByteArray();
+			int line = firstLine;
+			int row = firstRow;
+			int b = next();
+			while (b != -1 && row < vocab.length) {
+				b = readWord(b, token);
+				final String word = token.toString();
+				if (options.filtersWords() && !options.wordFilter.apply(word)) {
+					while (b != '\n' && b != -1)
+						b = next();
+					line++;
+					b = next();
+					continue;
+				}
+				vocab[row] = word;
+
+				int values = 0;
+				while (b != '\n' && b != -1) {
+					b = next();
+					token.clear();
+					while (b != ' ' && b != '\n' && b != '\r' && b != -1) {
+						token.add((byte) b);
+						b = next();
+					}
+					if (token.length == 0)
+						continue;
+					if (values < loadedLayerSize)
+						vectors[row * loadedLayerSize + values] = parseDouble(token, line);
+					values++;
+				}
+				Preconditions.checkArgument(
+						layerSize == values,
+						"For file '%s', on line %s, layer size is %s, but found %s values in the word vector",
+						file.getAbsolutePath(),
+						line + 1,
+						layerSize,
+						values
+				);
+
+				line++;
+				row++;
+				b = next();
+			}
+		}
+
+		/** Reads the word starting with the given byte into the given array; @return Byte after the word */
+		private int readWord(int b, ByteArray word) throws IOException {
+			word.clear();
+			while (b != ' ' && b != '\n' && b != -1) {
+				word.add((byte) b);
+				b = next();
+			}
+			return b;
+		}
+
+		/** @return Number in the given token */
+		private double parseDouble(ByteArray token, int row) {
+			final double value = parseDecimal(token.bytes, token.length);
+			if (!Double.isNaN(value))
+				return value;
+			// Rare formats, like infinities or more than 18 significant digits
+			try {
+				return Double.parseDouble(token.toString());
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException(String.format("For file '%s', on line %s, invalid number '%s'", file.getAbsolutePath(), row + 1, token), e);
+			}
+		}
+	}
+
+	/**
+	 * Parses a decimal number with an optional sign, fraction and exponent, as printed by the C version
+	 * of word2vec. The result is correctly rounded, like {@link Double#parseDouble(String)}: the digits
+	 * are read into an exact long below 2^53, which is then scaled by a single exact power of ten up to
+	 * 10^22. Anything else is left to {@link Double#parseDouble(String)}.
+	 *
+	 * @return Parsed number, or NaN if the number is not in that form or could not be parsed exactly
+	 */
+	static double parseDecimal(byte[] bytes, int length) {
+		int i = 0;
+		boolean negative = false;
+		if (i < length && (bytes[i] == '-' || bytes[i] == '+'))
+			negative = bytes[i++] == '-';
+
+		long mantissa = 0;
+		int significantDigits = 0;
+		int scale = 0;
+		boolean anyDigits = false;
+		boolean fraction = false;
+		for (; i < length; i++) {
+			final int b = bytes[i];
+			if (b == '.' && !fraction) {
+				fraction = true;
+				continue;
+			}
+			if (b < '0' || b > '9')
+				break;
+			anyDigits = true;
+			if (mantissa != 0 || b != '0')
+				significantDigits++;
+			if (significantDigits > 18)
+				return Double.NaN;
+			mantissa = mantissa * 10 + (b - '0');
+			if (fraction)
+				scale++;
+		}
+		if (!anyDigits)
+			return Double.NaN;
+
+		int exponent = 0;
+		if (i < length && (bytes[i] == 'e' || bytes[i] == 'E')) {
+			i++;
+			boolean negativeExponent = false;
+			if (i < length && (bytes[i] == '-' || bytes[i] == '+'))
+				negativeExponent = bytes[i++] == '-';
+			if (i == length)
+				return Double.NaN;
+			for (; i < length; i++) {
+				final int b = bytes[i];
+				if (b < '0' || b > '9' || exponent > 1000)
+					return Double.NaN;
+				exponent = exponent * 10 + (b - '0');
+			}
+			if (negativeExponent)
+				exponent = -exponent;
+		}
+		if (i != length)
+			return Double.NaN;
+
+		if (mantissa == 0)
+			return negative ? -0.0 : 0.0;
+		exponent -= scale;
+		if (mantissa >= 1L << 53 || exponent < -22 || exponent > 22)
+			return Double.NaN;
+		final double value = exponent < 0 ? mantissa / POW10[-exponent] : mantissa * POW10[exponent];
+		return negative ? -value : value;
+	}
+
+	/** Number of lines in a range of the file */
+	private static class LineCount {
+		private int lines;
+		private int keptLines;
+	}
+
+	/** Growable byte array */
+	private static class ByteArray {
+		private byte[] bytes = new byte[64];
+		private int length;
+
+		private void add(byte b) {
+			if (length == bytes.length)
+				bytes = Arrays.copyOf(bytes, 2 * length);
+			bytes[length++] = b;
+		}
+
+		private void clear() {
+			length = 0;
+		}
+
+		/** @return Bytes decoded as UTF-8 */
+		@Override public String toString() {
+			return new String(bytes, 0, length, StandardCharsets.UTF_8);
+		}
+	}
+}
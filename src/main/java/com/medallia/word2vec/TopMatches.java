@@ -0,0 +1,104 @@
+package com.medallia.word2vec;
+
+import com.medallia.word2vec.Searcher.Match;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Bounded min-heap of (row, score) pairs which keeps the best scoring rows of a scan over a model
+ * without allocating a {@link Match} for every row.
+ * <p>
+ * Once {@link #sort()} has been called, rows are ordered by decreasing score and no more rows may
+ * be offered.
+ */
+class TopMatches {
+	private final int[] rows;
+	private final float[] scores;
+	private int size;
+
+	/** @param capacity maximum number of rows to keep */
+	TopMatches(int capacity) {
+		this.rows = new int[Math.max(capacity, 0)];
+		this.scores = new float[Math.max(capacity, 0)];
+	}
+
+	/** @return Number of rows kept */
+	int size() {
+		return size;
+	}
+
+	/** @return Row at the given position */
+	int row(int i) {
+		return rows[i];
+	}
+
+	/** @return Score at the given position */
+	float score(int i) {
+		return scores[i];
+	}
+
+	/** Keeps the given row if its score is among the best seen so far */
+	void offer(int row, float score) {
+		if (size < rows.length) {
+			int i = size++;
+			while (i > 0) {
+				int parent = (i - 1) >>> 1;
+				if (scores[parent] <= score)
+					break;
+				rows[i] = rows[parent];
+				scores[i] = scores[parent];
+				i = parent;
+			}
+			rows[i] = row;
+			scores[i] = score;
+		} else if (size > 0 && score > scores[0]) {
+			siftDown(0, row, score, size);
+		}
+	}
+
+	/** Orders the kept rows by decreasing score */
+	void sort() {
+		for (int end = size - 1; end > 0; end--) {
+			int row = rows[end];
+			float score = scores[end];
+			rows[end] = rows[0];
+			scores[end] = scores[0];
+			siftDown(0, row, score, end);
+		}
+	}
+
+	/**
+	 * Sorts the kept rows and converts them to {@link Match}es
+	 *
+	 * @param ignored words to leave out of the result
+	 */
+	List<Match> toMatches(List<String> vocab, Set<String> ignored, int maxMatches) {
+		sort();
+		List<Match> result = new ArrayList<>(Math.min(size, maxMatches));
+		for (int i = 0; i < size && result.size() < maxMatches; i++) {
+			String word = vocab.get(rows[i]);
+			if (!ignored.contains(word))
+				result.add(new MatchImpl(word, scores[i]));
+		}
+		return result;
+	}
+
+	private void siftDown(int i, int row, float score, int n) {
+		int half = n >>> 1;
+		while (i < half) {
+			int child = 2 * i + 1;
+			int right = child + 1;
+			if (right < n && scores[right] < scores[child])
+				child = right;
+			if (score <= scores[child])
+				break;
+			rows[i] = rows[child];
+			scores[i] = scores[child];
+			i = child;
+		}
+		rows[i] = row;
+		scores[i] = score;
+	}
+}
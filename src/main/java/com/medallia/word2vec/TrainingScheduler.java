@@ -0,0 +1,156 @@
+package com.medallia.word2vec;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.medallia.word2vec.util.AutoLog;
+import org.apache.commons.logging.Log;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Trains many models concurrently in one work-stealing pool, for example one model per customer.
+ * <p>
+ * Every job is a {@link Word2VecTrainerBuilder}. Jobs run as soon as a worker of the pool is free.
+ * Jobs that do not set a number of threads use one, and train on their worker, sharing the cores
+ * between jobs rather than within them. Jobs with more threads train in chunks which are tasks of the
+ * same pool, so that the single-threaded phases of some jobs, like learning the vocabulary, overlap
+ * with the training of others and all cores stay busy. While such a job waits for its chunks, the
+ * pool may start another worker, so jobs never wait for tasks queued behind them.
+ * <p>
+ * Unlike {@link Word2VecTrainerBuilder#train(Iterable)}, scheduled jobs size the vocabulary hash and
+ * the unigram table of negative sampling to their vocabulary, instead of allocating the 520 MB of
+ * the C version for each model. Negative samples are then drawn from a differently sized table, so
+ * models differ slightly from those trained alone.
+ * <p>
+ * The queue time, training time and throughput of every job are available from its {@link Job} and
+ * are logged when it completes.
+ */
+public class TrainingScheduler implements Closeable {
+	private static final Log LOG = AutoLog.getLog();
+
+	private final ForkJoinPool pool;
+
+	/** Scheduler with one worker per available processor */
+	public TrainingScheduler() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/** @param parallelism number of workers of the pool */
+	public TrainingScheduler(int parallelism) {
+		Preconditions.checkArgument(parallelism > 0, "Value must be positive");
+		// FIFO queues, so that jobs and their training threads start in the order they were submitted
+		this.pool = new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+	}
+
+	/**
+	 * Queue a job training a model on the given sentences. The builder must not be changed afterwards.
+	 *
+	 * @param name name of the job in metrics and logs
+	 */
+	public Job submit(String name, Word2VecTrainerBuilder builder, Iterable<List<String>> sentences) {
+		Preconditions.checkNotNull(builder);
+		Preconditions.checkNotNull(sentences);
+		final Job job = new Job(name);
+		job.future = pool.submit(() -> job.run(builder, sentences, pool));
+		return job;
+	}
+
+	/** Stop accepting jobs, and wait for the submitted ones to complete */
+	public void awaitTermination() throws InterruptedException {
+		pool.shutdown();
+		while (!pool.awaitTermination(1, TimeUnit.MINUTES))
+			LOG.info(String.format("Waiting for %d running jobs", pool.getActiveThreadCount()));
+	}
+
+	/** Stop the pool, interrupting running jobs */
+	@Override public void close() {
+		pool.shutdownNow();
+	}
+
+	/** A model being trained, with its metrics */
+	public static class Job {
+		private final String name;
+		private final long submitNanos = System.nanoTime();
+		private final AtomicLong wordsTrained = new AtomicLong();
+		private volatile long startNanos;
+		private volatile long endNanos;
+		private volatile Future<Word2VecModel> future;
+
+		private Job(String name) {
+			this.name = Preconditions.checkNotNull(name);
+		}
+
+		private Word2VecModel run(Word2VecTrainerBuilder builder, Iterable<List<String>> sentences, ExecutorService executor) throws InterruptedException {
+			startNanos = System.nanoTime();
+			try {
+				return builder.train(sentences, Optional.of(executor), wordsTrained);
+			} finally {
+				endNanos = System.nanoTime();
+				LOG.info(this);
+			}
+		}
+
+		/** @return Name of the job */
+		public String getName() {
+			return name;
+		}
+
+		/** @return Trained model, waiting for the job to complete */
+		public Word2VecModel getModel() throws InterruptedException {
+			try {
+				return future.get();
+			} catch (ExecutionException e) {
+				throw Throwables.propagate(e.getCause());
+			}
+		}
+
+		/** @return true if the job completed, successfully or not */
+		public boolean isDone() {
+			return endNanos != 0;
+		}
+
+		/** @return Milliseconds between submission and start of the job, so far if it has not started */
+		public long getQueueMillis() {
+			final long start = startNanos;
+			return TimeUnit.NANOSECONDS.toMillis((start == 0 ? System.nanoTime() : start) - submitNanos);
+		}
+
+		/** @return Milliseconds the job has been running for, 0 if it has not started */
+		public long getRunMillis() {
+			final long start = startNanos;
+			final long end = endNanos;
+			if (start == 0)
+				return 0;
+			return TimeUnit.NANOSECONDS.toMillis((end == 0 ? System.nanoTime() : end) - start);
+		}
+
+		/** @return Number of words processed by the training threads, over all iterations, once the job completed */
+		public long getWordsTrained() {
+			return wordsTrained.get();
+		}
+
+		/** @return Words trained per second of running time, once the job completed */
+		public double getWordsPerSecond() {
+			final long millis = getRunMillis();
+			return millis == 0 ? 0 : getWordsTrained() * 1000.0 / millis;
+		}
+
+		@Override public String toString() {
+			return String.format("Job %s: %s, queued %d ms, ran %d ms, %d words at %.0f words/s",
+					name,
+					isDone() ? "done" : startNanos == 0 ? "queued" : "running",
+					getQueueMillis(),
+					getRunMillis(),
+					getWordsTrained(),
+					getWordsPerSecond());
+		}
+	}
+}
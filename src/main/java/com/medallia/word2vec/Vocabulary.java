@@ -0,0 +1,226 @@
+package com.medallia.word2vec;
+
+import com.google.common.base.Preconditions;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * Immutable list of the words of a model, stored off-heap in a single buffer, with constant time
+ * {@link #indexOf(Object)} and {@link #contains(Object)}.
+ * <p>
+ * The buffer holds, after a small header, the offsets of the words in a blob of their UTF-8 bytes,
+ * an open addressing hash table of {@link String#hashCode()} and row pairs, and the blob itself. It
+ * takes a few bytes per word on top of the UTF-8 bytes, instead of a {@link String} per word and a
+ * boxed {@link Integer} per word in a hash map. Words are decoded when they are accessed. The buffer
+ * can be written to a file with {@link #writeTo(File)} and memory mapped back with {@link #map(File)}.
+ */
+public final class Vocabulary extends AbstractList<String> implements RandomAccess {
+	static final int MAGIC = 0x57325643;
+	static final int VERSION = 1;
+	/** Magic, version, number of words, hash table size and blob size */
+	private static final int HEADER_SIZE = 5 * 4;
+
+	private final ByteBuffer buffer;
+	private final int size;
+	/** Offsets of the words in the blob, with the end of the blob last */
+	private final IntBuffer offsets;
+	/** Hash code and row plus one of the words, at the slot of their hash or after it; zero rows are empty */
+	private final IntBuffer table;
+	private final int tableMask;
+	private final ByteBuffer blob;
+
+	private Vocabulary(ByteBuffer buffer) {
+		this.buffer = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+		Preconditions.checkArgument(this.buffer.remaining() >= HEADER_SIZE
+				&& this.buffer.getInt(0) == MAGIC && this.buffer.getInt(4) == VERSION, "Not a vocabulary");
+		this.size = this.buffer.getInt(8);
+		final int tableSize = this.buffer.getInt(12);
+		final int blobSize = this.buffer.getInt(16);
+		Preconditions.checkArgument(size >= 0 && tableSize > size && blobSize >= 0 && Integer.bitCount(tableSize) == 1
+				&& this.buffer.remaining() == bufferSize(size, tableSize, blobSize), "Vocabulary is corrupted");
+
+		this.offsets = slice(HEADER_SIZE, 4 * (size + 1)).asIntBuffer();
+		this.table = slice(HEADER_SIZE + 4 * (size + 1), 8 * tableSize).asIntBuffer();
+		this.tableMask = tableSize - 1;
+		this.blob = slice(HEADER_SIZE + 4 * (size + 1) + 8 * tableSize, blobSize);
+		checkConsistent();
+	}
+
+	/** Checks that the offsets and the hash table only point inside the buffer, so that lookups end */
+	private void checkConsistent() {
+		Preconditions.checkArgument(offsets.get(0) == 0 && offsets.get(size) == blob.capacity(), "Vocabulary is corrupted");
+		for (int i = 0; i < size; i++)
+			Preconditions.checkArgument(offsets.get(i) <= offsets.get(i + 1), "Vocabulary is corrupted at word %s", i);
+		int used = 0;
+		for (int slot = 0; slot <= tableMask; slot++) {
+			final int row = table.get(2 * slot + 1);
+			Preconditions.checkArgument(row >= 0 && row <= size, "Vocabulary is corrupted at slot %s", slot);
+			if (row != 0)
+				used++;
+		}
+		// Lookups stop at the first empty slot, which a table written by copyOf always has
+		Preconditions.checkArgument(used <= size, "Vocabulary is corrupted");
+	}
+
+	/** @return {@link Vocabulary} of the given words, or the given one if it already is one */
+	public static Vocabulary copyOf(Iterable<String> words) {
+		if (words instanceof Vocabulary)
+			return (Vocabulary) words;
+
+		int size = 0;
+		int[] offsets = new int[1024];
+		int[] hashes = new int[1024];
+		byte[] blob = new byte[1 << 16];
+		int blobSize = 0;
+		for (String word : words) {
+			Preconditions.checkNotNull(word, "Null word at index %s", size);
+			final byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+			Preconditions.checkArgument((long) blobSize + bytes.length <= Integer.MAX_VALUE, "Vocabulary is too large");
+			if (size + 1 == offsets.length) {
+				offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+				hashes = Arrays.copyOf(hashes, offsets.length);
+			}
+			if (blobSize + bytes.length > blob.length)
+				blob = Arrays.copyOf(blob, (int) Math.min(Integer.MAX_VALUE, Math.max(2L * blob.length, (long) blobSize + bytes.length)));
+			System.arraycopy(bytes, 0, blob, blobSize, bytes.length);
+			offsets[size] = blobSize;
+			hashes[size] = word.hashCode();
+			blobSize += bytes.length;
+			size++;
+		}
+		offsets[size] = blobSize;
+
+		final int tableSize = Integer.highestOneBit(Math.max(1, size)) << 2;
+		final long bufferSize = bufferSize(size, tableSize, blobSize);
+		Preconditions.checkArgument(bufferSize <= Integer.MAX_VALUE, "Vocabulary is too large");
+		final ByteBuffer buffer = ByteBuffer.allocateDirect((int) bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(tableSize).putInt(blobSize);
+		for (int i = 0; i <= size; i++)
+			buffer.putInt(offsets[i]);
+		final int tableStart = buffer.position();
+		for (int row = 0; row < size; row++) {
+			int slot = smear(hashes[row]) & (tableSize - 1);
+			boolean duplicate = false;
+			while (buffer.getInt(tableStart + 8 * slot + 4) != 0 && !duplicate) {
+				final int other = buffer.getInt(tableStart + 8 * slot + 4) - 1;
+				duplicate = hashes[other] == hashes[row] && Arrays.equals(
+						Arrays.copyOfRange(blob, offsets[other], offsets[other + 1]),
+						Arrays.copyOfRange(blob, offsets[row], offsets[row + 1]));
+				slot = (slot + 1) & (tableSize - 1);
+			}
+			// Like List.indexOf, lookups find the first of duplicate words
+			if (!duplicate) {
+				buffer.putInt(tableStart + 8 * slot, hashes[row]);
+				buffer.putInt(tableStart + 8 * slot + 4, row + 1);
+			}
+		}
+		buffer.position(tableStart + 8 * tableSize);
+		buffer.put(blob, 0, blobSize);
+		buffer.flip();
+		return new Vocabulary(buffer);
+	}
+
+	/**
+	 * @return {@link Vocabulary} memory mapped from a file written by {@link #writeTo(File)}
+	 * @throws IllegalArgumentException if the file is not a vocabulary or is corrupted
+	 */
+	public static Vocabulary map(File file) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			final FileChannel channel = raf.getChannel();
+			Preconditions.checkArgument(channel.size() <= Integer.MAX_VALUE, "File '%s' is too large", file.getAbsolutePath());
+			return new Vocabulary(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/** Writes the buffer of this vocabulary to the given file, to be read back with {@link #map(File)} */
+	public void writeTo(File file) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(0);
+			final FileChannel channel = raf.getChannel();
+			final ByteBuffer data = buffer.duplicate();
+			while (data.hasRemaining())
+				channel.write(data);
+		}
+	}
+
+	/** @return Size of the buffer holding this vocabulary, which is off-heap */
+	long sizeInBytes() {
+		return buffer.capacity();
+	}
+
+	@Override public String get(int index) {
+		Preconditions.checkElementIndex(index, size);
+		final int start = offsets.get(index);
+		final byte[] bytes = new byte[offsets.get(index + 1) - start];
+		// Relative gets move the position, so read from a duplicate to stay thread safe
+		final ByteBuffer word = blob.duplicate();
+		word.position(start);
+		word.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	@Override public int size() {
+		return size;
+	}
+
+	@Override public int indexOf(Object o) {
+		if (!(o instanceof String))
+			return -1;
+		final String word = (String) o;
+		final int hash = word.hashCode();
+		byte[] bytes = null;
+		for (int slot = smear(hash) & tableMask; ; slot = (slot + 1) & tableMask) {
+			final int row = table.get(2 * slot + 1) - 1;
+			if (row < 0)
+				return -1;
+			if (table.get(2 * slot) == hash) {
+				if (bytes == null)
+					bytes = word.getBytes(StandardCharsets.UTF_8);
+				if (matches(row, bytes))
+					return row;
+			}
+		}
+	}
+
+	@Override public boolean contains(Object o) {
+		return indexOf(o) != -1;
+	}
+
+	/** @return True if the word at the given row has the given UTF-8 bytes */
+	private boolean matches(int row, byte[] bytes) {
+		final int start = offsets.get(row);
+		if (offsets.get(row + 1) - start != bytes.length)
+			return false;
+		for (int i = 0; i < bytes.length; i++) {
+			if (blob.get(start + i) != bytes[i])
+				return false;
+		}
+		return true;
+	}
+
+	/** @return Little endian view of the given range of the buffer */
+	private ByteBuffer slice(int offset, int length) {
+		final ByteBuffer result = buffer.duplicate();
+		result.position(offset).limit(offset + length);
+		return result.slice().order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private static long bufferSize(int size, int tableSize, int blobSize) {
+		return HEADER_SIZE + 4L * (size + 1) + 8L * tableSize + blobSize;
+	}
+
+	/** Spreads the bits of {@link String#hashCode()}, whose low bits are poorly distributed */
+	private static int smear(int hashCode) {
+		return 0x1b873593 * Integer.rotateLeft(hashCode * 0xcc9e2d51, 15);
+	}
+}
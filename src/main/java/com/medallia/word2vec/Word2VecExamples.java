@@ -60,9 +60,9 @@ public class Word2VecExamples {
 						.train(partitioned));
 
 		try (ProfilingTimer timer = ProfilingTimer.create(LOG, "Writing output to file")) {
-			FileUtils.writeStringToFile(
+			FileUtils.writeByteArrayToFile(
 					new File("text8.model"),
-					ThriftUtils.serializeJson(model.toThrift())
+					ThriftUtils.serializeCompact(model.toPackedThrift())
 			);
 		}
 
@@ -73,8 +73,8 @@ public class Word2VecExamples {
 	public static void loadModel() throws IOException, TException, UnknownWordException {
 		final Word2VecModel model;
 		try (ProfilingTimer timer = ProfilingTimer.create(LOG, "Loading model")) {
-			String json = Common.readFileToString(new File("text8.model"));
-			model = Word2VecModel.fromThrift(ThriftUtils.deserializeJson(new Word2VecModelThrift(), json));
+			byte[] bytes = FileUtils.readFileToByteArray(new File("text8.model"));
+			model = Word2VecModel.fromThrift(ThriftUtils.deserializeCompact(new Word2VecModelThrift(), bytes));
 		}
 		interact(model.forSearch());
 	}
@@ -104,9 +104,9 @@ public class Word2VecExamples {
 
 
 		try (ProfilingTimer timer = ProfilingTimer.create(LOG, "Writing output to file")) {
-			FileUtils.writeStringToFile(
+			FileUtils.writeByteArrayToFile(
 					new File("300layer.20threads.5iter.model"),
-					ThriftUtils.serializeJson(model.toThrift())
+					ThriftUtils.serializeCompact(model.toPackedThrift())
 			);
 		}
 
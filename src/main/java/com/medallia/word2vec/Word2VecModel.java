@@ -1,17 +1,18 @@
 package com.medallia.word2vec;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.DoubleBuffer;
 import java.nio.FloatBuffer;
-import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
-import java.nio.charset.Charset;
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.List;
 
 import com.google.common.annotations.VisibleForTesting;
@@ -20,9 +21,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.primitives.Doubles;
 import com.medallia.word2vec.thrift.Word2VecModelThrift;
-import com.medallia.word2vec.util.Common;
 import com.medallia.word2vec.util.ProfilingTimer;
-import com.medallia.word2vec.util.AC;
 
 
 /**
@@ -31,19 +30,19 @@ import com.medallia.word2vec.util.AC;
  * Instances of this class are obtained via:
  * <ul>
  * <li> {@link #trainer()}
+ * <li> {@link #loader()}
  * <li> {@link #fromThrift(Word2VecModelThrift)}
  * </ul>
  *
  * @see {@link #forSearch()}
  */
 public class Word2VecModel {
-	final List<String> vocab;
+	final Vocabulary vocab;
 	final int layerSize;
 	final DoubleBuffer vectors;
-	private final static long ONE_GB = 1024 * 1024 * 1024;
 
 	Word2VecModel(Iterable<String> vocab, int layerSize, DoubleBuffer vectors) {
-		this.vocab = ImmutableList.copyOf(vocab);
+		this.vocab = Vocabulary.copyOf(vocab);
 		this.layerSize = layerSize;
 		this.vectors = vectors;
 	}
@@ -57,12 +56,26 @@ public class Word2VecModel {
 		return vocab;
 	}
 
+	/** @return Bytes of the heap arrays holding the data of this model */
+	public long getHeapBytes() {
+		return vectors.isDirect() ? 0 : 8L * vectors.capacity();
+	}
+
+	/** @return Bytes of the direct or memory mapped buffers holding the data of this model */
+	public long getOffHeapBytes() {
+		return vocab.sizeInBytes() + (vectors.isDirect() ? 8L * vectors.capacity() : 0);
+	}
+
 	/** @return {@link Searcher} for searching */
 	public Searcher forSearch() {
 		return new SearcherImpl(this);
 	}
 
-	/** @return Serializable thrift representation */
+	/**
+	 * @return Serializable thrift representation with the vocab and vectors as lists, readable by
+	 * all versions of this library
+	 * @see #toPackedThrift()
+	 */
 	public Word2VecModelThrift toThrift() {
 		double[] vectorsArray;
 		if(vectors.hasArray()) {
@@ -79,21 +92,73 @@ public class Word2VecModel {
 				.setVectors(Doubles.asList(vectorsArray));
 	}
 
-	/** @return {@link Word2VecModel} created from a thrift representation */
+	/**
+	 * @return Serializable thrift representation with the vocab and vectors packed into binary fields.
+	 * Vectors are stored as floats, like in the bin format, which is about a quarter of the size of
+	 * {@link #toThrift()} once serialized, and much faster to read and write. Best serialized with
+	 * {@link com.medallia.word2vec.util.ThriftUtils#serializeCompact(org.apache.thrift.TBase)}.
+	 */
+	public Word2VecModelThrift toPackedThrift() {
+		final ByteBuffer packedVectors = ByteBuffer.allocate(4 * vectors.limit()).order(ByteOrder.LITTLE_ENDIAN);
+		final FloatBuffer floats = packedVectors.asFloatBuffer();
+		for (int i = 0; i < vectors.limit(); i++)
+			floats.put(i, (float) vectors.get(i));
+
+		final ByteArrayOutputStream packedVocab = new ByteArrayOutputStream();
+		for (String word : vocab) {
+			final byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+			packedVocab.write(bytes, 0, bytes.length);
+			packedVocab.write('\n');
+		}
+
+		return new Word2VecModelThrift()
+				.setLayerSize(layerSize)
+				.setPackedVocab(packedVocab.toByteArray())
+				.setPackedVectors(packedVectors);
+	}
+
+	/**
+	 * @return {@link Word2VecModel} created from a thrift representation, either with lists as created by
+	 * {@link #toThrift()} or packed as created by {@link #toPackedThrift()}
+	 */
 	public static Word2VecModel fromThrift(Word2VecModelThrift thrift) {
-		return new Word2VecModel(
-				thrift.getVocab(),
-				thrift.getLayerSize(),
-				Doubles.toArray(thrift.getVectors()));
+		final List<String> vocab;
+		if (thrift.isSetPackedVocab()) {
+			final ByteBuffer packed = thrift.bufferForPackedVocab().duplicate();
+			final String words = StandardCharsets.UTF_8.decode(packed).toString();
+			vocab = words.isEmpty()
+					? ImmutableList.<String>of()
+					: Arrays.asList(words.substring(0, words.length() - 1).split("\n", -1));
+		} else {
+			vocab = thrift.getVocab();
+		}
+
+		final double[] vectors;
+		if (thrift.isSetPackedVectors()) {
+			final FloatBuffer packed = thrift.bufferForPackedVectors().duplicate().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+			final float[] floats = new float[packed.remaining()];
+			packed.get(floats);
+			vectors = new double[floats.length];
+			for (int i = 0; i < floats.length; i++)
+				vectors[i] = floats[i];
+		} else {
+			vectors = Doubles.toArray(thrift.getVectors());
+		}
+
+		Preconditions.checkArgument(vectors.length == vocab.size() * thrift.getLayerSize(),
+				"Expected %s values for %s words with layer size %s, found %s",
+				vocab.size() * thrift.getLayerSize(), vocab.size(), thrift.getLayerSize(), vectors.length);
+		return new Word2VecModel(vocab, thrift.getLayerSize(), vectors);
 	}
 
 	/**
 	 * @return {@link Word2VecModel} read from a file in the text output format of the Word2Vec C
 	 * open source project.
+	 * <p>
+	 * The file is streamed and parsed in parallel, with one thread per processor.
 	 */
 	public static Word2VecModel fromTextFile(File file) throws IOException {
-		List<String> lines = Common.readToList(file);
-		return fromTextFile(file.getAbsolutePath(), lines);
+		return loader().fromTextFile(file);
 	}
 
 	/**
@@ -116,133 +181,53 @@ public class Word2VecModel {
 	/**
 	 * @return {@link Word2VecModel} created from the binary representation output
 	 * by the open source C version of word2vec using the given byte order.
+	 * <p>
+	 * Words are decoded as UTF-8 and vectors are copied in parallel, with one thread per processor.
 	 */
 	public static Word2VecModel fromBinFile(File file, ByteOrder byteOrder, ProfilingTimer timer)
 			throws IOException {
+		return loader().setByteOrder(byteOrder).setProfilingTimer(timer).fromBinFile(file);
+	}
 
-		try (
-				final FileInputStream fis = new FileInputStream(file);
-				final AC ac = timer.start("Loading vectors from bin file")
-		) {
-			final FileChannel channel = fis.getChannel();
-			timer.start("Reading gigabyte #1");
-			MappedByteBuffer buffer =
-					channel.map(
-							FileChannel.MapMode.READ_ONLY,
-							0,
-							Math.min(channel.size(), Integer.MAX_VALUE));
-			buffer.order(byteOrder);
-			int bufferCount = 1;
-			// Java's NIO only allows memory-mapping up to 2GB. To work around this problem, we re-map
-			// every gigabyte. To calculate offsets correctly, we have to keep track how many gigabytes
-			// we've already skipped. That's what this is for.
-
-			StringBuilder sb = new StringBuilder();
-			char c = (char) buffer.get();
-			while (c != '\n') {
-				sb.append(c);
-				c = (char) buffer.get();
-			}
-			String firstLine = sb.toString();
-			int index = firstLine.indexOf(' ');
-			Preconditions.checkState(index != -1,
-					"Expected a space in the first line of file '%s': '%s'",
-					file.getAbsolutePath(), firstLine);
-
-			final int vocabSize = Integer.parseInt(firstLine.substring(0, index));
-			final int layerSize = Integer.parseInt(firstLine.substring(index + 1));
-			timer.appendToLog(String.format(
-					"Loading %d vectors with dimensionality %d",
-					vocabSize,
-					layerSize));
-
-			List<String> vocabs = new ArrayList<String>(vocabSize);
-			DoubleBuffer vectors = ByteBuffer.allocateDirect(vocabSize * layerSize * 8).asDoubleBuffer();
-
-			long lastLogMessage = System.currentTimeMillis();
-			final float[] floats = new float[layerSize];
-			for (int lineno = 0; lineno < vocabSize; lineno++) {
-				// read vocab
-				sb.setLength(0);
-				c = (char) buffer.get();
-				while (c != ' ') {
-					// ignore newlines in front of words (some binary files have newline,
-					// some don't)
-					if (c != '\n') {
-						sb.append(c);
-					}
-					c = (char) buffer.get();
-				}
-				vocabs.add(sb.toString());
-
-				// read vector
-				final FloatBuffer floatBuffer = buffer.asFloatBuffer();
-				floatBuffer.get(floats);
-				for (int i = 0; i < floats.length; ++i) {
-					vectors.put(lineno * layerSize + i, floats[i]);
-				}
-				buffer.position(buffer.position() + 4 * layerSize);
-
-				// print log
-				final long now = System.currentTimeMillis();
-				if (now - lastLogMessage > 1000) {
-					final double percentage = ((double) (lineno + 1) / (double) vocabSize) * 100.0;
-					timer.appendToLog(
-							String.format("Loaded %d/%d vectors (%f%%)", lineno + 1, vocabSize, percentage));
-					lastLogMessage = now;
-				}
-
-				// remap file
-				if (buffer.position() > ONE_GB) {
-					final int newPosition = (int) (buffer.position() - ONE_GB);
-					final long size = Math.min(channel.size() - ONE_GB * bufferCount, Integer.MAX_VALUE);
-					timer.endAndStart(
-							"Reading gigabyte #%d. Start: %d, size: %d",
-							bufferCount,
-							ONE_GB * bufferCount,
-							size);
-					buffer = channel.map(
-							FileChannel.MapMode.READ_ONLY,
-							ONE_GB * bufferCount,
-							size);
-					buffer.order(byteOrder);
-					buffer.position(newPosition);
-					bufferCount += 1;
-				}
-			}
-			timer.end();
-
-			return new Word2VecModel(vocabs, layerSize, vectors);
-		}
+	/**
+	 * @return {@link ModelLoaderBuilder} for loading a model from a file, possibly only its most
+	 * frequent words or its first dimensions
+	 */
+	public static ModelLoaderBuilder loader() {
+		return new ModelLoaderBuilder();
 	}
 
 	/**
 	 * Saves the model as a bin file that's compatible with the C version of Word2Vec
 	 */
 	public void toBinFile(final OutputStream out) throws IOException {
-		final Charset cs = Charset.forName("UTF-8");
-		final String header = String.format("%d %d\n", vocab.size(), layerSize);
-		out.write(header.getBytes(cs));
-
-		final double[] vector = new double[layerSize];
-		final ByteBuffer buffer = ByteBuffer.allocate(4 * layerSize);
-		buffer.order(ByteOrder.LITTLE_ENDIAN);	// The C version uses this byte order.
-		for(int i = 0; i < vocab.size(); ++i) {
-			out.write(String.format("%s ", vocab.get(i)).getBytes(cs));
-
-			vectors.position(i * layerSize);
-			vectors.get(vector);
-			buffer.clear();
-			for(int j = 0; j < layerSize; ++j)
-				buffer.putFloat((float)vector[j]);
-			out.write(buffer.array());
-
-			out.write('\n');
-		}
-
+		ModelExporter.write(this, Channels.newChannel(out), ModelExporter.FileFormat.BIN, Runtime.getRuntime().availableProcessors());
 		out.flush();
 	}
 
+	/**
+	 * Saves the model as a bin file that's compatible with the C version of Word2Vec, encoding rows in
+	 * parallel with one thread per processor
+	 */
+	public void toBinFile(final File file) throws IOException {
+		writeFile(file, ModelExporter.FileFormat.BIN);
+	}
+
+	/**
+	 * Saves the model as a text file that's compatible with the C version of Word2Vec, encoding rows in
+	 * parallel with one thread per processor
+	 */
+	public void toTextFile(final File file) throws IOException {
+		writeFile(file, ModelExporter.FileFormat.TEXT);
+	}
+
+	private void writeFile(File file, ModelExporter.FileFormat format) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ModelExporter.write(this, channel, format, Runtime.getRuntime().availableProcessors());
+		}
+	}
+
 	/**
 	 * @return {@link Word2VecModel} from the lines of the file in the text output format of the
 	 * Word2Vec C open source project.
@@ -250,7 +235,6 @@ public class Word2VecModel {
 	@VisibleForTesting
 	static Word2VecModel fromTextFile(String filename, List<String> lines) throws IOException {
 		List<String> vocab = Lists.newArrayList();
-		List<Double> vectors = Lists.newArrayList();
 		int vocabSize = Integer.parseInt(lines.get(0).split(" ")[0]);
 		int layerSize = Integer.parseInt(lines.get(0).split(" ")[1]);
 
@@ -262,6 +246,8 @@ public class Word2VecModel {
 				lines.size() - 1
 		);
 
+		double[] vectors = new double[vocabSize * layerSize];
+
 		for (int n = 1; n < lines.size(); n++) {
 			String[] values = lines.get(n).split(" ");
 			vocab.add(values[0]);
@@ -277,15 +263,11 @@ public class Word2VecModel {
 			);
 
 			for (int d = 1; d < values.length; d++) {
-				vectors.add(Double.parseDouble(values[d]));
+				vectors[(n - 1) * layerSize + d - 1] = Double.parseDouble(values[d]);
 			}
 		}
 
-		Word2VecModelThrift thrift = new Word2VecModelThrift()
-				.setLayerSize(layerSize)
-				.setVocab(vocab)
-				.setVectors(vectors);
-		return fromThrift(thrift);
+		return new Word2VecModel(vocab, layerSize, vectors);
 	}
 
 	/** @return {@link Word2VecTrainerBuilder} for training a model */
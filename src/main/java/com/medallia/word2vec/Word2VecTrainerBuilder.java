@@ -3,7 +3,10 @@ package com.medallia.word2vec;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Multiset;
+import com.medallia.word2vec.ported.RawWord2VecModel;
+import com.medallia.word2vec.ported.Word2VecException;
 import com.medallia.word2vec.ported.Word2VecTrainer;
 import com.medallia.word2vec.util.AutoLog;
 import org.apache.commons.logging.Log;
@@ -12,6 +15,8 @@ import com.medallia.word2vec.neuralnetwork.NeuralNetworkType;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Builder pattern for training a new {@link Word2VecModel}
@@ -73,6 +78,7 @@ public class Word2VecTrainerBuilder {
 	private NeuralNetworkType type;
 	private int negativeSamples;
 	private boolean useHierarchicalSoftmax;
+	private int hotRows;
 	private Multiset<String> vocab;
 	private Integer minFrequency;
 	private Double initialLearningRate;
@@ -108,7 +114,7 @@ public class Word2VecTrainerBuilder {
 	/** 
 	 * Specify number of threads to use for parallelization
 	 * <p>
-	 * Defaults to {@link Runtime#availableProcessors()}
+	 * Defaults to {@link Runtime#availableProcessors()}, or 1 for jobs of a {@link TrainingScheduler}
 	 */
 	public Word2VecTrainerBuilder useNumThreads(int numThreads) {
 		Preconditions.checkArgument(numThreads > 0, "Value must be positive");
@@ -148,6 +154,24 @@ public class Word2VecTrainerBuilder {
 		return this;
 	}
 	
+	/**
+	 * Number of most frequent words whose updates each thread buffers and applies every few thousand
+	 * words, instead of updating them directly, so that threads do not contend for their rows.
+	 * Helps scaling to many cores. Only used with more than one thread
+	 * <p>
+	 * Experimental: buffered updates are computed from rows that other threads have not seen yet, so
+	 * the model differs from one trained without buffers. Tests only check that vector norms and
+	 * nearest neighbours stay close on a synthetic corpus, so compare the quality of your models
+	 * before relying on it
+	 * <p>
+	 * Defaults to 0
+	 */
+	public Word2VecTrainerBuilder useHotRowBuffers(int hotRows) {
+		Preconditions.checkArgument(hotRows >= 0, "Value must be non-negative");
+		this.hotRows = hotRows;
+		return this;
+	}
+	
 	/** 
 	 * Use a pre-built vocabulary
 	 * <p>
@@ -201,7 +225,12 @@ public class Word2VecTrainerBuilder {
 		return this;
 	}
 	
-	/** Set a progress listener */
+	/**
+	 * Set a progress listener, told when every stage starts and ends, and of the progress of training
+	 * every few thousand words
+	 * <p>
+	 * Defaults to none
+	 */
 	public Word2VecTrainerBuilder setListener(TrainingProgressListener listener) {
 		this.listener = listener;
 		return this;
@@ -209,28 +238,31 @@ public class Word2VecTrainerBuilder {
 	
 	/** Train the model */
 	public Word2VecModel train(Iterable<List<String>> sentences) throws InterruptedException {
+		return train(sentences, Optional.<ExecutorService>absent(), new AtomicLong());
+	}
+
+	/**
+	 * Train the model, on the given pool shared with other jobs if present, in which case scratch
+	 * structures are sized to the vocabulary. Adds the number of words trained to the counter.
+	 */
+	Word2VecModel train(Iterable<List<String>> sentences, Optional<ExecutorService> executor, AtomicLong wordsTrained) throws InterruptedException {
 		this.type = MoreObjects.firstNonNull(type, NeuralNetworkType.CBOW);
 		this.initialLearningRate = MoreObjects.firstNonNull(initialLearningRate, type.getDefaultInitialLearningRate());
 		if (this.numThreads == null)
-			this.numThreads = Runtime.getRuntime().availableProcessors();
+			this.numThreads = executor.isPresent() ? 1 : Runtime.getRuntime().availableProcessors();
 		this.iterations = MoreObjects.firstNonNull(iterations, 5);
 		this.layerSize = MoreObjects.firstNonNull(layerSize, 100);
 		this.windowSize = MoreObjects.firstNonNull(windowSize, 5);
 		this.downSampleRate = MoreObjects.firstNonNull(downSampleRate, 0.001);
 		this.minFrequency = MoreObjects.firstNonNull(minFrequency, 5);
-		this.listener = MoreObjects.firstNonNull(listener, new TrainingProgressListener() {
-			@Override
-			public void update(Stage stage, double progress) {
-				System.out.println(String.format("Stage %s, progress %s%%", stage, progress));
-			}
-		});
 		
 		Optional<Multiset<String>> vocab = this.vocab == null
 				? Optional.<Multiset<String>>absent()
 				: Optional.of(this.vocab);
 		
-		return new Word2VecTrainer(
+		Word2VecTrainer trainer = new Word2VecTrainer(
 				LOG,
+				debugLevel,
 				minFrequency,
 				vocab,
 				new NeuralNetworkConfig(
@@ -243,8 +275,30 @@ public class Word2VecTrainerBuilder {
 						downSampleRate,
 						initialLearningRate,
 						useHierarchicalSoftmax
-					)
-			).train(LOG, listener, sentences);
+					),
+				sentences
+			).useHotRowBuffers(hotRows);
+		if (executor.isPresent())
+			trainer.useExecutor(executor.get()).useCompactUnigramTable();
+		if (listener != null)
+			trainer.useListener(listener);
+		final RawWord2VecModel raw;
+		try {
+			raw = trainer.TrainModel();
+		} catch (Word2VecException e) {
+			throw Throwables.propagate(e);
+		} catch (RuntimeException e) {
+			// The trainer keeps the thread interrupted and wraps the interruption
+			Throwables.propagateIfInstanceOf(e.getCause(), InterruptedException.class);
+			throw e;
+		}
+		wordsTrained.addAndGet(trainer.getWordCountActual());
+
+		final double[] vectors = new double[raw.vocab.size() * raw.layerSize];
+		for (int i = 0; i < vectors.length; i++)
+			vectors[i] = raw.syn0[i];
+		Word2VecModel model = new Word2VecModel(raw.vocab, raw.layerSize, vectors);
+		return model;
 	}
 	
 	/** Listener for model training progress */
@@ -260,7 +314,7 @@ public class Word2VecTrainerBuilder {
 		/** 
 		 * Called during word2vec training
 		 * <p>
-		 * Note that this is called in a separate thread from the processing thread
+		 * Note that this is called from the training threads, which wait for it to return
 		 * @param stage Current {@link Stage} of processing
 		 * @param progress Progress of the current stage as a double value between 0 and 1
 		 */
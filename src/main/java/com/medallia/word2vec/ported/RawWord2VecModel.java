@@ -0,0 +1,28 @@
+package com.medallia.word2vec.ported;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+/**
+ * Word vectors as trained by {@link Word2VecTrainer}, in the order of its sorted vocabulary, which
+ * starts with the &lt;/s&gt; token.
+ */
+public class RawWord2VecModel {
+	/** Words of the model, most frequent first */
+	public final List<String> vocab;
+	/** Number of dimensions of every vector */
+	public final int layerSize;
+	/** Vector of the i-th word at [i * layerSize, (i + 1) * layerSize) */
+	public final float[] syn0;
+
+	/** The vectors are not copied */
+	public RawWord2VecModel(List<String> vocab, int layerSize, float[] syn0) {
+		Preconditions.checkArgument(syn0.length >= vocab.size() * layerSize,
+				"Expected %s vectors of size %s, got %s values", vocab.size(), layerSize, syn0.length);
+		this.vocab = ImmutableList.copyOf(vocab);
+		this.layerSize = layerSize;
+		this.syn0 = syn0;
+	}
+}
@@ -3,30 +3,41 @@ package com.medallia.word2vec.ported;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Multiset;
+import com.medallia.word2vec.Word2VecTrainerBuilder.TrainingProgressListener;
+import com.medallia.word2vec.Word2VecTrainerBuilder.TrainingProgressListener.Stage;
 import com.medallia.word2vec.neuralnetwork.NeuralNetworkConfig;
 import com.medallia.word2vec.neuralnetwork.NeuralNetworkType;
 import com.medallia.word2vec.util.AutoLog;
+import com.medallia.word2vec.util.Format;
 import com.medallia.word2vec.util.Strings;
 import org.apache.commons.logging.Log;
 import org.joda.time.DateTime;
 import org.joda.time.Seconds;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.EOFException;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 /**
  * Class to perform training the word2vec model.
@@ -40,7 +51,11 @@ import java.util.concurrent.Future;
  * It has been verified that the generated model file using {@link #TrainModel()} is exactly the
  * same as the generated model from C version, given the same sorted vocabulary using
  * {@link #ReadVocab()}. Therefore, we are certain of the correctness of this Java version compared
- * to the original C version.
+ * to the original C version, when training with a single thread.
+ * <p>
+ * 
+ * With more threads, the training words are read once per iteration and trained in chunks on a
+ * work-stealing pool, instead of every thread reading its own share of the words.
  * <p>
  * 
  * The {@link #main(String[])} function is also a port from the Word2vec C command line main
@@ -53,18 +68,27 @@ public class Word2VecTrainer {
 	private static final int EXP_TABLE_SIZE = 1000;
 	private static final int MAX_EXP = 6;
 	private static final int MAX_SENTENCE_LENGTH = 1000;
-	private static final int MAX_CODE_LENGTH = 40;
-
-	static final int vocab_hash_size = 30000000; // Maximum 30 * 0.7 = 21M words in the vocabulary
+	// Chunks of training words end at the first sentence boundary after this many words, which is also how often the C version updates alpha
+	private static final int CHUNK_WORDS = 10000;
+	// Chunks waiting or running per worker, bounding the memory of chunks read ahead
+	private static final int CHUNKS_IN_FLIGHT_PER_THREAD = 4;
+	// Words trained between two flushes of the buffered updates of hot rows
+	private static final int HOT_ROWS_FLUSH_WORDS = 4000;
+
+	static final int max_vocab_hash_size = 30000000; // Maximum 30 * 0.7 = 21M words in the vocabulary
+	private static final int min_vocab_hash_size = 1 << 10;
+
+	/** Size of the unigram table of the C version */
+	public static final int DEFAULT_UNIGRAM_TABLE_SIZE = (int) 1e8;
+	/** Slots per word of a compact unigram table, which leaves even the rarest words of a Zipf vocabulary about 25 slots */
+	private static final int COMPACT_UNIGRAM_SLOTS_PER_WORD = 100;
+	private static final int MIN_COMPACT_UNIGRAM_TABLE_SIZE = 1 << 16;
 
 	/** Class for a word in training dataset. */
 	private static class vocab_word implements Comparable<vocab_word>
 	{
 		long cn;
-		int[] point;
 		String word;
-		int[] code;
-		int codeLen;
 
 		/** Compare by count. */
 		@Override
@@ -89,8 +113,18 @@ public class Word2VecTrainer {
 	private final String read_vocab_file;
 	private final Optional<Multiset<String>> overwrite_vocab;
 	private vocab_word[] vocab;
+	// What training reads of the final vocabulary, as primitive arrays, see InitVocabArrays
+	private long[] vocab_cn;
+	private int[] vocab_keep;
+	// Huffman tree, with the codes and points of word w from vocab_code_start[w] to vocab_code_start[w + 1]
+	private int[] vocab_code_start;
+	private int[] vocab_point;
+	// Codes packed 64 per long
+	private long[] vocab_code;
 	private int binary = 0, cbow = 1, debug_mode = 2, window = 5, min_count = 5, num_threads = 12, min_reduce = 1;
-	private final int[] vocab_hash;
+	// Grows with the vocabulary, up to max_vocab_hash_size
+	private int vocab_hash_size = min_vocab_hash_size;
+	private int[] vocab_hash;
 	private int vocab_size = 0;
 	private int vocab_max_size = 1000, layer1_size = 100;
 	private long train_words = 0, word_count_actual = 0;
@@ -105,9 +139,19 @@ public class Word2VecTrainer {
 	// Hierachical softmax
 	private boolean hs = false;
 	private int negative = 5;
-	private final int table_size = (int) 1e8;
+	private int table_size = DEFAULT_UNIGRAM_TABLE_SIZE;
+	private boolean compact_table = false;
 	private int[] table;
 
+	// Pool shared with other trainers, absent to use a pool of our own
+	private Optional<ExecutorService> shared_executor = Optional.absent();
+
+	private TrainingProgressListener listener = (stage, progress) -> { };
+
+	// Number of most frequent words whose updates are buffered by each worker, see useHotRowBuffers
+	private int hot_rows = 0;
+	private final ConcurrentLinkedQueue<HotRows> hot_row_buffers = new ConcurrentLinkedQueue<>();
+
 	/**
 	 * For automated training process.
 	 *
@@ -183,6 +227,7 @@ public class Word2VecTrainer {
 		this.min_count = min_count;
 
 		this.vocab_hash = new int[vocab_hash_size];
+		Arrays.fill(vocab_hash, -1);
 		this.expTable = new float[EXP_TABLE_SIZE + 1];
 		for (int i = 0; i < EXP_TABLE_SIZE; i++) {
 			expTable[i] = (float) Math.exp((i / (float) EXP_TABLE_SIZE * 2 - 1) * MAX_EXP); // Precompute the exp() table
@@ -195,20 +240,64 @@ public class Word2VecTrainer {
 		}
 	}
 
+	/**
+	 * Size the unigram table of negative sampling to the vocabulary instead of the 400 MB of the C
+	 * version. The sampling distribution is the same up to rounding, but the random sequence of
+	 * negative samples differs from the C version.
+	 */
+	public Word2VecTrainer useCompactUnigramTable() {
+		this.compact_table = true;
+		return this;
+	}
+
+	/** Report the progress of training to the given listener, from the training threads */
+	public Word2VecTrainer useListener(TrainingProgressListener listener) {
+		this.listener = Preconditions.checkNotNull(listener);
+		return this;
+	}
+
+	/** Run the training threads on the given pool, which is shared with other trainers and not shut down */
+	public Word2VecTrainer useExecutor(ExecutorService executor) {
+		this.shared_executor = Optional.of(executor);
+		return this;
+	}
+
+	/**
+	 * Buffer the updates of the hot rows of the network in each worker, and add them to the shared
+	 * rows every few thousand words, instead of updating them directly. Hot rows are the rows of
+	 * syn0 and syn1neg of the given number of most frequent words. Only used when training with more
+	 * than one thread.
+	 * <p>
+	 * Experimental, see {@link com.medallia.word2vec.Word2VecTrainerBuilder#useHotRowBuffers(int)}.
+	 */
+	public Word2VecTrainer useHotRowBuffers(int hot_rows) {
+		Preconditions.checkArgument(hot_rows >= 0, "Value must be non-negative");
+		this.hot_rows = hot_rows;
+		return this;
+	}
+
+	/** @return Number of words processed by the training threads so far, over all iterations */
+	public long getWordCountActual() {
+		return word_count_actual;
+	}
+
 	private void InitUnigramTable() {
 		int a, i;
 		long train_words_pow = 0;
 		float d1, power = 0.75f;
+		if (compact_table)
+			table_size = (int) Math.min(DEFAULT_UNIGRAM_TABLE_SIZE,
+					Math.max(MIN_COMPACT_UNIGRAM_TABLE_SIZE, (long) vocab_size * COMPACT_UNIGRAM_SLOTS_PER_WORD));
 		table = new int[table_size];
 		for (a = 0; a < vocab_size; a++)
-			train_words_pow += Math.pow(vocab[a].cn, power);
+			train_words_pow += Math.pow(vocab_cn[a], power);
 		i = 0;
-		d1 = (float) Math.pow(vocab[i].cn, power) / train_words_pow;
+		d1 = (float) Math.pow(vocab_cn[i], power) / train_words_pow;
 		for (a = 0; a < table_size; a++) {
 			table[a] = i;
 			if (a / (float) table_size > d1) {
 				i++;
-				d1 += (float) Math.pow(vocab[i].cn, power) / train_words_pow;
+				d1 += (float) Math.pow(vocab_cn[i], power) / train_words_pow;
 			}
 			if (i >= vocab_size) i = vocab_size - 1;
 		}
@@ -321,7 +410,7 @@ public class Word2VecTrainer {
 	}
 
 	// Returns hash value of a word
-	static int GetWordHash(String word) {
+	private int GetWordHash(String word) {
 		long a, hash = 0;
 		for (a = 0; a < word.length(); a++)
 			hash = hash * 257 + word.charAt((int) a);
@@ -380,13 +469,32 @@ public class Word2VecTrainer {
 			hash = module((hash + 1), vocab_hash_size);
 		}
 		vocab_hash[hash] = vocab_size - 1;
+		if (vocab_size > vocab_hash_size * 0.7 && vocab_hash_size < max_vocab_hash_size) GrowVocabHash();
 		return vocab_size - 1;
 	}
 
+	// Doubles the hash table, so that it takes memory in proportion to the vocabulary rather than
+	// the 120 MB of the C version. Positions in the vocabulary do not depend on the size of the table.
+	private void GrowVocabHash() {
+		int a, hash;
+		vocab_hash_size = (int) Math.min(max_vocab_hash_size, 2L * vocab_hash_size);
+		vocab_hash = new int[vocab_hash_size];
+		for (a = 0; a < vocab_hash_size; a++)
+			vocab_hash[a] = -1;
+		for (a = 0; a < vocab_size; a++) {
+			hash = GetWordHash(vocab[a].word);
+			while (vocab_hash[hash] != -1)
+				hash = module((hash + 1), vocab_hash_size);
+			vocab_hash[hash] = a;
+		}
+	}
+
 	// Sorts the vocabulary by frequency using word counts
 	private void SortVocab() {
 		int a, size;
 		int hash;
+		listener.update(Stage.ACQUIRE_VOCAB, 1);
+		listener.update(Stage.FILTER_SORT_VOCAB, 0);
 		// Sort the vocabulary and keep </s> at the first position
 		// Note this uses a stable sorting algorithm to make debugging easier.
 		Arrays.sort(vocab, 1, vocab_size);
@@ -418,12 +526,7 @@ public class Word2VecTrainer {
 		for (int i = 0; i < vocab_size; i++) {
 			newVocab[i] = vocab[i];
 		}
-
-		// Allocate memory for the binary tree construction
-		for (a = 0; a < vocab_size; a++) {
-			vocab[a].code = new int[MAX_CODE_LENGTH];
-			vocab[a].point = new int[MAX_CODE_LENGTH];
-		}
+		listener.update(Stage.FILTER_SORT_VOCAB, 1);
 	}
 
 	// Reduces the vocabulary by removing infrequent tokens
@@ -454,9 +557,8 @@ public class Word2VecTrainer {
 	// Create binary Huffman tree using the word counts
 	// Frequent words will have short unique binary codes
 	private void CreateBinaryTree() {
-		int a, b, i, min1i, min2i, pos1, pos2;
-		int[] point = new int[MAX_CODE_LENGTH];
-		int[] code = new int[MAX_CODE_LENGTH];
+		int a, b, d, min1i, min2i, pos1, pos2;
+		listener.update(Stage.CREATE_HUFFMAN_ENCODING, 0);
 		long[] count = new long[vocab_size * 2 + 1];
 		long[] binary = new long[vocab_size * 2 + 1];
 		int[] parent_node = new int[vocab_size * 2 + 1];
@@ -498,24 +600,27 @@ public class Word2VecTrainer {
 			parent_node[min2i] = vocab_size + a;
 			binary[min2i] = 1;
 		}
-		// Now assign binary code to each vocabulary word
+		// Now assign binary code to each vocabulary word. The code of a word is as long as its depth
+		// in the tree, and parents come after their children, so depths are known from the root down.
+		int[] depth = new int[vocab_size * 2 - 1];
+		for (b = vocab_size * 2 - 3; b >= 0; b--)
+			depth[b] = depth[parent_node[b]] + 1;
+		vocab_code_start = new int[vocab_size + 1];
+		for (a = 0; a < vocab_size; a++)
+			vocab_code_start[a + 1] = vocab_code_start[a] + depth[a];
+		vocab_point = new int[vocab_code_start[vocab_size]];
+		vocab_code = new long[(vocab_code_start[vocab_size] + 63) / 64];
+		// Walking up from the leaf fills the code of a word from its end: the point of each bit is the
+		// parent of the node it belongs to, relative to the first inner node, the root coming first
 		for (a = 0; a < vocab_size; a++) {
 			b = a;
-			i = 0;
-			while (true) {
-				code[i] = (int) binary[b];
-				point[i] = b;
-				i++;
+			for (d = vocab_code_start[a + 1] - 1; d >= vocab_code_start[a]; d--) {
+				vocab_code[d >>> 6] |= binary[b] << d;
 				b = parent_node[b];
-				if (b == vocab_size * 2 - 2) break;
-			}
-			vocab[a].codeLen = i;
-			vocab[a].point[0] = vocab_size - 2;
-			for (b = 0; b < i; b++) {
-				vocab[a].code[i - b - 1] = code[b];
-				vocab[a].point[i - b] = point[b] - vocab_size;
+				vocab_point[d] = b - vocab_size;
 			}
 		}
+		listener.update(Stage.CREATE_HUFFMAN_ENCODING, 1);
 	}
 
 	private void LearnVocabFromTrainFile() {
@@ -623,6 +728,26 @@ public class Word2VecTrainer {
 				syn0[a * layer1_size + b] = (((next_random & 0xFFFF) / (float) 65536) - 0.5f) / layer1_size;
 			}
 		CreateBinaryTree();
+		InitVocabArrays();
+	}
+
+	// Copies what training reads of the vocabulary, besides the Huffman tree of CreateBinaryTree, into
+	// parallel arrays, so that it does not chase a pointer per word. The subsampling threshold is
+	// precomputed: a word is kept iff (next_random & 0xFFFF) <= vocab_keep[word], which is exactly when
+	// the C version keeps it, because ran < r / 65536 is the same as r > ran * 65536 for floats, and r
+	// is an integer.
+	private void InitVocabArrays() {
+		int a;
+		float ran, threshold;
+		vocab_cn = new long[vocab_size];
+		vocab_keep = new int[vocab_size];
+		for (a = 0; a < vocab_size; a++) {
+			vocab_cn[a] = vocab[a].cn;
+			ran = ((float) Math.sqrt(vocab[a].cn / (sample * train_words)) + 1) * (sample * train_words) / vocab[a].cn;
+			threshold = ran * 65536;
+			// Also keeps the word always if the threshold is infinite or not a number
+			vocab_keep[a] = threshold < 65535 ? (int) threshold : 65535;
+		}
 	}
 
 	/** Actual model training logic */
@@ -637,16 +762,11 @@ public class Word2VecTrainer {
 		@Override
 		public void run() {
 			try {
-				int a, b, last_word, d;
-				long cw;
 				int word, sentence_length = 0, sentence_position = 0;
 				long word_count = 0L, last_word_count = 0L;
 				int[] sen = new int[MAX_SENTENCE_LENGTH + 1];
-				int l1, l2, c;
-				int target, label;
 				int local_iter = iter;
 				long next_random = id;
-				float f, g;
 				DateTime now;
 				float[] neu1 = new float[layer1_size];
 				float[] neu1e = new float[layer1_size];
@@ -661,6 +781,7 @@ public class Word2VecTrainer {
 						last_word_count = word_count;
 						alpha = starting_alpha * (1 - word_count_actual / (float) (iter * train_words + 1));
 						if (alpha < starting_alpha * 0.0001) alpha = starting_alpha * 0.0001f;
+						listener.update(Stage.TRAIN_NEURAL_NETWORK, Math.min(1, word_count_actual / (double) (iter * train_words + 1)));
 						if ((debug_mode > 1)) {
 							now = new DateTime();
 							log.info(String.format("%cAlpha: %f  Progress: %.2f%%  Words/thread/sec: %.2fk  ", 13, alpha,
@@ -676,9 +797,8 @@ public class Word2VecTrainer {
 							if (word == 0) break;
 							// The subsampling randomly discards frequent words while keeping the ranking same
 							if (sample > 0) {
-								float ran = ((float) Math.sqrt(vocab[word].cn / (sample * train_words)) + 1) * (sample * train_words) / vocab[word].cn;
 								next_random = next_random * 25214903917L + 11L;
-								if (ran < (next_random & 0xFFFF) / (float) 65536) continue;
+								if ((next_random & 0xFFFF) > vocab_keep[word]) continue;
 							}
 							sen[sentence_length] = word;
 							sentence_length++;
@@ -690,9 +810,11 @@ public class Word2VecTrainer {
 						word_count_actual += word_count - last_word_count;
 
 						// Dump each iteration
-						BufferedWriter fo = new BufferedWriter(new FileWriter(output_file + "_" + local_iter));
-						writeWordModel(fo);
-						fo.close();
+						if (!output_file.isEmpty()) {
+							try (OutputStream fo = new BufferedOutputStream(new FileOutputStream(output_file + "_" + local_iter))) {
+								writeWordModel(fo);
+							}
+						}
 
 						local_iter--;
 						if (local_iter == 0) break;
@@ -705,160 +827,7 @@ public class Word2VecTrainer {
 					}
 					word = sen[sentence_position];
 					if (word == -1) continue;
-					for (c = 0; c < layer1_size; c++)
-						neu1[c] = 0;
-					for (c = 0; c < layer1_size; c++)
-						neu1e[c] = 0;
-
-					next_random = next_random * 25214903917L + 11;
-					BigInteger big_next_random = parseBigIntegerPositive(next_random);
-					b = (module(big_next_random, window));
-					if (cbow == 1) { //train the cbow architecture
-						// in -> hidden
-						cw = 0;
-						for (a = b; a < window * 2 + 1 - b; a++)
-							if (a != window) {
-								c = sentence_position - window + a;
-								if (c < 0) continue;
-								if (c >= sentence_length) continue;
-								last_word = sen[c];
-								if (last_word == -1) continue;
-								for (c = 0; c < layer1_size; c++)
-									neu1[c] += syn0[(c + last_word * layer1_size)];
-								cw++;
-							}
-						if (cw > 0L) {
-							for (c = 0; c < layer1_size; c++)
-								neu1[c] /= cw;
-							if (hs) for (d = 0; d < vocab[word].codeLen; d++) {
-								f = 0;
-								l2 = vocab[word].point[d] * layer1_size;
-								// Propagate hidden -> output
-								for (c = 0; c < layer1_size; c++)
-									f += neu1[c] * syn1[c + l2];
-								if (f <= -MAX_EXP)
-									continue;
-								else if (f >= MAX_EXP)
-									continue;
-								else
-									f = expTable[(int) ((f + MAX_EXP) * (EXP_TABLE_SIZE / MAX_EXP / 2))];
-								// 'g' is the gradient multiplied by the learning rate
-								g = (1 - vocab[word].code[d] - f) * alpha;
-								// Propagate errors output -> hidden
-								for (c = 0; c < layer1_size; c++)
-									neu1e[c] += g * syn1[c + l2];
-								// Learn weights hidden -> output
-								for (c = 0; c < layer1_size; c++)
-									syn1[c + l2] += g * neu1[c];
-							}
-							// NEGATIVE SAMPLING
-							if (negative > 0) for (d = 0; d < negative + 1; d++) {
-								if (d == 0) {
-									target = word;
-									label = 1;
-								} else {
-									next_random = next_random * 25214903917L + 11;
-									big_next_random = parseBigIntegerPositive(next_random);
-									target = table[module((big_next_random.shiftRight(16)), table_size)];
-									if (target == 0) target = module(next_random, (vocab_size - 1) + 1);
-									if (target == word) continue;
-									label = 0;
-								}
-								l2 = target * layer1_size;
-								f = 0;
-								for (c = 0; c < layer1_size; c++)
-									f += neu1[c] * syn1neg[c + l2];
-								if (f > MAX_EXP)
-									g = (label - 1) * alpha;
-								else if (f < -MAX_EXP)
-									g = (label - 0) * alpha;
-								else
-									g = (label - expTable[(int) ((f + MAX_EXP) * (EXP_TABLE_SIZE / MAX_EXP / 2))]) * alpha;
-								for (c = 0; c < layer1_size; c++)
-									neu1e[c] += g * syn1neg[c + l2];
-								for (c = 0; c < layer1_size; c++)
-									syn1neg[c + l2] += g * neu1[c];
-							}
-							// hidden -> in
-							for (a = b; a < window * 2 + 1 - b; a++)
-								if (a != window) {
-									c = sentence_position - window + a;
-									if (c < 0) continue;
-									if (c >= sentence_length) continue;
-									last_word = sen[c];
-									if (last_word == -1) continue;
-									for (c = 0; c < layer1_size; c++)
-										syn0[c + last_word * layer1_size] += neu1e[c];
-								}
-						}
-					} else { //train skip-gram
-						for (a = b; a < window * 2 + 1 - b; a++) {
-							if (a != window) {
-								c = sentence_position - window + a;
-								if (c < 0) continue;
-								if (c >= sentence_length) continue;
-								last_word = sen[c];
-
-								if (last_word == -1) continue;
-								l1 = last_word * layer1_size;
-								for (c = 0; c < layer1_size; c++)
-									neu1e[c] = 0;
-								// HIERARCHICAL SOFTMAX
-								if (hs) for (d = 0; d < vocab[word].codeLen; d++) {
-									f = 0;
-									l2 = vocab[word].point[d] * layer1_size;
-									// Propagate hidden -> output
-									for (c = 0; c < layer1_size; c++)
-										f += syn0[c + l1] * syn1[c + l2];
-									if (f <= -MAX_EXP)
-										continue;
-									else if (f >= MAX_EXP)
-										continue;
-									else
-										f = expTable[(int) ((f + MAX_EXP) * (EXP_TABLE_SIZE / MAX_EXP / 2))];
-									// 'g' is the gradient multiplied by the learning rate
-									g = (1 - vocab[word].code[d] - f) * alpha;
-									// Propagate errors output -> hidden
-									for (c = 0; c < layer1_size; c++)
-										neu1e[c] += g * syn1[c + l2];
-									// Learn weights hidden -> output
-									for (c = 0; c < layer1_size; c++)
-										syn1[c + l2] += g * syn0[c + l1];
-								}
-								// NEGATIVE SAMPLING
-								if (negative > 0) for (d = 0; d < negative + 1; d++) {
-									if (d == 0) {
-										target = word;
-										label = 1;
-									} else {
-										next_random = next_random * 25214903917L + 11L;
-										big_next_random = parseBigIntegerPositive(next_random);
-										target = table[module((big_next_random.shiftRight(16)), table_size)];
-										if (target == 0) target = module(next_random, (vocab_size - 1) + 1);
-										if (target == word) continue;
-										label = 0;
-									}
-									l2 = target * layer1_size;
-									f = 0;
-									for (c = 0; c < layer1_size; c++)
-										f += syn0[c + l1] * syn1neg[c + l2];
-									if (f > MAX_EXP)
-										g = (label - 1) * alpha;
-									else if (f < -MAX_EXP)
-										g = (label - 0) * alpha;
-									else
-										g = (label - expTable[(int) ((f + MAX_EXP) * (EXP_TABLE_SIZE / MAX_EXP / 2))]) * alpha;
-									for (c = 0; c < layer1_size; c++)
-										neu1e[c] += g * syn1neg[c + l2];
-									for (c = 0; c < layer1_size; c++)
-										syn1neg[c + l2] += g * syn0[c + l1];
-								}
-								// Learn weights input -> hidden
-								for (c = 0; c < layer1_size; c++)
-									syn0[c + l1] += neu1e[c];
-							}
-						}
-					}
+					next_random = TrainWord(sen, sentence_length, sentence_position, next_random, neu1, neu1e, null);
 					sentence_position++;
 					if (sentence_position >= sentence_length) {
 						sentence_length = 0;
@@ -875,6 +844,370 @@ public class Word2VecTrainer {
 		}
 	}
 
+	/**
+	 * Training on a chunk of the training words, for more than one thread.
+	 * <p>
+	 * Unlike {@link TrainModelThread}, which reads its own share of the words like the C version
+	 * does, chunks are read once per iteration and trained in any order by any worker of a
+	 * work-stealing pool. Stragglers and a number of threads larger than the number of cores then do
+	 * not delay training, and alpha decays with the progress of all chunks.
+	 */
+	private class TrainModelChunk implements Runnable {
+		private final int[] words;
+		private final int length;
+		private final long seed;
+
+		/**
+		 * @param words indices of words in the vocabulary, with 0 for the end of a sentence
+		 * @param seed seed of the random number generator, different for every chunk
+		 */
+		TrainModelChunk(int[] words, int length, long seed) {
+			this.words = words;
+			this.length = length;
+			this.seed = seed;
+		}
+
+		@Override
+		public void run() {
+			int word, sentence_length, sentence_position, pos = 0;
+			long word_count = 0L;
+			int[] sen = new int[MAX_SENTENCE_LENGTH + 1];
+			long next_random = seed;
+			float[] neu1 = new float[layer1_size];
+			float[] neu1e = new float[layer1_size];
+			HotRows hot = null;
+			if (hot_rows > 0) {
+				hot = hot_row_buffers.poll();
+				if (hot == null) hot = new HotRows();
+			}
+			while (pos < length) {
+				sentence_length = 0;
+				while (pos < length) {
+					word = words[pos++];
+					word_count++;
+					if (word == 0) break;
+					// The subsampling randomly discards frequent words while keeping the ranking same
+					if (sample > 0) {
+						next_random = next_random * 25214903917L + 11L;
+						if ((next_random & 0xFFFF) > vocab_keep[word]) continue;
+					}
+					sen[sentence_length] = word;
+					sentence_length++;
+					if (sentence_length >= MAX_SENTENCE_LENGTH) break;
+				}
+				for (sentence_position = 0; sentence_position < sentence_length; sentence_position++)
+					next_random = TrainWord(sen, sentence_length, sentence_position, next_random, neu1, neu1e, hot);
+				if (hot != null && (hot.words += sentence_length) >= HOT_ROWS_FLUSH_WORDS) hot.flush();
+			}
+			if (hot != null) {
+				hot.flush();
+				hot_row_buffers.add(hot);
+			}
+			UpdateAlpha(word_count);
+		}
+	}
+
+	/**
+	 * Updates of the hot rows buffered by a worker: the rows of syn0 and syn1neg of the most frequent
+	 * words, which come first in the vocabulary. Every worker updates these rows all the time, so
+	 * writing them directly makes their cache lines bounce between cores. Buffered updates are only
+	 * seen by other workers, and by this worker when reading the rows, once they are flushed.
+	 * <p>
+	 * The rows of syn1 are not buffered: hierarchical softmax updates the nodes closest to the root
+	 * for every word, and delaying thousands of updates computed from the same stale values makes
+	 * skip-gram diverge.
+	 */
+	private class HotRows {
+		// Offset in syn0 and syn1neg where rows stop being hot
+		final int end;
+		final float[] syn0_delta, syn1neg_delta;
+		// Words trained since the last flush
+		int words = 0;
+
+		HotRows() {
+			end = Math.min(hot_rows, vocab_size) * layer1_size;
+			syn0_delta = new float[end];
+			syn1neg_delta = negative > 0 ? new float[end] : null;
+		}
+
+		// Adds the buffered updates to the shared rows, racing with other workers like all updates do
+		void flush() {
+			int a;
+			for (a = 0; a < end; a++) {
+				syn0[a] += syn0_delta[a];
+				syn0_delta[a] = 0;
+			}
+			if (negative > 0) for (a = 0; a < end; a++) {
+				syn1neg[a] += syn1neg_delta[a];
+				syn1neg_delta[a] = 0;
+			}
+			words = 0;
+		}
+	}
+
+	// Adds the words trained by a chunk to the global progress, and decays alpha accordingly
+	private synchronized void UpdateAlpha(long word_count) {
+		word_count_actual += word_count;
+		alpha = starting_alpha * (1 - word_count_actual / (float) (iter * train_words + 1));
+		if (alpha < starting_alpha * 0.0001) alpha = starting_alpha * 0.0001f;
+		listener.update(Stage.TRAIN_NEURAL_NETWORK, Math.min(1, word_count_actual / (double) (iter * train_words + 1)));
+		if ((debug_mode > 1)) {
+			DateTime now = new DateTime();
+			log.info(String.format("%cAlpha: %f  Progress: %.2f%%  Words/sec: %.2fk  ", 13, alpha,
+					word_count_actual / (float) (iter * train_words + 1) * 100,
+					word_count_actual / ((float) (Seconds.secondsBetween(start, now).getSeconds() + 1) * 1000)));
+		}
+	}
+
+	// Reads the training words iter times, and trains on them in chunks on the given pool
+	private void TrainModelChunks(ExecutorService executor, int parallelism) throws InterruptedException, ExecutionException {
+		CompletionService<Void> completion = new ExecutorCompletionService<>(executor);
+		// Chunks submitted and not yet taken from the completion service
+		Set<Future<Void>> chunks = new HashSet<>();
+		long seed = 0;
+		try {
+			for (int local_iter = 0; local_iter < iter; local_iter++) {
+				try (WordIterator wordIterator = new SentenceStreamWordIterator(sentences)) {
+					int[] words = new int[CHUNK_WORDS + MAX_SENTENCE_LENGTH];
+					int length = 0;
+					while (wordIterator.hasNext()) {
+						int word = ReadWordIndex(wordIterator);
+						if (word == -1) continue;
+						words[length++] = word;
+						if ((word == 0 && length >= CHUNK_WORDS) || length == words.length || !wordIterator.hasNext()) {
+							chunks.add(completion.submit(new TrainModelChunk(words, length, seed++), null));
+							if (chunks.size() > parallelism * CHUNKS_IN_FLIGHT_PER_THREAD)
+								chunks.remove(awaitChunk(completion));
+							words = new int[words.length];
+							length = 0;
+						}
+					}
+				}
+			}
+			while (!chunks.isEmpty())
+				chunks.remove(awaitChunk(completion));
+		} finally {
+			for (Future<?> chunk : chunks)
+				chunk.cancel(true);
+		}
+	}
+
+	/**
+	 * Waits for any chunk to be trained, so that a slow chunk does not keep the others from being
+	 * replaced. On a worker of a fork-join pool, such as a job of a pool shared with other trainers,
+	 * the pool may start another worker meanwhile so that chunks are not stuck behind the tasks queued
+	 * before them.
+	 * @return The trained chunk
+	 */
+	private static Future<Void> awaitChunk(final CompletionService<Void> completion) throws InterruptedException, ExecutionException {
+		final List<Future<Void>> done = new ArrayList<>(1);
+		ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+			@Override public boolean block() throws InterruptedException {
+				if (done.isEmpty())
+					done.add(completion.take());
+				return true;
+			}
+
+			@Override public boolean isReleasable() {
+				if (done.isEmpty()) {
+					Future<Void> chunk = completion.poll();
+					if (chunk != null)
+						done.add(chunk);
+				}
+				return !done.isEmpty();
+			}
+		});
+		done.get(0).get();
+		return done.get(0);
+	}
+
+	/**
+	 * Trains the network on the word at the given position of the sentence, with its context in a
+	 * random window. Updates of hot rows go to the given buffers if not null.
+	 * @return Next value of the random number generator
+	 */
+	private long TrainWord(int[] sen, int sentence_length, int sentence_position, long next_random, float[] neu1, float[] neu1e, HotRows hot) {
+		int a, b, c, d, last_word, l1, l2, target, label;
+		long cw;
+		float f, g;
+		int word = sen[sentence_position];
+		for (c = 0; c < layer1_size; c++)
+			neu1[c] = 0;
+		for (c = 0; c < layer1_size; c++)
+			neu1e[c] = 0;
+
+		next_random = next_random * 25214903917L + 11;
+		BigInteger big_next_random = parseBigIntegerPositive(next_random);
+		b = (module(big_next_random, window));
+		if (cbow == 1) { //train the cbow architecture
+			// in -> hidden
+			cw = 0;
+			for (a = b; a < window * 2 + 1 - b; a++)
+				if (a != window) {
+					c = sentence_position - window + a;
+					if (c < 0) continue;
+					if (c >= sentence_length) continue;
+					last_word = sen[c];
+					if (last_word == -1) continue;
+					for (c = 0; c < layer1_size; c++)
+						neu1[c] += syn0[(c + last_word * layer1_size)];
+					cw++;
+				}
+			if (cw > 0L) {
+				for (c = 0; c < layer1_size; c++)
+					neu1[c] /= cw;
+				if (hs) for (d = vocab_code_start[word]; d < vocab_code_start[word + 1]; d++) {
+					f = 0;
+					l2 = vocab_point[d] * layer1_size;
+					// Propagate hidden -> output
+					for (c = 0; c < layer1_size; c++)
+						f += neu1[c] * syn1[c + l2];
+					if (f <= -MAX_EXP)
+						continue;
+					else if (f >= MAX_EXP)
+						continue;
+					else
+						f = expTable[(int) ((f + MAX_EXP) * (EXP_TABLE_SIZE / MAX_EXP / 2))];
+					// 'g' is the gradient multiplied by the learning rate
+					g = (1 - (int) ((vocab_code[d >>> 6] >>> d) & 1) - f) * alpha;
+					// Propagate errors output -> hidden
+					for (c = 0; c < layer1_size; c++)
+						neu1e[c] += g * syn1[c + l2];
+					// Learn weights hidden -> output
+					for (c = 0; c < layer1_size; c++)
+						syn1[c + l2] += g * neu1[c];
+				}
+				// NEGATIVE SAMPLING
+				if (negative > 0) for (d = 0; d < negative + 1; d++) {
+					if (d == 0) {
+						target = word;
+						label = 1;
+					} else {
+						next_random = next_random * 25214903917L + 11;
+						big_next_random = parseBigIntegerPositive(next_random);
+						target = table[module((big_next_random.shiftRight(16)), table_size)];
+						if (target == 0) target = module(next_random, (vocab_size - 1) + 1);
+						if (target == word) continue;
+						label = 0;
+					}
+					l2 = target * layer1_size;
+					f = 0;
+					for (c = 0; c < layer1_size; c++)
+						f += neu1[c] * syn1neg[c + l2];
+					if (f > MAX_EXP)
+						g = (label - 1) * alpha;
+					else if (f < -MAX_EXP)
+						g = (label - 0) * alpha;
+					else
+						g = (label - expTable[(int) ((f + MAX_EXP) * (EXP_TABLE_SIZE / MAX_EXP / 2))]) * alpha;
+					for (c = 0; c < layer1_size; c++)
+						neu1e[c] += g * syn1neg[c + l2];
+					if (hot != null && l2 < hot.end) {
+						for (c = 0; c < layer1_size; c++)
+							hot.syn1neg_delta[c + l2] += g * neu1[c];
+					} else {
+						for (c = 0; c < layer1_size; c++)
+							syn1neg[c + l2] += g * neu1[c];
+					}
+				}
+				// hidden -> in
+				for (a = b; a < window * 2 + 1 - b; a++)
+					if (a != window) {
+						c = sentence_position - window + a;
+						if (c < 0) continue;
+						if (c >= sentence_length) continue;
+						last_word = sen[c];
+						if (last_word == -1) continue;
+						if (hot != null && last_word * layer1_size < hot.end) {
+							for (c = 0; c < layer1_size; c++)
+								hot.syn0_delta[c + last_word * layer1_size] += neu1e[c];
+						} else {
+							for (c = 0; c < layer1_size; c++)
+								syn0[c + last_word * layer1_size] += neu1e[c];
+						}
+					}
+			}
+		} else { //train skip-gram
+			for (a = b; a < window * 2 + 1 - b; a++) {
+				if (a != window) {
+					c = sentence_position - window + a;
+					if (c < 0) continue;
+					if (c >= sentence_length) continue;
+					last_word = sen[c];
+
+					if (last_word == -1) continue;
+					l1 = last_word * layer1_size;
+					for (c = 0; c < layer1_size; c++)
+						neu1e[c] = 0;
+					// HIERARCHICAL SOFTMAX
+					if (hs) for (d = vocab_code_start[word]; d < vocab_code_start[word + 1]; d++) {
+						f = 0;
+						l2 = vocab_point[d] * layer1_size;
+						// Propagate hidden -> output
+						for (c = 0; c < layer1_size; c++)
+							f += syn0[c + l1] * syn1[c + l2];
+						if (f <= -MAX_EXP)
+							continue;
+						else if (f >= MAX_EXP)
+							continue;
+						else
+							f = expTable[(int) ((f + MAX_EXP) * (EXP_TABLE_SIZE / MAX_EXP / 2))];
+						// 'g' is the gradient multiplied by the learning rate
+						g = (1 - (int) ((vocab_code[d >>> 6] >>> d) & 1) - f) * alpha;
+						// Propagate errors output -> hidden
+						for (c = 0; c < layer1_size; c++)
+							neu1e[c] += g * syn1[c + l2];
+						// Learn weights hidden -> output
+						for (c = 0; c < layer1_size; c++)
+							syn1[c + l2] += g * syn0[c + l1];
+					}
+					// NEGATIVE SAMPLING
+					if (negative > 0) for (d = 0; d < negative + 1; d++) {
+						if (d == 0) {
+							target = word;
+							label = 1;
+						} else {
+							next_random = next_random * 25214903917L + 11L;
+							big_next_random = parseBigIntegerPositive(next_random);
+							target = table[module((big_next_random.shiftRight(16)), table_size)];
+							if (target == 0) target = module(next_random, (vocab_size - 1) + 1);
+							if (target == word) continue;
+							label = 0;
+						}
+						l2 = target * layer1_size;
+						f = 0;
+						for (c = 0; c < layer1_size; c++)
+							f += syn0[c + l1] * syn1neg[c + l2];
+						if (f > MAX_EXP)
+							g = (label - 1) * alpha;
+						else if (f < -MAX_EXP)
+							g = (label - 0) * alpha;
+						else
+							g = (label - expTable[(int) ((f + MAX_EXP) * (EXP_TABLE_SIZE / MAX_EXP / 2))]) * alpha;
+						for (c = 0; c < layer1_size; c++)
+							neu1e[c] += g * syn1neg[c + l2];
+						if (hot != null && l2 < hot.end) {
+							for (c = 0; c < layer1_size; c++)
+								hot.syn1neg_delta[c + l2] += g * syn0[c + l1];
+						} else {
+							for (c = 0; c < layer1_size; c++)
+								syn1neg[c + l2] += g * syn0[c + l1];
+						}
+					}
+					// Learn weights input -> hidden
+					if (hot != null && l1 < hot.end) {
+						for (c = 0; c < layer1_size; c++)
+							hot.syn0_delta[c + l1] += neu1e[c];
+					} else {
+						for (c = 0; c < layer1_size; c++)
+							syn0[c + l1] += neu1e[c];
+					}
+				}
+			}
+		}
+		return next_random;
+	}
+
 	private static final BigInteger TWO_COMPL_REF = BigInteger.ONE.shiftLeft(64);
 
 	private static BigInteger parseBigIntegerPositive(long num) {
@@ -891,9 +1224,8 @@ public class Word2VecTrainer {
 	 */
 	public RawWord2VecModel TrainModel() throws Word2VecException {
 		try {
-			int a;
-
 			starting_alpha = alpha;
+			listener.update(Stage.ACQUIRE_VOCAB, 0);
 			if (overwrite_vocab.isPresent()) {
 				constructVocabFromInMemoryOverride();
 			} else if (!read_vocab_file.isEmpty()) {
@@ -905,18 +1237,30 @@ public class Word2VecTrainer {
 			InitNet();
 			if (negative > 0) InitUnigramTable();
 			start = new DateTime();
+			listener.update(Stage.TRAIN_NEURAL_NETWORK, 0);
 
-			ExecutorService executor = Executors.newFixedThreadPool(Math.min(num_threads, Runtime.getRuntime().availableProcessors()));
-
-			List<Future<?>> threads = new ArrayList<>();
-			for (a = 0; a < num_threads; a++) {
-				threads.add(executor.submit(new TrainModelThread(a)));
+			// A single thread trains exactly like the C version, in the calling thread so that a job of a
+			// shared pool does not wait for a task queued behind other jobs. More threads train on chunks.
+			if (num_threads == 1) {
+				try {
+					new TrainModelThread(0).run();
+				} catch (RuntimeException e) {
+					throw new Word2VecException("Model Training thread encountered exception", e);
+				}
+			} else {
+				int parallelism = Math.min(num_threads, Runtime.getRuntime().availableProcessors());
+				ExecutorService executor = shared_executor.isPresent() ? shared_executor.get() : new ForkJoinPool(parallelism);
+				try {
+					TrainModelChunks(executor, parallelism);
+				} finally {
+					if (!shared_executor.isPresent())
+						executor.shutdownNow();
+				}
 			}
-			for (a = 0; a < num_threads; a++)
-				threads.get(a).get();
+			listener.update(Stage.TRAIN_NEURAL_NETWORK, 1);
 			if (classes == 0) {
 				if (!output_file.isEmpty() && binary == 0) {
-					try (BufferedWriter fo = new BufferedWriter(new FileWriter(output_file))) {
+					try (OutputStream fo = new BufferedOutputStream(new FileOutputStream(output_file))) {
 						writeWordModel(fo);
 					}
 				}
@@ -925,7 +1269,6 @@ public class Word2VecTrainer {
 				// TODO port it from C later.
 			}
 
-			executor.shutdown();
 			return new RawWord2VecModel(
 					Arrays.stream(vocab)
 							.filter(vocabWord -> (vocabWord != null) && vocabWord.word != null)
@@ -943,17 +1286,22 @@ public class Word2VecTrainer {
 		}
 	}
 
-	private void writeWordModel(BufferedWriter fo) throws IOException {
+	private void writeWordModel(OutputStream fo) throws IOException {
 		int a;
 		int b;
 		// Save the word vectors
-		fo.write(String.format("%d %d\n", vocab_size, layer1_size));
+		fo.write(String.format("%d %d\n", vocab_size, layer1_size).getBytes(StandardCharsets.UTF_8));
+		final byte[] value = new byte[Format.MAX_FIXED_LENGTH + 1];
 		for (a = 0; a < vocab_size; a++) {
-			fo.write(String.format("%s ", vocab[a].word));
+			fo.write(vocab[a].word.getBytes(StandardCharsets.UTF_8));
+			fo.write(' ');
 			// we only support non-binary for now
-			for (b = 0; b < layer1_size; b++)
-				fo.write(String.format("%f ", syn0[a * layer1_size + b]));
-			fo.write("\n");
+			for (b = 0; b < layer1_size; b++) {
+				int length = Format.formatFixed(syn0[a * layer1_size + b], value, 0);
+				value[length++] = ' ';
+				fo.write(value, 0, length);
+			}
+			fo.write('\n');
 		}
 	}
 
@@ -1,17 +1,23 @@
-package textmining.word2vec.ported;
+package com.medallia.word2vec.ported;
 
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.ImmutableSet;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Iterables;
 import com.google.common.math.DoubleMath;
 import com.medallia.word2vec.Searcher;
 import com.medallia.word2vec.Word2VecModel;
 import com.medallia.word2vec.util.AutoLog;
 import org.apache.commons.logging.Log;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * <p>
@@ -28,16 +34,44 @@ import java.util.stream.Collectors;
  * So a correct answer from the model should be france, given "athens greece paris" as the input.
  *
  * <p>
+ * Questions are answered in parallel: each thread takes a block of questions and scans the
+ * vocabulary once for the whole block, a block of rows at a time, so every vector is read once per
+ * block instead of once per question. Besides the 3CosAdd objective of the original code, the
+ * 3CosMul objective of Levy and Goldberg is supported, see {@link Method}.
+ *
+ * <p>
  * For sample usage, see corresponding test.
  */
 public class Word2VecWordAccuracy {
 	private static final Log LOG = AutoLog.getLog();
 
-	private final Word2VecModel model;
+	/** Number of questions answered together in one scan of the vocabulary */
+	private static final int QUESTION_BLOCK_SIZE = 64;
+	/** Number of vocabulary rows compared against a block of questions before moving to the next rows */
+	private static final int ROW_BLOCK_SIZE = 1024;
+	/** Keeps 3CosMul from dividing by zero, as suggested by Levy and Goldberg */
+	private static final float COS_MUL_EPSILON = 0.001f;
+
+	/** Objective used to answer a question a:b :: c:? */
+	public enum Method {
+		/** Word closest to b - a + c, as in compute-accuracy.c */
+		COS_ADD,
+		/**
+		 * Word maximizing cos(x, b) * cos(x, c) / (cos(x, a) + epsilon), with cosines shifted to [0, 1],
+		 * see "Linguistic Regularities in Sparse and Explicit Word Representations"
+		 */
+		COS_MUL,
+	}
+
 	private final Searcher searcher;
+	private final int numThreads;
+	private final int vocabSize;
+	private final int layerSize;
+	/** Normalized vectors of all words, {@link #layerSize} floats per word */
+	private final float[] matrix;
 
 	/**
-	 * Explanation of internal variables.
+	 * Explanation of counters kept while tallying the answers.
 	 *
 	 * <ul>
 	 * <li>TCN: total questions count in this section (separated by :) </li>
@@ -54,11 +88,85 @@ public class Word2VecWordAccuracy {
 	 * <li>TQS: total questions that the program is able to answer </li>
 	 * </ul>
 	 */
-	private int TCN = 0, CCN = 0, TACN = 0, CACN = 0, SECN = 0, SYCN = 0, SEAC = 0, SYAC = 0, QID = 0, TQ = 0, TQS = 0;
+	private static final class Stats {
+		private int TCN = 0, CCN = 0, TACN = 0, CACN = 0, SECN = 0, SYCN = 0, SEAC = 0, SYAC = 0, QID = 0, TQ = 0, TQS = 0;
+
+		/** Prints the status to the screen. */
+		private void printStats() {
+			if (TCN == 0) TCN = 1;
+			if (QID != 0) {
+				LOG.info(String.format("ACCURACY TOP1: %.2f %%  (%d / %d)\n",
+						CCN / (double) TCN * 100,
+						CCN,
+						TCN));
+				LOG.info(String.format("Total accuracy: %.2f %%   Semantic accuracy: %.2f %%   Syntactic accuracy: %.2f %% \n",
+						CACN / (double) TACN * 100,
+						SEAC / (double) SECN * 100,
+						SYAC / (double) SYCN * 100));
+			}
+			QID++;
+			TCN = 0;
+			CCN = 0;
+		}
+	}
+
+	/** Question a:b :: c:expected, as rows of the vocabulary */
+	private static final class Question {
+		private final int a, b, c, expected;
+		/** Row of the best answer, or -1 if there is none */
+		private int answer = -1;
+
+		private Question(int a, int b, int c, int expected) {
+			this.a = a;
+			this.b = b;
+			this.c = c;
+			this.expected = expected;
+		}
+	}
+
+	/** Line of the question file: either a section header or a question, which is null if it cannot be answered */
+	private static final class Line {
+		private final String header;
+		private final Question question;
+
+		private Line(String header, Question question) {
+			this.header = header;
+			this.question = question;
+		}
+	}
 
 	Word2VecWordAccuracy(Word2VecModel model) {
-		this.model = model;
+		this(model, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Copies the normalized vectors of the model so that questions can be answered without going through
+	 * the {@link Searcher} for every word.
+	 *
+	 * @param numThreads number of threads answering questions
+	 */
+	Word2VecWordAccuracy(Word2VecModel model, int numThreads) {
+		Preconditions.checkArgument(numThreads > 0, "Value must be positive");
 		this.searcher = model.forSearch();
+		this.numThreads = numThreads;
+		this.vocabSize = Iterables.size(model.getVocab());
+		this.layerSize = searcher.getLayerSize();
+
+		this.matrix = new float[vocabSize * layerSize];
+		final float[] vec = new float[layerSize];
+		for (int i = 0; i < vocabSize; i++) {
+			searcher.getRawVector(i, vec);
+			System.arraycopy(vec, 0, matrix, i * layerSize, layerSize);
+		}
+	}
+
+	/**
+	 * Compute word accuracy given a test file, using {@link Method#COS_ADD} like the original C code.
+	 *
+	 * @see #computeWordAccuracy(int, List, Method)
+	 */
+	public AccuracyResult computeWordAccuracy(int threshold, List<String> questions) {
+		return computeWordAccuracy(threshold, questions, Method.COS_ADD);
 	}
 
 	/**
@@ -67,104 +175,162 @@ public class Word2VecWordAccuracy {
 	 * @param threshold maximum number of vocabulary size. If the model has more than this number,
 	 * the remaining words in the vocabulary will be ignored.
 	 * @param questions the question file defined by the original C project, line by line.
+	 * @param method objective used to pick the answer of each question
+	 * @throws RuntimeException if the thread is interrupted while questions are answered, in which case
+	 * its interrupt flag is set again
 	 */
-	public AccuracyResult computeWordAccuracy(int threshold, List<String> questions) {
-		TCN = 0;
-		CCN = 0;
-		TACN = 0;
-		CACN = 0;
-		SECN = 0;
-		SYCN = 0;
-		SEAC = 0;
-		SYAC = 0;
-		QID = 0;
-		TQ = 0;
-		TQS = 0;
-
+	public AccuracyResult computeWordAccuracy(int threshold, List<String> questions, Method method) {
+		final List<Line> lines = new ArrayList<>(questions.size());
+		final List<Question> answerable = new ArrayList<>();
 		for (String line : questions) {
 			String[] words = line.trim().split(" ");
 			Preconditions.checkState(words.length > 0);
 			if (words[0].equals(":") || words[0].equals("EXIT")) {
-				printStats();
-				LOG.info(String.format("%s:\n", words[1]));
+				lines.add(new Line(words[1], null));
 				continue;
 			}
 			Preconditions.checkState(words.length >= 4);
 
-			for (int i = 0; i < 4; i++) {
-				words[i] = words[i].toLowerCase();
-			}
-
+			final int[] rows = new int[4];
 			boolean outOfVocab = false;
 			for (int i = 0; i < 4; i++) {
-				if (searcher.contains(words[i]) && model.getWordIndex(words[i]) < threshold) {
-					continue;
-				} else {
+				rows[i] = searcher.getWordIndex(words[i].toLowerCase());
+				if (rows[i] < 0 || rows[i] >= threshold) {
 					outOfVocab = true;
 					break;
 				}
 			}
-			TQ++;
 
-			if (outOfVocab) {
+			final Question question = outOfVocab ? null : new Question(rows[0], rows[1], rows[2], rows[3]);
+			if (question != null)
+				answerable.add(question);
+			lines.add(new Line(null, question));
+		}
+
+		answer(answerable, method);
+
+		final Stats stats = new Stats();
+		for (Line line : lines) {
+			if (line.header != null) {
+				stats.printStats();
+				LOG.info(String.format("%s:\n", line.header));
 				continue;
 			}
+			stats.TQ++;
 
-			// virtual target word vector.
-			float[] targetWordVec = new float[model.getLayerSize()];
-			for (int i = 0; i < model.getLayerSize(); i++) {
-				targetWordVec[i] = (searcher.getRawVector(words[1]).get(i) - searcher.getRawVector(words[0]).get(i)) + searcher.getRawVector(words[2]).get(i);
+			final Question question = line.question;
+			if (question == null) {
+				continue;
 			}
-			TQS++;
+			stats.TQS++;
 
-			// find most similar words.
-			List<String> matches = searcher.getMatchesFromVector(targetWordVec, 5, ImmutableSet.of(words[0], words[1], words[2]))
-					.stream()
-					.map(match -> match.match())
-					.collect(Collectors.toList());
-
-			String theMatch = matches.get(0);
-
-			if (theMatch.equals(words[3])) {
-				CCN++;
-				CACN++;
-				if (QID <= 5) {
-					SEAC++;
+			if (question.answer == question.expected) {
+				stats.CCN++;
+				stats.CACN++;
+				if (stats.QID <= 5) {
+					stats.SEAC++;
 				} else {
-					SYAC++;
+					stats.SYAC++;
 				}
 			}
 
-			if (QID <= 5) {
-				SECN++;
+			if (stats.QID <= 5) {
+				stats.SECN++;
 			} else {
-				SYCN++;
+				stats.SYCN++;
 			}
-			TCN++;
-			TACN++;
+			stats.TCN++;
+			stats.TACN++;
 		}
-		printStats();
-		LOG.info(String.format("Questions seen / total: %d %d   %.2f %% \n", TQS, TQ, TQS / (float) TQ * 100));
+		stats.printStats();
+		LOG.info(String.format("Questions seen / total: %d %d   %.2f %% \n", stats.TQS, stats.TQ, stats.TQS / (float) stats.TQ * 100));
 
-		return new AccuracyResult(TQS, TQ, CACN / (double) TACN * 100, SEAC / (double) SECN * 100, SYAC / (double) SYCN * 100);
+		return new AccuracyResult(stats.TQS, stats.TQ,
+				stats.CACN / (double) stats.TACN * 100,
+				stats.SEAC / (double) stats.SECN * 100,
+				stats.SYAC / (double) stats.SYCN * 100);
 	}
 
-	/** Prints the status to the screen. */
-	private void printStats() {
-		if (TCN == 0) TCN = 1;
-		if (QID != 0) {
-			LOG.info(String.format("ACCURACY TOP1: %.2f %%  (%d / %d)\n",
-					CCN / (double) TCN * 100,
-					CCN,
-					TCN));
-			LOG.info(String.format("Total accuracy: %.2f %%   Semantic accuracy: %.2f %%   Syntactic accuracy: %.2f %% \n",
-					CACN / (double) TACN * 100,
-					SEAC / (double) SECN * 100,
-					SYAC / (double) SYCN * 100));
+	/** Answers the given questions in parallel, one block of questions per task */
+	private void answer(List<Question> questions, Method method) {
+		final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		try {
+			final List<Future<?>> futures = new ArrayList<>();
+			for (int start = 0; start < questions.size(); start += QUESTION_BLOCK_SIZE) {
+				final List<Question> block = questions.subList(start, Math.min(start + QUESTION_BLOCK_SIZE, questions.size()));
+				futures.add(executor.submit(() -> answerBlock(block, method)));
+			}
+			for (Future<?> future : futures)
+				future.get();
+		} catch (ExecutionException e) {
+			throw Throwables.propagate(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw Throwables.propagate(e);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Answers a block of questions with a single scan of the vocabulary. 3CosAdd needs one query vector
+	 * per question, b - a + c, while 3CosMul needs the cosines with each of a, b and c.
+	 */
+	private void answerBlock(List<Question> block, Method method) {
+		final int queriesPerQuestion = method == Method.COS_ADD ? 1 : 3;
+		final int numQueries = block.size() * queriesPerQuestion;
+		final float[] queries = new float[numQueries * layerSize];
+		for (int q = 0; q < block.size(); q++) {
+			final Question question = block.get(q);
+			final int offset = q * queriesPerQuestion * layerSize;
+			if (method == Method.COS_ADD) {
+				for (int j = 0; j < layerSize; j++)
+					queries[offset + j] = (matrix[question.b * layerSize + j] - matrix[question.a * layerSize + j]) + matrix[question.c * layerSize + j];
+			} else {
+				System.arraycopy(matrix, question.a * layerSize, queries, offset, layerSize);
+				System.arraycopy(matrix, question.b * layerSize, queries, offset + layerSize, layerSize);
+				System.arraycopy(matrix, question.c * layerSize, queries, offset + 2 * layerSize, layerSize);
+			}
+		}
+
+		final float[] best = new float[block.size()];
+		Arrays.fill(best, Float.NEGATIVE_INFINITY);
+		final float[] dots = new float[numQueries * ROW_BLOCK_SIZE];
+		for (int rowStart = 0; rowStart < vocabSize; rowStart += ROW_BLOCK_SIZE) {
+			final int rowEnd = Math.min(rowStart + ROW_BLOCK_SIZE, vocabSize);
+			for (int query = 0; query < numQueries; query++) {
+				final int queryOffset = query * layerSize;
+				for (int row = rowStart; row < rowEnd; row++) {
+					final int rowOffset = row * layerSize;
+					float d = 0;
+					for (int j = 0; j < layerSize; j++)
+						d += queries[queryOffset + j] * matrix[rowOffset + j];
+					dots[query * ROW_BLOCK_SIZE + row - rowStart] = d;
+				}
+			}
+
+			for (int q = 0; q < block.size(); q++) {
+				final Question question = block.get(q);
+				final int dotOffset = q * queriesPerQuestion * ROW_BLOCK_SIZE - rowStart;
+				for (int row = rowStart; row < rowEnd; row++) {
+					if (row == question.a || row == question.b || row == question.c)
+						continue;
+					final float score;
+					if (method == Method.COS_ADD) {
+						score = dots[dotOffset + row];
+					} else {
+						final float cosA = (dots[dotOffset + row] + 1) / 2;
+						final float cosB = (dots[dotOffset + ROW_BLOCK_SIZE + row] + 1) / 2;
+						final float cosC = (dots[dotOffset + 2 * ROW_BLOCK_SIZE + row] + 1) / 2;
+						score = cosB * cosC / (cosA + COS_MUL_EPSILON);
+					}
+					if (score > best[q]) {
+						best[q] = score;
+						question.answer = row;
+					}
+				}
+			}
 		}
-		QID++;
-		TCN = 0;
-		CCN = 0;
 	}
 
 	/**
@@ -0,0 +1,213 @@
+package com.medallia.word2vec.ported;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableTable;
+import com.medallia.word2vec.Searcher;
+import com.medallia.word2vec.util.AutoLog;
+import org.apache.commons.logging.Log;
+import org.apache.commons.math3.stat.correlation.PearsonsCorrelation;
+import org.apache.commons.math3.stat.correlation.SpearmansCorrelation;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * <p>
+ * Calculate how well a word2vec model agrees with human judgements of word similarity, as a complement to
+ * {@link Word2VecWordAccuracy}.
+ *
+ * <p>
+ * A dataset is a list of word pairs with a similarity score, for example WordSim-353 or SimLex-999, stored
+ * one pair per line as tab separated values:
+ * <p>
+ * <font face="courier">tiger&#9;cat&#9;7.35</font>
+ *
+ * <p>
+ * Empty lines and lines starting with # are skipped. The model scores each pair with
+ * {@link Searcher#cosineDistance(String, String)}, and the result reports the Spearman and Pearson
+ * correlation between the model's and the dataset's scores over the pairs where both words are in the
+ * vocabulary, along with how many pairs that is.
+ */
+public class Word2VecWordSimilarity {
+	private static final Log LOG = AutoLog.getLog();
+
+	private final int numThreads;
+
+	/** Evaluates with {@link Runtime#availableProcessors()} threads */
+	public Word2VecWordSimilarity() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/** @param numThreads number of (model, dataset) combinations evaluated at the same time */
+	public Word2VecWordSimilarity(int numThreads) {
+		Preconditions.checkArgument(numThreads > 0, "Value must be positive");
+		this.numThreads = numThreads;
+	}
+
+	/** Word pairs with their expected similarity */
+	public static final class Dataset {
+		public final String name;
+		private final ImmutableList<String> words1;
+		private final ImmutableList<String> words2;
+		private final double[] scores;
+
+		private Dataset(String name, ImmutableList<String> words1, ImmutableList<String> words2, double[] scores) {
+			this.name = name;
+			this.words1 = words1;
+			this.words2 = words2;
+			this.scores = scores;
+		}
+
+		/** @return Number of word pairs in the dataset */
+		public int size() {
+			return scores.length;
+		}
+
+		/** @return First word of the i-th pair, lower cased */
+		String word1(int i) {
+			return words1.get(i);
+		}
+
+		/** @return Second word of the i-th pair, lower cased */
+		String word2(int i) {
+			return words2.get(i);
+		}
+
+		/** @return {@link Dataset} read from the given file, named after it */
+		public static Dataset fromFile(File file) throws IOException {
+			return fromLines(file.getName(), Files.readAllLines(file.toPath(), StandardCharsets.UTF_8));
+		}
+
+		/** @return {@link Dataset} with the pairs in the given lines, see {@link Word2VecWordSimilarity} for the format */
+		public static Dataset fromLines(String name, List<String> lines) {
+			final ImmutableList.Builder<String> words1 = ImmutableList.builder();
+			final ImmutableList.Builder<String> words2 = ImmutableList.builder();
+			final double[] scores = new double[lines.size()];
+			int size = 0;
+			for (int i = 0; i < lines.size(); i++) {
+				final String line = lines.get(i).trim();
+				if (line.isEmpty() || line.startsWith("#"))
+					continue;
+				final String[] fields = line.split("\t");
+				Preconditions.checkArgument(fields.length == 3, "%s line %s: expected 3 tab separated fields, got '%s'", name, i + 1, line);
+				words1.add(fields[0].toLowerCase());
+				words2.add(fields[1].toLowerCase());
+				try {
+					scores[size++] = Double.parseDouble(fields[2]);
+				} catch (NumberFormatException e) {
+					throw new IllegalArgumentException(String.format("%s line %d: invalid score '%s'", name, i + 1, fields[2]), e);
+				}
+			}
+			return new Dataset(name, words1.build(), words2.build(), Arrays.copyOf(scores, size));
+		}
+	}
+
+	/**
+	 * Evaluates every model against every dataset in parallel.
+	 *
+	 * @param models searchers to evaluate, by name
+	 * @return Results by model name and dataset name
+	 */
+	public ImmutableTable<String, String, SimilarityResult> evaluate(Map<String, ? extends Searcher> models, List<Dataset> datasets) throws InterruptedException {
+		final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		try {
+			final ImmutableTable.Builder<String, String, Future<SimilarityResult>> futures = ImmutableTable.builder();
+			for (Map.Entry<String, ? extends Searcher> model : models.entrySet()) {
+				for (Dataset dataset : datasets)
+					futures.put(model.getKey(), dataset.name, executor.submit(() -> evaluate(model.getValue(), dataset)));
+			}
+
+			final ImmutableTable.Builder<String, String, SimilarityResult> results = ImmutableTable.builder();
+			for (ImmutableTable.Cell<String, String, Future<SimilarityResult>> cell : futures.build().cellSet()) {
+				final SimilarityResult result = cell.getValue().get();
+				LOG.info(String.format("%s on %s: %s", cell.getRowKey(), cell.getColumnKey(), result));
+				results.put(cell.getRowKey(), cell.getColumnKey(), result);
+			}
+			return results.build();
+		} catch (ExecutionException e) {
+			throw Throwables.propagate(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/** @return Correlation between the model's and the dataset's scores over the pairs the model knows */
+	public static SimilarityResult evaluate(Searcher searcher, Dataset dataset) {
+		final double[] expected = new double[dataset.size()];
+		final double[] actual = new double[dataset.size()];
+		int seen = 0;
+		for (int i = 0; i < dataset.size(); i++) {
+			final String word1 = dataset.word1(i);
+			final String word2 = dataset.word2(i);
+			if (!searcher.contains(word1) || !searcher.contains(word2))
+				continue;
+			expected[seen] = dataset.scores[i];
+			actual[seen] = searcher.cosineDistance(word1, word2);
+			seen++;
+		}
+
+		final double[] x = Arrays.copyOf(expected, seen);
+		final double[] y = Arrays.copyOf(actual, seen);
+		return new SimilarityResult(seen, dataset.size(), spearman(x, y), pearson(x, y));
+	}
+
+	/** @return Spearman rank correlation of x and y, with tied values sharing their average rank */
+	static double spearman(double[] x, double[] y) {
+		Preconditions.checkArgument(x.length == y.length, "Arrays must have the same length");
+		return x.length < 2 ? Double.NaN : new SpearmansCorrelation().correlation(x, y);
+	}
+
+	/** @return Pearson correlation of x and y, or NaN if either has no variance */
+	static double pearson(double[] x, double[] y) {
+		Preconditions.checkArgument(x.length == y.length, "Arrays must have the same length");
+		return x.length < 2 ? Double.NaN : new PearsonsCorrelation().correlation(x, y);
+	}
+
+	/** Result of similarity benchmarking */
+	public static final class SimilarityResult {
+		public final int pairsSeen;
+		public final int pairsTotal;
+		public final double spearman;
+		public final double pearson;
+
+		/**
+		 * @param pairsSeen Pairs where both words are in the model's vocabulary
+		 * @param pairsTotal Total pairs in the dataset
+		 * @param spearman Spearman rank correlation over the pairs seen
+		 * @param pearson Pearson correlation over the pairs seen
+		 */
+		public SimilarityResult(int pairsSeen, int pairsTotal, double spearman, double pearson) {
+			this.pairsSeen = pairsSeen;
+			this.pairsTotal = pairsTotal;
+			this.spearman = spearman;
+			this.pearson = pearson;
+		}
+
+		/** @return Fraction of the dataset's pairs where both words are in the model's vocabulary */
+		public double coverage() {
+			return pairsTotal == 0 ? 0 : pairsSeen / (double) pairsTotal;
+		}
+
+		@Override public String toString() {
+			return MoreObjects.toStringHelper(this)
+					.add("pairsSeen", pairsSeen)
+					.add("pairsTotal", pairsTotal)
+					.add("spearman", spearman)
+					.add("pearson", pearson)
+					.toString();
+		}
+	}
+}
@@ -14,6 +14,7 @@ import org.apache.thrift.scheme.SchemeFactory;
 import org.apache.thrift.scheme.StandardScheme;
 import org.apache.thrift.scheme.TupleScheme;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Collections;
@@ -29,6 +30,8 @@ public class Word2VecModelThrift implements org.apache.thrift.TBase<Word2VecMode
   private static final org.apache.thrift.protocol.TField VOCAB_FIELD_DESC = new org.apache.thrift.protocol.TField("vocab", org.apache.thrift.protocol.TType.LIST, (short)1);
   private static final org.apache.thrift.protocol.TField LAYER_SIZE_FIELD_DESC = new org.apache.thrift.protocol.TField("layerSize", org.apache.thrift.protocol.TType.I32, (short)2);
   private static final org.apache.thrift.protocol.TField VECTORS_FIELD_DESC = new org.apache.thrift.protocol.TField("vectors", org.apache.thrift.protocol.TType.LIST, (short)3);
+  private static final org.apache.thrift.protocol.TField PACKED_VECTORS_FIELD_DESC = new org.apache.thrift.protocol.TField("packedVectors", org.apache.thrift.protocol.TType.STRING, (short)4);
+  private static final org.apache.thrift.protocol.TField PACKED_VOCAB_FIELD_DESC = new org.apache.thrift.protocol.TField("packedVocab", org.apache.thrift.protocol.TType.STRING, (short)5);
 
   private static final Map<Class<? extends IScheme>, SchemeFactory> schemes = new HashMap<Class<? extends IScheme>, SchemeFactory>();
   static {
@@ -39,12 +42,22 @@ public class Word2VecModelThrift implements org.apache.thrift.TBase<Word2VecMode
   private List<String> vocab; // optional
   private int layerSize; // optional
   private List<Double> vectors; // optional
+  private ByteBuffer packedVectors; // optional
+  private ByteBuffer packedVocab; // optional
 
   /** The set of fields this struct contains, along with convenience methods for finding and manipulating them. */
   public enum _Fields implements org.apache.thrift.TFieldIdEnum {
     VOCAB((short)1, "vocab"),
     LAYER_SIZE((short)2, "layerSize"),
-    VECTORS((short)3, "vectors");
+    VECTORS((short)3, "vectors"),
+    /**
+     * All vectors as little-endian float32 values, layerSize per word; replaces vectors
+     */
+    PACKED_VECTORS((short)4, "packedVectors"),
+    /**
+     * All words as UTF-8, each followed by a newline; replaces vocab
+     */
+    PACKED_VOCAB((short)5, "packedVocab");
 
     private static final Map<String, _Fields> byName = new HashMap<String, _Fields>();
 
@@ -65,6 +78,10 @@ public class Word2VecModelThrift implements org.apache.thrift.TBase<Word2VecMode
           return LAYER_SIZE;
         case 3: // VECTORS
           return VECTORS;
+        case 4: // PACKED_VECTORS
+          return PACKED_VECTORS;
+        case 5: // PACKED_VOCAB
+          return PACKED_VOCAB;
         default:
           return null;
       }
@@ -107,7 +124,7 @@ public class Word2VecModelThrift implements org.apache.thrift.TBase<Word2VecMode
   // isset id assignments
   private static final int __LAYERSIZE_ISSET_ID = 0;
   private byte __isset_bitfield = 0;
-  private static _Fields optionals[] = {_Fields.VOCAB, _Fields.LAYER_SIZE, _Fields.VECTORS};
+  private static _Fields optionals[] = {_Fields.VOCAB, _Fields.LAYER_SIZE, _Fields.VECTORS, _Fields.PACKED_VECTORS, _Fields.PACKED_VOCAB};
   public static final Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> metaDataMap;
   static {
     Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> tmpMap = new EnumMap<_Fields, org.apache.thrift.meta_data.FieldMetaData>(_Fields.class);
@@ -119,6 +136,10 @@ public class Word2VecModelThrift implements org.apache.thrift.TBase<Word2VecMode
     tmpMap.put(_Fields.VECTORS, new org.apache.thrift.meta_data.FieldMetaData("vectors", org.apache.thrift.TFieldRequirementType.OPTIONAL, 
         new org.apache.thrift.meta_data.ListMetaData(org.apache.thrift.protocol.TType.LIST, 
             new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.DOUBLE))));
+    tmpMap.put(_Fields.PACKED_VECTORS, new org.apache.thrift.meta_data.FieldMetaData("packedVectors", org.apache.thrift.TFieldRequirementType.OPTIONAL, 
+        new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.STRING        , true)));
+    tmpMap.put(_Fields.PACKED_VOCAB, new org.apache.thrift.meta_data.FieldMetaData("packedVocab", org.apache.thrift.TFieldRequirementType.OPTIONAL, 
+        new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.STRING        , true)));
     metaDataMap = Collections.unmodifiableMap(tmpMap);
     org.apache.thrift.meta_data.FieldMetaData.addStructMetaDataMap(Word2VecModelThrift.class, metaDataMap);
   }
@@ -140,6 +161,14 @@ public class Word2VecModelThrift implements org.apache.thrift.TBase<Word2VecMode
       List<Double> __this__vectors = new ArrayList<Double>(other.vectors);
       this.vectors = __this__vectors;
     }
+    if (other.isSetPackedVectors()) {
+      this.packedVectors = org.apache.thrift.TBaseHelper.copyBinary(other.packedVectors);
+;
+    }
+    if (other.isSetPackedVocab()) {
+      this.packedVocab = org.apache.thrift.TBaseHelper.copyBinary(other.packedVocab);
+;
+    }
   }
 
   public Word2VecModelThrift deepCopy() {
@@ -152,6 +181,8 @@ public class Word2VecModelThrift implements org.apache.thrift.TBase<Word2VecMode
     setLayerSizeIsSet(false);
     this.layerSize = 0;
     this.vectors = null;
+    this.packedVectors = null;
+    this.packedVocab = null;
   }
 
   public int getVocabSize() {
@@ -255,6 +286,74 @@ public class Word2VecModelThrift implements org.apache.thrift.TBase<Word2VecMode
     }
   }
 
+  public byte[] getPackedVectors() {
+    setPackedVectors(org.apache.thrift.TBaseHelper.rightSize(packedVectors));
+    return packedVectors == null ? null : packedVectors.array();
+  }
+
+  public ByteBuffer bufferForPackedVectors() {
+    return packedVectors;
+  }
+
+  public Word2VecModelThrift setPackedVectors(byte[] packedVectors) {
+    setPackedVectors(packedVectors == null ? (ByteBuffer)null : ByteBuffer.wrap(packedVectors));
+    return this;
+  }
+
+  public Word2VecModelThrift setPackedVectors(ByteBuffer packedVectors) {
+    this.packedVectors = packedVectors;
+    return this;
+  }
+
+  public void unsetPackedVectors() {
+    this.packedVectors = null;
+  }
+
+  /** Returns true if field packedVectors is set (has been assigned a value) and false otherwise */
+  public boolean isSetPackedVectors() {
+    return this.packedVectors != null;
+  }
+
+  public void setPackedVectorsIsSet(boolean value) {
+    if (!value) {
+      this.packedVectors = null;
+    }
+  }
+
+  public byte[] getPackedVocab() {
+    setPackedVocab(org.apache.thrift.TBaseHelper.rightSize(packedVocab));
+    return packedVocab == null ? null : packedVocab.array();
+  }
+
+  public ByteBuffer bufferForPackedVocab() {
+    return packedVocab;
+  }
+
+  public Word2VecModelThrift setPackedVocab(byte[] packedVocab) {
+    setPackedVocab(packedVocab == null ? (ByteBuffer)null : ByteBuffer.wrap(packedVocab));
+    return this;
+  }
+
+  public Word2VecModelThrift setPackedVocab(ByteBuffer packedVocab) {
+    this.packedVocab = packedVocab;
+    return this;
+  }
+
+  public void unsetPackedVocab() {
+    this.packedVocab = null;
+  }
+
+  /** Returns true if field packedVocab is set (has been assigned a value) and false otherwise */
+  public boolean isSetPackedVocab() {
+    return this.packedVocab != null;
+  }
+
+  public void setPackedVocabIsSet(boolean value) {
+    if (!value) {
+      this.packedVocab = null;
+    }
+  }
+
   public void setFieldValue(_Fields field, Object value) {
     switch (field) {
     case VOCAB:
@@ -281,6 +380,22 @@ public class Word2VecModelThrift implements org.apache.thrift.TBase<Word2VecMode
       }
       break;
 
+    case PACKED_VECTORS:
+      if (value == null) {
+        unsetPackedVectors();
+      } else {
+        setPackedVectors((ByteBuffer)value);
+      }
+      break;
+
+    case PACKED_VOCAB:
+      if (value == null) {
+        unsetPackedVocab();
+      } else {
+        setPackedVocab((ByteBuffer)value);
+      }
+      break;
+
     }
   }
 
@@ -295,6 +410,12 @@ public class Word2VecModelThrift implements org.apache.thrift.TBase<Word2VecMode
     case VECTORS:
       return getVectors();
 
+    case PACKED_VECTORS:
+      return getPackedVectors();
+
+    case PACKED_VOCAB:
+      return getPackedVocab();
+
     }
     throw new IllegalStateException();
   }
@@ -312,6 +433,10 @@ public class Word2VecModelThrift implements org.apache.thrift.TBase<Word2VecMode
       return isSetLayerSize();
     case VECTORS:
       return isSetVectors();
+    case PACKED_VECTORS:
+      return isSetPackedVectors();
+    case PACKED_VOCAB:
+      return isSetPackedVocab();
     }
     throw new IllegalStateException();
   }
@@ -356,6 +481,24 @@ public class Word2VecModelThrift implements org.apache.thrift.TBase<Word2VecMode
         return false;
     }
 
+    boolean this_present_packedVectors = true && this.isSetPackedVectors();
+    boolean that_present_packedVectors = true && that.isSetPackedVectors();
+    if (this_present_packedVectors || that_present_packedVectors) {
+      if (!(this_present_packedVectors && that_present_packedVectors))
+        return false;
+      if (!this.packedVectors.equals(that.packedVectors))
+        return false;
+    }
+
+    boolean this_present_packedVocab = true && this.isSetPackedVocab();
+    boolean that_present_packedVocab = true && that.isSetPackedVocab();
+    if (this_present_packedVocab || that_present_packedVocab) {
+      if (!(this_present_packedVocab && that_present_packedVocab))
+        return false;
+      if (!this.packedVocab.equals(that.packedVocab))
+        return false;
+    }
+
     return true;
   }
 
@@ -378,6 +521,16 @@ public class Word2VecModelThrift implements org.apache.thrift.TBase<Word2VecMode
     if (present_vectors)
       builder.append(vectors);
 
+    boolean present_packedVectors = true && (isSetPackedVectors());
+    builder.append(present_packedVectors);
+    if (present_packedVectors)
+      builder.append(packedVectors);
+
+    boolean present_packedVocab = true && (isSetPackedVocab());
+    builder.append(present_packedVocab);
+    if (present_packedVocab)
+      builder.append(packedVocab);
+
     return builder.toHashCode();
   }
 
@@ -419,6 +572,26 @@ public class Word2VecModelThrift implements org.apache.thrift.TBase<Word2VecMode
         return lastComparison;
       }
     }
+    lastComparison = Boolean.valueOf(isSetPackedVectors()).compareTo(other.isSetPackedVectors());
+    if (lastComparison != 0) {
+      return lastComparison;
+    }
+    if (isSetPackedVectors()) {
+      lastComparison = org.apache.thrift.TBaseHelper.compareTo(this.packedVectors, other.packedVectors);
+      if (lastComparison != 0) {
+        return lastComparison;
+      }
+    }
+    lastComparison = Boolean.valueOf(isSetPackedVocab()).compareTo(other.isSetPackedVocab());
+    if (lastComparison != 0) {
+      return lastComparison;
+    }
+    if (isSetPackedVocab()) {
+      lastComparison = org.apache.thrift.TBaseHelper.compareTo(this.packedVocab, other.packedVocab);
+      if (lastComparison != 0) {
+        return lastComparison;
+      }
+    }
     return 0;
   }
 
@@ -464,6 +637,26 @@ public class Word2VecModelThrift implements org.apache.thrift.TBase<Word2VecMode
       }
       first = false;
     }
+    if (isSetPackedVectors()) {
+      if (!first) sb.append(", ");
+      sb.append("packedVectors:");
+      if (this.packedVectors == null) {
+        sb.append("null");
+      } else {
+        org.apache.thrift.TBaseHelper.toString(this.packedVectors, sb);
+      }
+      first = false;
+    }
+    if (isSetPackedVocab()) {
+      if (!first) sb.append(", ");
+      sb.append("packedVocab:");
+      if (this.packedVocab == null) {
+        sb.append("null");
+      } else {
+        org.apache.thrift.TBaseHelper.toString(this.packedVocab, sb);
+      }
+      first = false;
+    }
     sb.append(")");
     return sb.toString();
   }
@@ -553,6 +746,22 @@ public class Word2VecModelThrift implements org.apache.thrift.TBase<Word2VecMode
               org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
             }
             break;
+          case 4: // PACKED_VECTORS
+            if (schemeField.type == org.apache.thrift.protocol.TType.STRING) {
+              struct.packedVectors = iprot.readBinary();
+              struct.setPackedVectorsIsSet(true);
+            } else { 
+              org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+            }
+            break;
+          case 5: // PACKED_VOCAB
+            if (schemeField.type == org.apache.thrift.protocol.TType.STRING) {
+              struct.packedVocab = iprot.readBinary();
+              struct.setPackedVocabIsSet(true);
+            } else { 
+              org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+            }
+            break;
           default:
             org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
         }
@@ -601,6 +810,20 @@ public class Word2VecModelThrift implements org.apache.thrift.TBase<Word2VecMode
           oprot.writeFieldEnd();
         }
       }
+      if (struct.packedVectors != null) {
+        if (struct.isSetPackedVectors()) {
+          oprot.writeFieldBegin(PACKED_VECTORS_FIELD_DESC);
+          oprot.writeBinary(struct.packedVectors);
+          oprot.writeFieldEnd();
+        }
+      }
+      if (struct.packedVocab != null) {
+        if (struct.isSetPackedVocab()) {
+          oprot.writeFieldBegin(PACKED_VOCAB_FIELD_DESC);
+          oprot.writeBinary(struct.packedVocab);
+          oprot.writeFieldEnd();
+        }
+      }
       oprot.writeFieldStop();
       oprot.writeStructEnd();
     }
@@ -628,7 +851,13 @@ public class Word2VecModelThrift implements org.apache.thrift.TBase<Word2VecMode
       if (struct.isSetVectors()) {
         optionals.set(2);
       }
-      oprot.writeBitSet(optionals, 3);
+      if (struct.isSetPackedVectors()) {
+        optionals.set(3);
+      }
+      if (struct.isSetPackedVocab()) {
+        optionals.set(4);
+      }
+      oprot.writeBitSet(optionals, 5);
       if (struct.isSetVocab()) {
         {
           oprot.writeI32(struct.vocab.size());
@@ -650,12 +879,18 @@ public class Word2VecModelThrift implements org.apache.thrift.TBase<Word2VecMode
           }
         }
       }
+      if (struct.isSetPackedVectors()) {
+        oprot.writeBinary(struct.packedVectors);
+      }
+      if (struct.isSetPackedVocab()) {
+        oprot.writeBinary(struct.packedVocab);
+      }
     }
 
     @Override
     public void read(org.apache.thrift.protocol.TProtocol prot, Word2VecModelThrift struct) throws org.apache.thrift.TException {
       TTupleProtocol iprot = (TTupleProtocol) prot;
-      BitSet incoming = iprot.readBitSet(3);
+      BitSet incoming = iprot.readBitSet(5);
       if (incoming.get(0)) {
         {
           org.apache.thrift.protocol.TList _list10 = new org.apache.thrift.protocol.TList(org.apache.thrift.protocol.TType.STRING, iprot.readI32());
@@ -686,6 +921,14 @@ public class Word2VecModelThrift implements org.apache.thrift.TBase<Word2VecMode
         }
         struct.setVectorsIsSet(true);
       }
+      if (incoming.get(3)) {
+        struct.packedVectors = iprot.readBinary();
+        struct.setPackedVectorsIsSet(true);
+      }
+      if (incoming.get(4)) {
+        struct.packedVocab = iprot.readBinary();
+        struct.setPackedVocabIsSet(true);
+      }
     }
   }
 
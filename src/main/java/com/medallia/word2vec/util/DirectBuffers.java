@@ -0,0 +1,74 @@
+package com.medallia.word2vec.util;
+
+import org.apache.commons.logging.Log;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * Deterministic release of direct and memory mapped buffers, which the JVM otherwise only releases
+ * when they are garbage collected.
+ * <p>
+ * There is no public API for this, so it uses {@code sun.misc.Unsafe.invokeCleaner} on Java 9 and
+ * later, and the cleaner of {@code sun.nio.ch.DirectBuffer} on Java 8.
+ */
+public final class DirectBuffers {
+	private static final Log LOG = AutoLog.getLog();
+
+	/** Releases a buffer, or null if that is not supported by this JVM */
+	private interface Unmapper {
+		void unmap(ByteBuffer buffer) throws ReflectiveOperationException;
+	}
+
+	private static final Unmapper UNMAPPER = findUnmapper();
+
+	private DirectBuffers() {
+	}
+
+	/**
+	 * Releases the memory of the given direct or memory mapped buffer right away. The buffer, and
+	 * every view of it, must not be used afterwards: accessing them may crash the JVM.
+	 *
+	 * @param buffer buffer returned by {@link ByteBuffer#allocateDirect(int)} or
+	 * {@link java.nio.channels.FileChannel#map}, not a view of it
+	 * @return True if the buffer was released, false if it is not direct or this JVM does not support
+	 * releasing it, in which case it is released when garbage collected
+	 */
+	public static boolean unmap(ByteBuffer buffer) {
+		if (buffer == null || !buffer.isDirect() || UNMAPPER == null)
+			return false;
+		try {
+			UNMAPPER.unmap(buffer);
+			return true;
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			LOG.warn("Failed to unmap buffer, leaving it to the garbage collector", e);
+			return false;
+		}
+	}
+
+	private static Unmapper findUnmapper() {
+		try {
+			final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			final Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			final Object unsafe = theUnsafe.get(null);
+			return buffer -> invokeCleaner.invoke(unsafe, buffer);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			// Java 8
+		}
+		try {
+			final Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+			final Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+			return buffer -> {
+				final Object bufferCleaner = cleaner.invoke(buffer);
+				if (bufferCleaner != null)
+					clean.invoke(bufferCleaner);
+			};
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			LOG.info("Unmapping buffers is not supported by this JVM, leaving it to the garbage collector");
+			return null;
+		}
+	}
+}
@@ -1,11 +1,73 @@
 package com.medallia.word2vec.util;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
 /**
  * Created by yibin on 2/2/15.
  */
 public class Format {
+	/** Upper bound of the number of bytes written by {@link #formatFixed(double, byte[], int)} */
+	public static final int MAX_FIXED_LENGTH = 320;
+
+	/** Values below this magnitude are formatted without going through {@link String#format} */
+	private static final double FAST_FIXED_LIMIT = 1e9;
+
 	/** @see {@link Strings#formatEnum(Enum)} */
 	public static String formatEnum(Enum<?> enumValue) {
 		return Strings.formatEnum(enumValue);
 	}
+
+	/**
+	 * Writes the value as ASCII bytes, exactly like {@code String.format(Locale.ROOT, "%f", value)} but
+	 * without allocating. Values that are too large, not finite, or so close to halfway between two
+	 * outputs that rounding errors could matter are handed to {@link String#format}.
+	 *
+	 * @param dest array with at least {@link #MAX_FIXED_LENGTH} bytes from offset
+	 * @return Offset right after the last byte written
+	 */
+	public static int formatFixed(double value, byte[] dest, int offset) {
+		final double abs = Math.abs(value);
+		if (!(abs < FAST_FIXED_LIMIT))
+			return formatFixedSlow(value, dest, offset);
+
+		final double scaled = abs * 1e6;
+		final double floor = Math.floor(scaled);
+		final double fraction = scaled - floor;
+		// The product may be off by half an ulp, and String.format rounds the shortest decimal
+		// representation rather than the exact value, so leave near ties to it
+		if (Math.abs(fraction - 0.5) <= 4 * Math.ulp(scaled))
+			return formatFixedSlow(value, dest, offset);
+		final long units = (long) floor + (fraction > 0.5 ? 1 : 0);
+
+		int pos = offset;
+		if (Double.doubleToRawLongBits(value) < 0)
+			dest[pos++] = '-';
+		pos = formatLong(units / 1000000, dest, pos);
+		dest[pos++] = '.';
+		long decimals = units % 1000000;
+		for (int i = pos + 5; i >= pos; i--) {
+			dest[i] = (byte) ('0' + decimals % 10);
+			decimals /= 10;
+		}
+		return pos + 6;
+	}
+
+	/** Writes the non-negative value in decimal; @return Offset right after the last byte written */
+	private static int formatLong(long value, byte[] dest, int offset) {
+		int digits = 1;
+		for (long rest = value / 10; rest > 0; rest /= 10)
+			digits++;
+		for (int i = offset + digits - 1; i >= offset; i--) {
+			dest[i] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		return offset + digits;
+	}
+
+	private static int formatFixedSlow(double value, byte[] dest, int offset) {
+		final byte[] bytes = String.format(Locale.ROOT, "%f", value).getBytes(StandardCharsets.US_ASCII);
+		System.arraycopy(bytes, 0, dest, offset, bytes.length);
+		return offset + bytes.length;
+	}
 }
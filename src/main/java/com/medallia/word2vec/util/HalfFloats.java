@@ -0,0 +1,70 @@
+package com.medallia.word2vec.util;
+
+/**
+ * Conversions between floats and IEEE 754 half precision (binary16) values stored in a short.
+ * <p>
+ * Conversion to half precision rounds to the nearest representable value, ties to even. Decoding
+ * goes through a lookup table of all 2^16 values.
+ */
+public final class HalfFloats {
+	private static final float[] TO_FLOAT = new float[1 << 16];
+	static {
+		for (int i = 0; i < TO_FLOAT.length; i++)
+			TO_FLOAT[i] = decode(i);
+	}
+
+	/** Prevents initialization. */
+	private HalfFloats() {
+	}
+
+	/** @return float value of the given half precision value */
+	public static float toFloat(short half) {
+		return TO_FLOAT[half & 0xFFFF];
+	}
+
+	/** @return half precision value closest to the given float */
+	public static short fromFloat(float value) {
+		final int bits = Float.floatToRawIntBits(value);
+		final int sign = (bits >>> 16) & 0x8000;
+		final int abs = bits & 0x7FFFFFFF;
+
+		// NaN and infinity
+		if (abs >= 0x7F800000)
+			return (short) (sign | 0x7C00 | (abs > 0x7F800000 ? 0x200 : 0));
+		// Rounds to a value above 65504, the largest finite half
+		if (abs >= 0x477FF000)
+			return (short) (sign | 0x7C00);
+		// Subnormal halves, below 2^-14
+		if (abs < 0x38800000) {
+			if (abs < 0x33000000)
+				return (short) sign;
+			final int shift = 126 - (abs >>> 23);
+			final int mantissa = (abs & 0x7FFFFF) | 0x800000;
+			return (short) (sign | round(mantissa >>> shift, mantissa & ((1 << shift) - 1), 1 << (shift - 1)));
+		}
+		final int exponent = (abs >>> 23) - 127 + 15;
+		final int mantissa = abs & 0x7FFFFF;
+		// A carry out of the mantissa correctly bumps the exponent
+		return (short) (sign | round((exponent << 10) | (mantissa >>> 13), mantissa & 0x1FFF, 0x1000));
+	}
+
+	/** @return truncated value rounded to nearest, ties to even, given the discarded remainder */
+	private static int round(int truncated, int remainder, int halfway) {
+		if (remainder > halfway || (remainder == halfway && (truncated & 1) != 0))
+			return truncated + 1;
+		return truncated;
+	}
+
+	private static float decode(int half) {
+		final int sign = (half & 0x8000) << 16;
+		final int exponent = (half >>> 10) & 0x1F;
+		final int mantissa = half & 0x3FF;
+		if (exponent == 0x1F)
+			return Float.intBitsToFloat(sign | 0x7F800000 | (mantissa << 13));
+		if (exponent == 0) {
+			final float value = mantissa * 0x1p-24f;
+			return sign == 0 ? value : -value;
+		}
+		return Float.intBitsToFloat(sign | ((exponent - 15 + 127) << 23) | (mantissa << 13));
+	}
+}
@@ -0,0 +1,14 @@
+// Regenerate src/main/java/com/medallia/word2vec/thrift with Thrift 0.9.1:
+//   thrift -gen java:hashcode -out src/main/java src/main/thrift/word2vec.thrift
+
+namespace java com.medallia.word2vec.thrift
+
+struct Word2VecModelThrift {
+	1: optional list<string> vocab;
+	2: optional i32 layerSize;
+	3: optional list<double> vectors;
+	/** All vectors as little-endian float32 values, layerSize per word; replaces vectors */
+	4: optional binary packedVectors;
+	/** All words as UTF-8, each followed by a newline; replaces vocab */
+	5: optional binary packedVocab;
+}
@@ -0,0 +1,91 @@
+package com.medallia.word2vec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.medallia.word2vec.Searcher.Match;
+
+/**
+ * Tests for {@link BinarySketchIndex} and {@link BinarySketchSearcherImpl}
+ */
+public class BinarySketchIndexTest {
+	/** Test that rescoring the sketch candidates finds most of the exact top matches */
+	@Test public void testRecall() {
+		NormalizedWord2VecModel model = NormalizedWord2VecModel.fromWord2VecModel(clusteredModel());
+		Searcher exact = model.forSearch();
+		Searcher sketched = BinarySketchIndex.build(model, 256, 7).forSearch(3);
+
+		int found = 0;
+		int total = 0;
+		for (int i = 0; i < 200; i++) {
+			String word = model.vocab.get(i * 10);
+			Set<String> expected = new HashSet<>(toWords(exact.getMatches(word, 10)));
+			List<Match> matches = sketched.getMatches(word, 10);
+			assertEquals(10, matches.size());
+			for (Match match : matches) {
+				// Scores are rescored exactly, whichever candidates were kept
+				assertEquals(exact.cosineDistance(word, match.match()), match.distance(), 1e-5);
+				if (expected.contains(match.match()))
+					found++;
+			}
+			total += expected.size();
+		}
+		double recall = (double) found / total;
+		assertTrue("Recall " + recall, recall >= 0.9);
+	}
+
+	/** Test that a vector is at Hamming distance 0 of its own sketch, and that matches exclude the query */
+	@Test public void testSelf() {
+		NormalizedWord2VecModel model = NormalizedWord2VecModel.fromWord2VecModel(clusteredModel());
+		BinarySketchIndex index = BinarySketchIndex.build(model, 128, 3);
+		float[] vec = new float[model.layerSize];
+		long[] sketch = new long[index.numWords];
+		for (int row = 0; row < 50; row++) {
+			for (int j = 0; j < model.layerSize; j++)
+				vec[j] = (float) model.vectors.get(row * model.layerSize + j);
+			index.sketch(vec, sketch, 0);
+			assertEquals(0, index.hammingDistance(sketch, row));
+
+			String word = model.vocab.get(row);
+			for (Match match : index.forSearch(4).getMatches(word, 5))
+				assertTrue(!match.match().equals(word));
+		}
+	}
+
+	private static List<String> toWords(List<Match> matches) {
+		List<String> words = new ArrayList<>();
+		for (Match match : matches)
+			words.add(match.match());
+		return words;
+	}
+
+	/**
+	 * @return Model of 2000 words in 100 clusters, so that every word has near neighbours to find;
+	 * in a model of independent random vectors all words are nearly orthogonal
+	 */
+	static Word2VecModel clusteredModel() {
+		Random random = new Random(42);
+		int layerSize = 64;
+		double[] centers = new double[100 * layerSize];
+		for (int i = 0; i < centers.length; i++)
+			centers[i] = random.nextGaussian();
+
+		List<String> vocab = new ArrayList<>();
+		double[] vectors = new double[2000 * layerSize];
+		for (int i = 0; i < 2000; i++) {
+			vocab.add("word" + i);
+			int center = random.nextInt(100);
+			for (int j = 0; j < layerSize; j++)
+				vectors[i * layerSize + j] = centers[center * layerSize + j] + random.nextGaussian();
+		}
+		return new Word2VecModel(vocab, layerSize, vectors);
+	}
+}
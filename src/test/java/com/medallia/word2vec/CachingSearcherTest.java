@@ -0,0 +1,120 @@
+package com.medallia.word2vec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+import com.medallia.word2vec.Searcher.Match;
+import com.medallia.word2vec.Searcher.SemanticDifference;
+import com.medallia.word2vec.util.SyntheticModel;
+
+/**
+ * Tests for {@link CachingSearcher}
+ */
+public class CachingSearcherTest {
+	/** Test that repeated queries are answered from the cache with the results of the underlying searcher */
+	@Test public void testHitAndMiss() {
+		Searcher searcher = SyntheticModel.gaussian(500, 20, 1).forSearch();
+		CachingSearcher cache = CachingSearcher.builder().build(searcher);
+
+		List<Match> first = cache.getMatches("w1", 5);
+		assertEquals(toWords(searcher.getMatches("w1", 5)), toWords(first));
+		assertEquals(0, cache.stats().hitCount());
+		assertEquals(1, cache.stats().missCount());
+
+		assertSame(first, cache.getMatches("w1", 5));
+		assertEquals(1, cache.stats().hitCount());
+
+		// A different number of matches is a different query
+		assertEquals(4, cache.getMatches("w1", 4).size());
+		assertEquals(2, cache.stats().missCount());
+
+		float[] vector = new float[searcher.getLayerSize()];
+		searcher.getRawVector("w2", vector);
+		List<Match> fromVector = cache.getMatchesFromVector(vector, 3, ImmutableSet.of("w2"));
+		// The key is a copy of the vector, changing it afterwards does not change the cached query
+		vector[0] += 1;
+		searcher.getRawVector("w2", vector);
+		assertSame(fromVector, cache.getMatchesFromVector(vector, 3, ImmutableSet.of("w2")));
+		assertEquals(2, cache.stats().hitCount());
+
+		SemanticDifference difference = cache.similarity("w1", "w2");
+		assertEquals(toWords(searcher.similarity("w1", "w2").getMatches("w3", 5)), toWords(difference.getMatches("w3", 5)));
+		difference.getMatches("w3", 5);
+		assertEquals(3, cache.stats().hitCount());
+		assertEquals(4, cache.size());
+	}
+
+	/** Test that the least recently used results are evicted once the maximum size is reached */
+	@Test public void testEvictionBySize() {
+		CachingSearcher cache = CachingSearcher.builder().setMaximumSize(2).build(SyntheticModel.gaussian(500, 20, 1).forSearch());
+		cache.getMatches("w1", 5);
+		cache.getMatches("w2", 5);
+		cache.getMatches("w1", 5);
+		cache.getMatches("w3", 5);
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.stats().evictionCount());
+
+		// w2 was the least recently used
+		long misses = cache.stats().missCount();
+		cache.getMatches("w1", 5);
+		assertEquals(misses, cache.stats().missCount());
+		cache.getMatches("w2", 5);
+		assertEquals(misses + 1, cache.stats().missCount());
+	}
+
+	/** Test that the weight of a result is its number of matches plus one */
+	@Test public void testEvictionByWeight() {
+		CachingSearcher cache = CachingSearcher.builder().setMaximumWeight(13).build(SyntheticModel.gaussian(500, 20, 1).forSearch());
+		cache.getMatches("w1", 5);
+		cache.getMatches("w2", 5);
+		assertEquals(2, cache.size());
+		cache.getMatches("w3", 1);
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.stats().evictionCount());
+	}
+
+	/** Test that swapping the underlying searcher drops the results computed with the previous one */
+	@Test public void testInvalidationOnSwap() {
+		Searcher before = SyntheticModel.gaussian(500, 20, 1).forSearch();
+		Searcher after = SyntheticModel.gaussian(500, 20, 2).forSearch();
+		AtomicReference<Searcher> current = new AtomicReference<>(before);
+		CachingSearcher cache = CachingSearcher.builder().build(current::get);
+
+		SemanticDifference difference = cache.similarity("w1", "w2");
+		List<String> matchesBefore = toWords(cache.getMatches("w1", 5));
+		List<String> differenceBefore = toWords(difference.getMatches("w3", 5));
+		assertEquals(2, cache.size());
+
+		current.set(after);
+		List<String> matchesAfter = toWords(cache.getMatches("w1", 5));
+		assertEquals(toWords(after.getMatches("w1", 5)), matchesAfter);
+		assertNotEquals(matchesBefore, matchesAfter);
+		// A difference obtained before the swap is computed against the new searcher afterwards
+		assertEquals(toWords(after.similarity("w1", "w2").getMatches("w3", 5)), toWords(difference.getMatches("w3", 5)));
+		assertNotEquals(differenceBefore, toWords(difference.getMatches("w3", 5)));
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.stats().hitCount());
+
+		// Swapping back does not bring back the results of the first generation
+		current.set(before);
+		long misses = cache.stats().missCount();
+		assertEquals(matchesBefore, toWords(cache.getMatches("w1", 5)));
+		assertEquals(misses + 1, cache.stats().missCount());
+		assertEquals(1, cache.size());
+	}
+
+	private static List<String> toWords(List<Match> matches) {
+		List<String> words = new ArrayList<>();
+		for (Match match : matches)
+			words.add(match.match());
+		return words;
+	}
+}
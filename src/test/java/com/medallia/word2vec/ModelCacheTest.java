@@ -0,0 +1,185 @@
+package com.medallia.word2vec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.cache.CacheStats;
+import com.medallia.word2vec.util.SyntheticModel;
+
+/**
+ * Tests for {@link ModelCache}
+ */
+public class ModelCacheTest {
+	private static final int LAYER_SIZE = 20;
+
+	private ExecutorService executor;
+
+	@Before public void setUp() {
+		executor = Executors.newCachedThreadPool();
+	}
+
+	@After public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	/** Test that threads asking for a key being loaded wait for that load instead of loading it again */
+	@Test public void testSingleLoadPerKey() throws Exception {
+		CountDownLatch loading = new CountDownLatch(1);
+		CountDownLatch proceed = new CountDownLatch(1);
+		AtomicInteger loads = new AtomicInteger();
+		ModelCache<String> cache = new ModelCache<>(1L << 30, key -> {
+			loads.incrementAndGet();
+			loading.countDown();
+			await(proceed);
+			return SyntheticModel.gaussian(100, LAYER_SIZE, key.hashCode());
+		});
+
+		List<Future<Searcher>> gets = new ArrayList<>();
+		for (int i = 0; i < 8; i++)
+			gets.add(executor.submit(() -> cache.get("a")));
+		assertTrue(loading.await(10, TimeUnit.SECONDS));
+		// Give the other threads time to block on the load
+		Thread.sleep(100);
+		proceed.countDown();
+
+		Searcher searcher = gets.get(0).get(10, TimeUnit.SECONDS);
+		for (Future<Searcher> get : gets)
+			assertSame(searcher, get.get(10, TimeUnit.SECONDS));
+		assertEquals(1, loads.get());
+		assertEquals(1, cache.getStats().loadCount());
+	}
+
+	/** Test that different keys are loaded at the same time */
+	@Test public void testConcurrentLoadsOfDifferentKeys() throws Exception {
+		CountDownLatch bothLoading = new CountDownLatch(2);
+		ModelCache<String> cache = new ModelCache<>(1L << 30, key -> {
+			bothLoading.countDown();
+			// Only returns once the other key is being loaded as well
+			await(bothLoading);
+			return SyntheticModel.gaussian(100, LAYER_SIZE, key.hashCode());
+		});
+		Future<Searcher> a = executor.submit(() -> cache.get("a"));
+		Future<Searcher> b = executor.submit(() -> cache.get("b"));
+		assertNotNull(a.get(10, TimeUnit.SECONDS));
+		assertNotNull(b.get(10, TimeUnit.SECONDS));
+		assertEquals(2, cache.size());
+	}
+
+	/** Test that the least recently used models are evicted to stay within the budget, with their bytes accounted for */
+	@Test public void testEvictionAndUsedBytes() throws IOException {
+		ModelCache.Loader<String> loader = key -> SyntheticModel.gaussian(1000, LAYER_SIZE, key.hashCode());
+		long modelBytes = bytes(new ModelCache<>(1L << 30, loader).get("x"));
+		assertTrue(modelBytes > 1000 * LAYER_SIZE * 8);
+
+		// Room for two models but not three
+		ModelCache<String> cache = new ModelCache<>(2 * modelBytes + 1024, loader);
+		assertEquals(0, cache.getUsedBytes());
+		cache.get("a");
+		assertEquals(modelBytes, cache.getUsedBytes());
+		cache.get("b");
+		cache.get("a");
+		assertEquals(2 * modelBytes, cache.getUsedBytes());
+
+		cache.get("c");
+		assertEquals(2, cache.size());
+		assertEquals(2 * modelBytes, cache.getUsedBytes());
+		assertTrue(cache.getUsedBytes() <= cache.getMaxBytes());
+		assertNull(cache.getIfPresent("b"));
+		assertNotNull(cache.getIfPresent("a"));
+		assertNotNull(cache.getIfPresent("c"));
+
+		cache.invalidate("a");
+		assertEquals(modelBytes, cache.getUsedBytes());
+		cache.invalidate("a");
+		assertEquals(modelBytes, cache.getUsedBytes());
+		cache.invalidate("c");
+		assertEquals(0, cache.getUsedBytes());
+		assertEquals(0, cache.size());
+
+		// A model larger than the budget is returned but not kept
+		ModelCache<String> small = new ModelCache<>(modelBytes / 2, loader);
+		assertNotNull(small.get("a"));
+		assertEquals(0, small.size());
+		assertEquals(0, small.getUsedBytes());
+	}
+
+	/** Test that hits, misses, loads and evictions are counted */
+	@Test public void testStats() throws IOException {
+		ModelCache<String> cache = new ModelCache<>(1L << 30, key -> {
+			if (key.equals("missing"))
+				throw new IOException("No model " + key);
+			return SyntheticModel.gaussian(100, LAYER_SIZE, key.hashCode());
+		});
+		Searcher a = cache.get("a");
+		assertSame(a, cache.get("a"));
+		assertSame(a, cache.getIfPresent("a"));
+		cache.get("b");
+		try {
+			cache.get("missing");
+			fail("Loaded a missing model");
+		} catch (IOException e) {
+			assertEquals("No model missing", e.getMessage());
+		}
+
+		CacheStats stats = cache.getStats();
+		assertEquals(2, stats.hitCount());
+		assertEquals(3, stats.missCount());
+		assertEquals(2, stats.loadSuccessCount());
+		assertEquals(1, stats.loadExceptionCount());
+		assertEquals(0, stats.evictionCount());
+		assertEquals(2, cache.size());
+	}
+
+	/** Test that the model returned by the loader is normalized in place, as stated by {@link ModelCache.Loader} */
+	@Test public void testNormalizesInPlace() throws IOException {
+		Word2VecModel model = SyntheticModel.gaussian(100, LAYER_SIZE, 1);
+		ModelCache<String> cache = new ModelCache<>(1L << 30, key -> model);
+		SearcherImpl searcher = (SearcherImpl) cache.get("a");
+		assertEquals(model.getHeapBytes() + 8 * 100, searcher.getHeapBytes());
+		double norm = 0;
+		for (int j = 0; j < LAYER_SIZE; j++)
+			norm += model.vectors.get(j) * model.vectors.get(j);
+		assertEquals(1, norm, 1e-12);
+	}
+
+	/** Test that models are weighed in kilobytes rounded up, so that models over 2 GB are not capped */
+	@Test public void testWeight() {
+		assertEquals(0, ModelCache.weight(0));
+		assertEquals(1, ModelCache.weight(1));
+		assertEquals(1, ModelCache.weight(1024));
+		assertEquals(2, ModelCache.weight(1025));
+		assertEquals(3 << 20, ModelCache.weight(3L << 30));
+		assertEquals(Integer.MAX_VALUE, ModelCache.weight(Long.MAX_VALUE - 2048));
+	}
+
+	private static long bytes(Searcher searcher) {
+		return ((SearcherImpl) searcher).getHeapBytes() + ((SearcherImpl) searcher).getOffHeapBytes();
+	}
+
+	private static void await(CountDownLatch latch) throws IOException {
+		try {
+			assertTrue(latch.await(10, TimeUnit.SECONDS));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}
+	}
+}
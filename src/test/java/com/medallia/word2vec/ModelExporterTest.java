@@ -0,0 +1,132 @@
+package com.medallia.word2vec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Tests for {@link ModelExporter}
+ */
+public class ModelExporterTest {
+	/** Enough rows of this size for several batches and waves of batches */
+	private static final int VOCAB_SIZE = 10000;
+	private static final int LAYER_SIZE = 100;
+
+	private File file;
+
+	@Before public void setUp() throws IOException {
+		file = File.createTempFile(ModelExporterTest.class.getSimpleName() + "-", ".model");
+	}
+
+	@After public void tearDown() {
+		file.delete();
+	}
+
+	/** Test that the text file has every value formatted like %f and loads back as those values */
+	@Test public void testTextRoundTrip() throws IOException {
+		Word2VecModel model = randomModel();
+		model.toTextFile(file);
+
+		String[] formatted = new String[VOCAB_SIZE * LAYER_SIZE];
+		StringBuilder expected = new StringBuilder(VOCAB_SIZE + " " + LAYER_SIZE + "\n");
+		for (int i = 0; i < VOCAB_SIZE; i++) {
+			expected.append(model.vocab.get(i)).append(' ');
+			for (int j = 0; j < LAYER_SIZE; j++) {
+				formatted[i * LAYER_SIZE + j] = String.format(Locale.ROOT, "%f", model.vectors.get(i * LAYER_SIZE + j));
+				expected.append(formatted[i * LAYER_SIZE + j]).append(' ');
+			}
+			expected.append('\n');
+		}
+		byte[] expectedBytes = expected.toString().getBytes(StandardCharsets.UTF_8);
+		assertArrayEquals(expectedBytes, Files.readAllBytes(file.toPath()));
+		for (int numThreads : new int[] { 1, 3 })
+			assertArrayEquals(expectedBytes, write(model, ModelExporter.FileFormat.TEXT, numThreads));
+
+		Word2VecModel copy = Word2VecModel.fromTextFile(file);
+		assertEquals(ImmutableList.copyOf(model.getVocab()), ImmutableList.copyOf(copy.getVocab()));
+		assertEquals(LAYER_SIZE, copy.layerSize);
+		for (int i = 0; i < VOCAB_SIZE * LAYER_SIZE; i++) {
+			assertEquals(Double.parseDouble(formatted[i]), copy.vectors.get(i), 0);
+			assertEquals(model.vectors.get(i), copy.vectors.get(i), 5e-7);
+		}
+	}
+
+	/** Test that the bin file has every value as a little-endian float and loads back as those floats */
+	@Test public void testBinRoundTrip() throws IOException {
+		Word2VecModel model = randomModel();
+		model.toBinFile(file);
+
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		byte[] header = (VOCAB_SIZE + " " + LAYER_SIZE + "\n").getBytes(StandardCharsets.UTF_8);
+		expected.write(header, 0, header.length);
+		ByteBuffer row = ByteBuffer.allocate(4 * LAYER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		for (int i = 0; i < VOCAB_SIZE; i++) {
+			byte[] word = model.vocab.get(i).getBytes(StandardCharsets.UTF_8);
+			expected.write(word, 0, word.length);
+			expected.write(' ');
+			row.clear();
+			for (int j = 0; j < LAYER_SIZE; j++)
+				row.putFloat((float) model.vectors.get(i * LAYER_SIZE + j));
+			expected.write(row.array(), 0, row.capacity());
+			expected.write('\n');
+		}
+		assertArrayEquals(expected.toByteArray(), Files.readAllBytes(file.toPath()));
+		for (int numThreads : new int[] { 1, 3 })
+			assertArrayEquals(expected.toByteArray(), write(model, ModelExporter.FileFormat.BIN, numThreads));
+
+		Word2VecModel copy = Word2VecModel.fromBinFile(file);
+		assertEquals(ImmutableList.copyOf(model.getVocab()), ImmutableList.copyOf(copy.getVocab()));
+		assertEquals(LAYER_SIZE, copy.layerSize);
+		for (int i = 0; i < VOCAB_SIZE * LAYER_SIZE; i++)
+			assertEquals((float) model.vectors.get(i), copy.vectors.get(i), 0);
+	}
+
+	/** Test that an existing longer file is truncated */
+	@Test public void testOverwrite() throws IOException {
+		randomModel().toTextFile(file);
+		Word2VecModel small = new Word2VecModel(ImmutableList.of("a", "b"), 2, new double[] { 1, -0.0, 0.25, 1e9 });
+		small.toTextFile(file);
+		assertEquals("2 2\na 1.000000 -0.000000 \nb 0.250000 1000000000.000000 \n",
+				new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+	}
+
+	private static byte[] write(Word2VecModel model, ModelExporter.FileFormat format, int numThreads) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ModelExporter.write(model, Channels.newChannel(out), format, numThreads);
+		return out.toByteArray();
+	}
+
+	/** @return Model with Gaussian values of varied magnitudes, some words that are not ASCII and a few special values */
+	private static Word2VecModel randomModel() {
+		Random random = new Random(1);
+		List<String> vocab = new ArrayList<>();
+		double[] vectors = new double[VOCAB_SIZE * LAYER_SIZE];
+		for (int i = 0; i < VOCAB_SIZE; i++)
+			vocab.add(i % 11 == 0 ? "w\u00f6rd" + i : "word" + i);
+		for (int i = 0; i < vectors.length; i++)
+			vectors[i] = random.nextGaussian() * Math.pow(10, random.nextInt(5) - 3);
+		vectors[0] = -0.0;
+		vectors[1] = 1e9;
+		vectors[2] = -123456789012.5;
+		vectors[3] = 5e-7;
+		return new Word2VecModel(vocab, LAYER_SIZE, vectors);
+	}
+}
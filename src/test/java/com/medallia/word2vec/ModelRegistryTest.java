@@ -0,0 +1,259 @@
+package com.medallia.word2vec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Closer;
+import com.medallia.word2vec.util.SyntheticModel;
+
+/**
+ * Tests for {@link ModelRegistry}
+ */
+public class ModelRegistryTest {
+	private static final Searcher SEARCHER = SyntheticModel.gaussian(100, 10, 1).forSearch();
+
+	private ModelRegistry registry;
+	private ExecutorService executor;
+
+	@Before public void setUp() {
+		registry = new ModelRegistry();
+		executor = Executors.newCachedThreadPool();
+	}
+
+	@After public void tearDown() {
+		registry.close();
+		executor.shutdownNow();
+	}
+
+	/** Test that a version is released once it is replaced and its last lease is closed, and only once */
+	@Test public void testReferenceCounting() throws IOException {
+		Resource v1 = new Resource();
+		Resource v2 = new Resource();
+		registry.publish("en", "v1", v1);
+		ModelRegistry.Lease first = registry.acquire("en");
+		ModelRegistry.Lease second = registry.acquire("en");
+
+		registry.publish("en", "v2", v2);
+		assertEquals(0, v1.closed.get());
+		assertEquals("v1", first.getVersion());
+		assertEquals(SEARCHER, first.getSearcher());
+		try (ModelRegistry.Lease lease = registry.acquire("en")) {
+			assertEquals("v2", lease.getVersion());
+		}
+
+		first.close();
+		first.close();
+		assertEquals(0, v1.closed.get());
+		second.close();
+		assertEquals(1, v1.closed.get());
+		try {
+			first.getSearcher();
+			fail("Used a closed lease");
+		} catch (IllegalStateException expected) {
+		}
+
+		assertEquals(ImmutableSet.of("en"), registry.getNames());
+		assertTrue(registry.remove("en"));
+		assertFalse(registry.remove("en"));
+		assertEquals(1, v2.closed.get());
+		assertEquals(1, v1.closed.get());
+		try {
+			registry.acquire("en");
+			fail("Acquired a removed model");
+		} catch (IllegalArgumentException expected) {
+		}
+	}
+
+	/** Test that leases keep working on their version across several swaps, while unleased versions are released right away */
+	@Test public void testLeasesOutliveSwaps() throws IOException {
+		List<Resource> versions = new ArrayList<>();
+		List<ModelRegistry.Lease> leases = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			Resource version = new Resource();
+			versions.add(version);
+			registry.publish("en", "v" + i, version);
+			// Keep a lease on every other version
+			if (i % 2 == 0)
+				leases.add(registry.acquire("en"));
+		}
+		assertEquals(0, versions.get(0).closed.get());
+		assertEquals(1, versions.get(1).closed.get());
+		assertEquals(0, versions.get(2).closed.get());
+		assertEquals(1, versions.get(3).closed.get());
+		assertEquals(0, versions.get(4).closed.get());
+
+		for (int i = 0; i < leases.size(); i++) {
+			assertEquals("v" + 2 * i, leases.get(i).getVersion());
+			assertEquals(SEARCHER, leases.get(i).getSearcher());
+			leases.get(i).close();
+		}
+		assertEquals(1, versions.get(0).closed.get());
+		assertEquals(1, versions.get(2).closed.get());
+		// The current version keeps the reference of the registry
+		assertEquals(0, versions.get(4).closed.get());
+	}
+
+	/** Test that a version whose load started before a newer one is dropped when it finishes last */
+	@Test public void testStaleVersionDropped() throws Exception {
+		CountDownLatch loading = new CountDownLatch(1);
+		CountDownLatch proceed = new CountDownLatch(1);
+		Resource slow = new Resource(loading, proceed);
+		Resource fast = new Resource();
+
+		Future<?> slowPublish = executor.submit(() -> {
+			registry.publish("en", "slow", slow);
+			return null;
+		});
+		assertTrue(loading.await(10, TimeUnit.SECONDS));
+		registry.publish("en", "fast", fast);
+		proceed.countDown();
+		slowPublish.get(10, TimeUnit.SECONDS);
+
+		try (ModelRegistry.Lease lease = registry.acquire("en")) {
+			assertEquals("fast", lease.getVersion());
+		}
+		assertEquals(1, slow.closed.get());
+		assertEquals(0, fast.closed.get());
+	}
+
+	/** Test that a version loaded while the registry is closed is refused and released */
+	@Test public void testPublishDuringClose() throws Exception {
+		CountDownLatch loading = new CountDownLatch(1);
+		CountDownLatch proceed = new CountDownLatch(1);
+		Resource published = new Resource();
+		Resource slow = new Resource(loading, proceed);
+		registry.publish("en", "v1", published);
+
+		Future<?> slowPublish = executor.submit(() -> {
+			registry.publish("fr", "v1", slow);
+			return null;
+		});
+		assertTrue(loading.await(10, TimeUnit.SECONDS));
+		registry.close();
+		assertEquals(1, published.closed.get());
+		proceed.countDown();
+		try {
+			slowPublish.get(10, TimeUnit.SECONDS);
+			fail("Published into a closed registry");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+		assertEquals(1, slow.closed.get());
+		assertTrue(registry.getNames().isEmpty());
+
+		try {
+			registry.publish("en", "v2", new Resource());
+			fail("Published into a closed registry");
+		} catch (IllegalStateException expected) {
+		}
+	}
+
+	/** Test that the resources of a version are closed if its warm-up fails, and the previous version stays */
+	@Test public void testFailedWarmUp() throws IOException {
+		Resource v1 = new Resource();
+		Resource v2 = new Resource();
+		registry.publish("en", "v1", v1);
+		try {
+			registry.publish("en", "v2", v2, searcher -> {
+				throw new IllegalStateException("Warm-up failed");
+			});
+			fail("Published a version whose warm-up failed");
+		} catch (IllegalStateException expected) {
+		}
+		assertEquals(1, v2.closed.get());
+		try (ModelRegistry.Lease lease = registry.acquire("en")) {
+			assertEquals("v1", lease.getVersion());
+		}
+	}
+
+	/** Test that many threads acquiring leases during swaps always get an unreleased version, and that every version is released once */
+	@Test public void testConcurrentSwaps() throws Exception {
+		// Read by the threads acquiring leases while versions are added
+		List<Resource> versions = new CopyOnWriteArrayList<>();
+		Resource first = new Resource();
+		versions.add(first);
+		registry.publish("en", "v0", first);
+
+		AtomicInteger failures = new AtomicInteger();
+		CountDownLatch done = new CountDownLatch(1);
+		List<Future<?>> readers = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			readers.add(executor.submit(() -> {
+				while (done.getCount() > 0) {
+					try (ModelRegistry.Lease lease = registry.acquire("en")) {
+						int index = Integer.parseInt(lease.getVersion().substring(1));
+						if (versions.get(index).closed.get() != 0)
+							failures.incrementAndGet();
+						lease.getSearcher();
+					}
+				}
+			}));
+		}
+		for (int i = 1; i < 200; i++) {
+			Resource version = new Resource();
+			versions.add(version);
+			registry.publish("en", "v" + i, version);
+		}
+		done.countDown();
+		for (Future<?> reader : readers)
+			reader.get(10, TimeUnit.SECONDS);
+
+		assertEquals(0, failures.get());
+		for (int i = 0; i < versions.size() - 1; i++)
+			assertEquals("v" + i, 1, versions.get(i).closed.get());
+		assertEquals(0, versions.get(versions.size() - 1).closed.get());
+	}
+
+	/** {@link ModelRegistry.Loader} which registers a resource counting how many times it is closed */
+	private static final class Resource implements ModelRegistry.Loader, Closeable {
+		private final AtomicInteger closed = new AtomicInteger();
+		private final CountDownLatch loading;
+		private final CountDownLatch proceed;
+
+		private Resource() {
+			this(new CountDownLatch(0), new CountDownLatch(0));
+		}
+
+		/** Loads once it has counted down loading and proceed has been counted down */
+		private Resource(CountDownLatch loading, CountDownLatch proceed) {
+			this.loading = loading;
+			this.proceed = proceed;
+		}
+
+		@Override public Searcher load(Closer closer) throws IOException {
+			closer.register(this);
+			loading.countDown();
+			try {
+				proceed.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException(e);
+			}
+			return SEARCHER;
+		}
+
+		@Override public void close() {
+			closed.incrementAndGet();
+		}
+	}
+}
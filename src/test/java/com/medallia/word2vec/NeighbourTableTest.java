@@ -0,0 +1,134 @@
+package com.medallia.word2vec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.medallia.word2vec.Searcher.Match;
+import com.medallia.word2vec.util.SyntheticModel;
+
+/**
+ * Tests for {@link NeighbourTable} and {@link NeighbourTableBuilder}
+ */
+public class NeighbourTableTest {
+	private static final int NUM_NEIGHBOURS = 10;
+	private static final int BLOCK_SIZE = 8;
+
+	private File dir;
+
+	@Before public void setUp() throws IOException {
+		dir = File.createTempFile(NeighbourTableTest.class.getSimpleName() + "-", "");
+		assertTrue(dir.delete() && dir.mkdir());
+	}
+
+	@After public void tearDown() {
+		for (File file : dir.listFiles())
+			file.delete();
+		dir.delete();
+	}
+
+	/** Test that the table holds the same matches as an exact search */
+	@Test public void testMatchesExactSearch() throws Exception {
+		NormalizedWord2VecModel model = NormalizedWord2VecModel.fromWord2VecModel(SyntheticModel.gaussian(3000, 32, 42));
+		Searcher exact = model.forSearch();
+		try (NeighbourTable table = builder(model).build(new File(dir, "table"))) {
+			Searcher searcher = table.forSearch(model, exact);
+			for (int row = 0; row < model.vocab.size(); row += 37) {
+				String word = model.vocab.get(row);
+				List<Match> expected = exact.getMatches(word, NUM_NEIGHBOURS);
+				List<Match> actual = searcher.getMatches(word, NUM_NEIGHBOURS);
+				assertEquals(expected.size(), actual.size());
+				for (int i = 0; i < expected.size(); i++) {
+					assertEquals(expected.get(i).match(), actual.get(i).match());
+					assertEquals(expected.get(i).distance(), actual.get(i).distance(), 1e-6);
+				}
+			}
+		}
+	}
+
+	/** Test that a build interrupted part way resumes with the missing blocks and gives the same table as a full build */
+	@Test public void testResumeInterruptedBuild() throws Exception {
+		final NormalizedWord2VecModel model = NormalizedWord2VecModel.fromWord2VecModel(SyntheticModel.gaussian(3000, 32, 42));
+		final File resumed = new File(dir, "resumed");
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+		Thread thread = new Thread(() -> {
+			try {
+				builder(model).build(resumed).close();
+			} catch (Throwable t) {
+				failure.set(t);
+			}
+		});
+		thread.start();
+		// Interrupt once the first block is on disk
+		while (thread.isAlive() && countDoneBlocks(resumed, model) == 0)
+			Thread.sleep(1);
+		thread.interrupt();
+		thread.join();
+		assertTrue("Build was not interrupted", failure.get() instanceof InterruptedException);
+		int done = countDoneBlocks(resumed, model);
+		int numBlocks = NeighbourTable.numBlocks(model.vocab.size(), BLOCK_SIZE);
+		assertTrue(done + " of " + numBlocks + " blocks done", done > 0 && done < numBlocks);
+
+		try {
+			NeighbourTable.open(resumed, model);
+			fail("Opened an incomplete table");
+		} catch (IllegalStateException expected) {
+		}
+
+		try (
+				NeighbourTable expected = builder(model).build(new File(dir, "full"));
+				NeighbourTable actual = builder(model).build(resumed)
+		) {
+			assertEquals(numBlocks, countDoneBlocks(resumed, model));
+			for (int row = 0; row < model.vocab.size(); row++) {
+				for (int i = 0; i < NUM_NEIGHBOURS; i++) {
+					assertEquals(expected.neighbour(row, i), actual.neighbour(row, i));
+					assertEquals(expected.score(row, i), actual.score(row, i), 0);
+				}
+			}
+		}
+	}
+
+	/** Test that resuming with different parameters is refused */
+	@Test(expected = IllegalStateException.class)
+	public void testResumeDifferentTable() throws Exception {
+		NormalizedWord2VecModel model = NormalizedWord2VecModel.fromWord2VecModel(SyntheticModel.gaussian(3000, 32, 42));
+		File file = new File(dir, "table");
+		builder(model).build(file).close();
+		builder(model).setNumNeighbours(NUM_NEIGHBOURS + 1).build(file);
+	}
+
+	private static NeighbourTableBuilder builder(NormalizedWord2VecModel model) {
+		return NeighbourTable.builder(model)
+				.setNumNeighbours(NUM_NEIGHBOURS)
+				.setBlockSize(BLOCK_SIZE)
+				.useNumThreads(1);
+	}
+
+	/** @return Number of blocks flagged as done in the given table file */
+	private static int countDoneBlocks(File file, Word2VecModel model) throws IOException {
+		if (!file.exists())
+			return 0;
+		int numBlocks = NeighbourTable.numBlocks(model.vocab.size(), BLOCK_SIZE);
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			ByteBuffer flags = NeighbourTable.read(raf.getChannel(), NeighbourTable.flagsOffset(), numBlocks);
+			int done = 0;
+			for (int i = 0; i < flags.limit(); i++) {
+				if (flags.get(i) != 0)
+					done++;
+			}
+			return done;
+		}
+	}
+}
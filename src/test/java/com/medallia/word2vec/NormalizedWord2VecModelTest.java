@@ -0,0 +1,160 @@
+package com.medallia.word2vec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.medallia.word2vec.Searcher.Match;
+import com.medallia.word2vec.Searcher.UnknownWordException;
+
+/**
+ * Tests for {@link NormalizedWord2VecModel}
+ */
+public class NormalizedWord2VecModelTest {
+	private static final int VOCAB_SIZE = 200;
+	private static final int LAYER_SIZE = 30;
+
+	/** Test that normalizing into new storage leaves the source model alone, whether its buffer is on the heap or not */
+	@Test public void testCopy() {
+		double[] values = randomValues();
+		for (DoubleBuffer buffer : new DoubleBuffer[] { DoubleBuffer.wrap(values.clone()), direct(values) }) {
+			Word2VecModel model = new Word2VecModel(words(), LAYER_SIZE, buffer);
+			NormalizedWord2VecModel normalized = NormalizedWord2VecModel.fromWord2VecModel(model);
+			assertNotSame(model.vectors, normalized.vectors);
+			assertArrayEquals(values, toArray(model.vectors), 0);
+			assertEquals(0, model.vectors.position());
+			assertNormalized(values, normalized);
+		}
+	}
+
+	/** Test that normalizing in place replaces the vectors of the source model */
+	@Test public void testInPlace() {
+		double[] values = randomValues();
+		Word2VecModel model = new Word2VecModel(words(), LAYER_SIZE, values.clone());
+		NormalizedWord2VecModel normalized = NormalizedWord2VecModel.fromWord2VecModel(model, true);
+		assertSame(model.vectors, normalized.vectors);
+		assertNormalized(values, normalized);
+		assertSame(normalized, NormalizedWord2VecModel.fromWord2VecModel(normalized));
+	}
+
+	/** Test that norms and raw dot products are those of the vectors before normalization */
+	@Test public void testRawDotProduct() throws UnknownWordException {
+		double[] values = randomValues();
+		NormalizedWord2VecModel model = NormalizedWord2VecModel.fromWord2VecModel(new Word2VecModel(words(), LAYER_SIZE, values.clone()));
+		Random random = new Random(2);
+		for (int i = 0; i < 1000; i++) {
+			int row1 = random.nextInt(VOCAB_SIZE);
+			int row2 = random.nextInt(VOCAB_SIZE);
+			double dot = dot(values, row1, row2);
+			double norm1 = Math.sqrt(dot(values, row1, row1));
+			double norm2 = Math.sqrt(dot(values, row2, row2));
+			assertEquals(norm1, model.getNorm("word" + row1), 1e-12 * norm1);
+			assertEquals(dot, model.rawDotProduct("word" + row1, "word" + row2), 1e-9 * norm1 * norm2);
+			assertEquals(dot / (norm1 * norm2), model.cosineSimilarity("word" + row1, "word" + row2), 1e-9);
+		}
+		for (String word : new String[] { "word1", "unknown" }) {
+			try {
+				model.rawDotProduct(word, "unknown");
+				fail("Found the dot product of an unknown word");
+			} catch (UnknownWordException expected) {
+			}
+		}
+		try {
+			model.getNorm("unknown");
+			fail("Found the norm of an unknown word");
+		} catch (UnknownWordException expected) {
+		}
+	}
+
+	/** Test that zero vectors stay zero instead of becoming NaN, and are neither similar nor dissimilar to any word */
+	@Test public void testZeroVectors() throws UnknownWordException {
+		double[] values = randomValues();
+		for (int row : new int[] { 0, 7 }) {
+			for (int j = 0; j < LAYER_SIZE; j++)
+				values[row * LAYER_SIZE + j] = 0;
+		}
+		NormalizedWord2VecModel model = NormalizedWord2VecModel.fromWord2VecModel(new Word2VecModel(words(), LAYER_SIZE, values.clone()));
+		assertNormalized(values, model);
+		assertEquals(0, model.getNorm("word0"), 0);
+		assertEquals(0, model.rawDotProduct("word0", "word1"), 0);
+		assertEquals(0, model.rawDotProduct("word0", "word7"), 0);
+		assertEquals(0, model.cosineSimilarity("word0", "word0"), 0);
+
+		Searcher searcher = model.forSearch();
+		assertEquals(0, searcher.cosineDistance("word0", "word1"), 0);
+		List<Match> matches = searcher.getMatches("word0", 5);
+		assertEquals(5, matches.size());
+		for (Match match : matches)
+			assertEquals(0, match.distance(), 0);
+		// Zero vectors rank below the words with a positive similarity
+		for (Match match : searcher.getMatches("word1", 10)) {
+			assertTrue(match.distance() > 0);
+			assertNotEquals("word0", match.match());
+			assertNotEquals("word7", match.match());
+		}
+	}
+
+	/** Asserts that every row of the model is the corresponding row of the values scaled to unit length, or zero */
+	private static void assertNormalized(double[] values, NormalizedWord2VecModel model) {
+		for (int row = 0; row < VOCAB_SIZE; row++) {
+			double norm = Math.sqrt(dot(values, row, row));
+			assertEquals(norm, model.norm(row), 1e-12 * norm);
+			for (int j = 0; j < LAYER_SIZE; j++) {
+				double expected = norm == 0 ? 0 : values[row * LAYER_SIZE + j] / norm;
+				assertEquals(expected, model.vectors.get(row * LAYER_SIZE + j), 1e-12);
+			}
+		}
+	}
+
+	private static double dot(double[] values, int row1, int row2) {
+		double d = 0;
+		for (int j = 0; j < LAYER_SIZE; j++)
+			d += values[row1 * LAYER_SIZE + j] * values[row2 * LAYER_SIZE + j];
+		return d;
+	}
+
+	private static double[] toArray(DoubleBuffer buffer) {
+		double[] values = new double[buffer.capacity()];
+		for (int i = 0; i < values.length; i++)
+			values[i] = buffer.get(i);
+		return values;
+	}
+
+	private static DoubleBuffer direct(double[] values) {
+		DoubleBuffer buffer = ByteBuffer.allocateDirect(8 * values.length).asDoubleBuffer();
+		buffer.put(values);
+		buffer.clear();
+		return buffer;
+	}
+
+	private static List<String> words() {
+		List<String> words = new ArrayList<>();
+		for (int i = 0; i < VOCAB_SIZE; i++)
+			words.add("word" + i);
+		return words;
+	}
+
+	/** @return Gaussian values with rows of varied lengths */
+	private static double[] randomValues() {
+		Random random = new Random(1);
+		double[] values = new double[VOCAB_SIZE * LAYER_SIZE];
+		for (int row = 0; row < VOCAB_SIZE; row++) {
+			double scale = Math.pow(10, random.nextInt(7) - 3);
+			for (int j = 0; j < LAYER_SIZE; j++)
+				values[row * LAYER_SIZE + j] = scale * random.nextGaussian();
+		}
+		return values;
+	}
+}
@@ -0,0 +1,93 @@
+package com.medallia.word2vec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.medallia.word2vec.QuantizedWord2VecModel.Precision;
+import com.medallia.word2vec.Searcher.Match;
+import com.medallia.word2vec.util.SyntheticModel;
+
+/**
+ * Tests for {@link QuantizedWord2VecModel} and {@link QuantizedSearcherImpl}
+ * <p>
+ * Uses random vectors; the vectors of the test resource models are too similar to each other to rank
+ * them at reduced precision
+ */
+public class QuantizedWord2VecModelTest {
+	/** Test that similarities computed from the reduced precision vectors stay close to the exact ones */
+	@Test public void testCosineDistance() {
+		Word2VecModel model = SyntheticModel.gaussian(2000, 50, 42);
+		for (Precision precision : Precision.values()) {
+			Searcher searcher = QuantizedWord2VecModel.fromWord2VecModel(model, precision).forSearch();
+			for (int i = 1; i < 50; i++) {
+				assertEquals(exactCosine(model, 0, i),
+						searcher.cosineDistance(model.vocab.get(0), model.vocab.get(i)),
+						precision == Precision.INT8 ? 2e-2 : 2e-3);
+			}
+		}
+	}
+
+	/** Test that rescoring in full precision finds the exact best match with the exact distance */
+	@Test public void testRescoring() {
+		Word2VecModel model = SyntheticModel.gaussian(2000, 50, 42);
+		for (Precision precision : Precision.values()) {
+			Searcher searcher = QuantizedWord2VecModel.fromWord2VecModel(model, precision).forSearch(model, 4);
+			for (int i = 0; i < 20; i++) {
+				int best = -1;
+				for (int j = 0; j < model.vocab.size(); j++) {
+					if (j != i && (best == -1 || exactCosine(model, i, j) > exactCosine(model, i, best)))
+						best = j;
+				}
+
+				List<Match> matches = searcher.getMatches(model.vocab.get(i), 5);
+				assertEquals(5, matches.size());
+				assertEquals(model.vocab.get(best), matches.get(0).match());
+				assertEquals(exactCosine(model, i, best), matches.get(0).distance(), 1e-5);
+			}
+		}
+	}
+
+	/** Test that quantizing while loading a bin file gives the same model as quantizing the loaded model */
+	@Test public void testFromBinFile() throws IOException {
+		Word2VecModel model = SyntheticModel.gaussian(2000, 50, 42);
+		File file = File.createTempFile(QuantizedWord2VecModelTest.class.getSimpleName() + "-", ".bin");
+		try {
+			model.toBinFile(file);
+			Word2VecModel loaded = Word2VecModel.fromBinFile(file);
+			for (Precision precision : Precision.values()) {
+				QuantizedWord2VecModel expected = QuantizedWord2VecModel.fromWord2VecModel(loaded, precision);
+				QuantizedWord2VecModel actual = QuantizedWord2VecModel.fromBinFile(file, precision);
+				assertEquals(precision, actual.getPrecision());
+				assertEquals(model.vocab, actual.vocab);
+				float[] expectedVector = new float[model.layerSize];
+				float[] actualVector = new float[model.layerSize];
+				for (int row = 0; row < model.vocab.size(); row++) {
+					expected.getVector(row, expectedVector);
+					actual.getVector(row, actualVector);
+					assertArrayEquals(expectedVector, actualVector, 0);
+				}
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	private static double exactCosine(Word2VecModel model, int a, int b) {
+		double dot = 0, lenA = 0, lenB = 0;
+		for (int j = 0; j < model.layerSize; j++) {
+			double x = model.vectors.get(a * model.layerSize + j);
+			double y = model.vectors.get(b * model.layerSize + j);
+			dot += x * y;
+			lenA += x * x;
+			lenB += y * y;
+		}
+		return dot / Math.sqrt(lenA * lenB);
+	}
+}
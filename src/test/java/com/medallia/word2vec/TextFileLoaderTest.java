@@ -0,0 +1,250 @@
+package com.medallia.word2vec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Tests for {@link TextFileLoader}
+ */
+public class TextFileLoaderTest {
+	private File file;
+
+	@Before public void setUp() throws IOException {
+		file = File.createTempFile(TextFileLoaderTest.class.getSimpleName() + "-", ".txt");
+	}
+
+	@After public void tearDown() {
+		file.delete();
+	}
+
+	/**
+	 * Test that numbers in many formats are either parsed to exactly the same double as
+	 * {@link Double#parseDouble(String)}, or left to it
+	 */
+	@Test public void testParseDecimalRandom() {
+		Random random = new Random(1);
+		int fastPath = 0;
+		int total = 200000;
+		for (int i = 0; i < total; i++) {
+			String s = randomNumber(random);
+			double actual = parse(s);
+			if (Double.isNaN(actual))
+				continue;
+			fastPath++;
+			assertSameDouble(s, Double.parseDouble(s), actual);
+		}
+		// Most numbers printed by word2vec take the fast path
+		assertTrue(fastPath + " of " + total, fastPath > total / 2);
+	}
+
+	/** Test the boundaries of the fast path */
+	@Test public void testParseDecimalEdgeCases() {
+		assertSameDouble("-0", -0.0, parse("-0"));
+		assertSameDouble("-0.000", -0.0, parse("-0.000"));
+		assertSameDouble("-0e5", -0.0, parse("-0e5"));
+		assertSameDouble("+0", 0.0, parse("+0"));
+		assertSameDouble("0.0", 0.0, parse("0.0"));
+		assertSameDouble(".5", 0.5, parse(".5"));
+		assertSameDouble("5.", 5.0, parse("5."));
+		assertSameDouble("-1.5E+3", -1500.0, parse("-1.5E+3"));
+
+		// Up to 2^53 the digits are exact
+		assertSameDouble("9007199254740991", 9007199254740991.0, parse("9007199254740991"));
+		assertTrue(Double.isNaN(parse("9007199254740993")));
+		// 18 significant digits fit in a long but not in a double; 19 may not fit in a long
+		assertTrue(Double.isNaN(parse("0.123456789012345678")));
+		assertTrue(Double.isNaN(parse("0.1234567890123456789")));
+		// Leading zeros are not significant
+		assertSameDouble("0.000000000000000000001", 1e-21, parse("0.000000000000000000001"));
+		assertSameDouble("000000000000000000001", 1.0, parse("000000000000000000001"));
+
+		// Powers of ten are exact up to 10^22
+		assertSameDouble("1e22", 1e22, parse("1e22"));
+		assertSameDouble("1e-22", 1e-22, parse("1e-22"));
+		assertSameDouble("4.5e-21", 4.5e-21, parse("4.5e-21"));
+		assertSameDouble("123456789e14", 123456789e14, parse("123456789e14"));
+		assertTrue(Double.isNaN(parse("1e23")));
+		assertTrue(Double.isNaN(parse("1e-23")));
+		assertTrue(Double.isNaN(parse("1.5e-22")));
+
+		for (String invalid : new String[] { "", "-", ".", "e5", "1e", "1e+", "1.2.3", "1x", "Infinity", "NaN", "0x10" })
+			assertTrue(invalid, Double.isNaN(parse(invalid)));
+	}
+
+	/** Test that the loader parses every value like {@link Double#parseDouble(String)}, including those outside of the fast path */
+	@Test public void testLoad() throws IOException {
+		Random random = new Random(2);
+		List<String> words = new ArrayList<>();
+		List<String[]> values = new ArrayList<>();
+		for (int i = 0; i < 50; i++) {
+			words.add("w" + i);
+			String[] row = new String[10];
+			for (int j = 0; j < row.length; j++)
+				row[j] = randomNumber(random);
+			values.add(row);
+		}
+		values.get(0)[0] = "-0";
+		values.get(0)[1] = "0.1234567890123456789";
+		values.get(0)[2] = "1e23";
+		values.get(0)[3] = "-Infinity";
+
+		write(words, values, "\n");
+		Word2VecModel model = Word2VecModel.loader().useNumThreads(2).fromTextFile(file);
+		assertSameModel(expected(words, values, Integer.MAX_VALUE), model);
+		assertSameDouble("-0", -0.0, model.vectors.get(0));
+	}
+
+	/** Test that files with \r\n line endings load like files with \n ones */
+	@Test public void testCrLf() throws IOException {
+		Random random = new Random(3);
+		List<String> words = new ArrayList<>();
+		List<String[]> values = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			words.add("w" + i);
+			String[] row = new String[5];
+			for (int j = 0; j < row.length; j++)
+				row[j] = Float.toString((float) random.nextGaussian());
+			values.add(row);
+		}
+
+		write(words, values, "\r\n");
+		Word2VecModel model = Word2VecModel.loader().fromTextFile(file);
+		assertSameModel(expected(words, values, Integer.MAX_VALUE), model);
+
+		// Also with fewer words and dimensions, which are found with a separate pass
+		model = Word2VecModel.loader().setMaxVocabSize(7).setMaxLayerSize(3).fromTextFile(file);
+		assertSameModel(expected(words.subList(0, 7), values.subList(0, 7), 3), model);
+	}
+
+	/** Test that a file split into many ranges on line boundaries gives the same model with any number of threads */
+	@Test public void testManyRanges() throws IOException {
+		Random random = new Random(4);
+		List<String> words = new ArrayList<>();
+		List<String[]> values = new ArrayList<>();
+		// About 1 MB, so that it is split into up to 16 ranges of more than 64 KB
+		for (int i = 0; i < 4000; i++) {
+			words.add("w" + i);
+			String[] row = new String[32];
+			for (int j = 0; j < row.length; j++)
+				row[j] = String.format(Locale.ROOT, "%.6f", random.nextGaussian());
+			values.add(row);
+		}
+		write(words, values, "\n");
+		assertTrue(file.length() > 16 * 65536);
+
+		Word2VecModel expected = expected(words, values, Integer.MAX_VALUE);
+		for (int numThreads : new int[] { 1, 2, 3, 4 })
+			assertSameModel(expected, Word2VecModel.loader().useNumThreads(numThreads).fromTextFile(file));
+
+		// Filtered rows are counted per range, so every range must start at the right row
+		Predicate<String> even = word -> Integer.parseInt(word.substring(1)) % 2 == 0;
+		List<String> evenWords = new ArrayList<>();
+		List<String[]> evenValues = new ArrayList<>();
+		for (int i = 0; i < words.size(); i += 2) {
+			evenWords.add(words.get(i));
+			evenValues.add(values.get(i));
+		}
+		assertSameModel(expected(evenWords, evenValues, Integer.MAX_VALUE),
+				Word2VecModel.loader().useNumThreads(4).setWordFilter(even).fromTextFile(file));
+		assertSameModel(expected(evenWords.subList(0, 1000), evenValues.subList(0, 1000), 16),
+				Word2VecModel.loader().useNumThreads(4).setWordFilter(even).setMaxVocabSize(1000).setMaxLayerSize(16).fromTextFile(file));
+	}
+
+	/** Test that a line with the wrong number of values is rejected */
+	@Test public void testWrongLayerSize() throws IOException {
+		Files.write(file.toPath(), "2 3\na 1 2 3\nb 1 2\n".getBytes(StandardCharsets.UTF_8));
+		try {
+			Word2VecModel.loader().fromTextFile(file);
+			fail("Loaded a line with missing values");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("on line 2"));
+		}
+	}
+
+	private static double parse(String s) {
+		byte[] bytes = s.getBytes(StandardCharsets.US_ASCII);
+		return TextFileLoader.parseDecimal(bytes, bytes.length);
+	}
+
+	private static void assertSameDouble(String s, double expected, double actual) {
+		assertEquals(s, Double.doubleToRawLongBits(expected), Double.doubleToRawLongBits(actual));
+	}
+
+	/** Asserts that both models have the same words and bit for bit the same vectors */
+	private static void assertSameModel(Word2VecModel expected, Word2VecModel actual) {
+		assertEquals(ImmutableList.copyOf(expected.getVocab()), ImmutableList.copyOf(actual.getVocab()));
+		assertEquals(expected.layerSize, actual.layerSize);
+		assertEquals(expected.vectors.capacity(), actual.vectors.capacity());
+		for (int i = 0; i < expected.vectors.capacity(); i++)
+			assertSameDouble("value " + i, expected.vectors.get(i), actual.vectors.get(i));
+	}
+
+	/** @return Random number in one of the formats of the C version and of Java */
+	private static String randomNumber(Random random) {
+		switch (random.nextInt(6)) {
+			case 0:
+				return String.format(Locale.ROOT, "%f", random.nextGaussian());
+			case 1:
+				return Float.toString((float) random.nextGaussian());
+			case 2:
+				return Double.toString(random.nextGaussian() * Math.pow(10, random.nextInt(40) - 20));
+			case 3:
+				return String.format(Locale.ROOT, "%." + random.nextInt(12) + "e", random.nextGaussian() * Math.pow(10, random.nextInt(60) - 30));
+			case 4:
+				return Double.toString(Double.longBitsToDouble(random.nextLong() & 0x7FEFFFFFFFFFFFFFL));
+			default:
+				// Random digits with a random decimal point and exponent
+				StringBuilder sb = new StringBuilder(random.nextBoolean() ? "-" : "");
+				int digits = 1 + random.nextInt(20);
+				int point = random.nextInt(digits + 1);
+				for (int i = 0; i < digits; i++) {
+					if (i == point)
+						sb.append('.');
+					sb.append((char) ('0' + random.nextInt(10)));
+				}
+				if (random.nextBoolean())
+					sb.append('e').append(random.nextInt(50) - 25);
+				return sb.toString();
+		}
+	}
+
+	private void write(List<String> words, List<String[]> values, String newline) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		sb.append(words.size()).append(' ').append(values.get(0).length).append(newline);
+		for (int i = 0; i < words.size(); i++) {
+			sb.append(words.get(i));
+			for (String value : values.get(i))
+				sb.append(' ').append(value);
+			sb.append(newline);
+		}
+		Files.write(file.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	/** @return Model with the given values parsed by {@link Double#parseDouble(String)}, keeping the first layerSize of each row */
+	private static Word2VecModel expected(List<String> words, List<String[]> values, int maxLayerSize) {
+		int layerSize = Math.min(maxLayerSize, values.get(0).length);
+		double[] vectors = new double[words.size() * layerSize];
+		for (int i = 0; i < words.size(); i++) {
+			for (int j = 0; j < layerSize; j++)
+				vectors[i * layerSize + j] = Double.parseDouble(values.get(i)[j]);
+		}
+		return new Word2VecModel(words, layerSize, vectors);
+	}
+}
@@ -0,0 +1,66 @@
+package com.medallia.word2vec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.Iterables;
+import com.medallia.word2vec.neuralnetwork.NeuralNetworkType;
+import com.medallia.word2vec.util.SyntheticCorpus;
+
+/**
+ * Tests for {@link TrainingScheduler}
+ */
+public class TrainingSchedulerTest {
+	private static final int VOCAB_SIZE = 100;
+	private static final int ITERATIONS = 2;
+
+	/**
+	 * Test that more jobs than workers all complete, including jobs training in chunks on the pool
+	 * while other jobs occupy its workers, and that every word read is counted
+	 */
+	@Test(timeout = 120000) public void testManyJobs() throws InterruptedException {
+		for (int parallelism : new int[] { 1, 2 }) {
+			List<TrainingScheduler.Job> jobs = new ArrayList<>();
+			List<SyntheticCorpus> corpora = new ArrayList<>();
+			try (TrainingScheduler scheduler = new TrainingScheduler(parallelism)) {
+				for (int i = 0; i < 6; i++) {
+					SyntheticCorpus corpus = SyntheticCorpus.builder()
+							.setVocabSize(VOCAB_SIZE)
+							.setNumTokens(20000)
+							.setSentenceLength(5, 15)
+							.setSeed(i)
+							.build();
+					Word2VecTrainerBuilder builder = Word2VecModel.trainer()
+							.type(i % 2 == 0 ? NeuralNetworkType.CBOW : NeuralNetworkType.SKIP_GRAM)
+							.setLayerSize(10)
+							.setMinVocabFrequency(1)
+							.setNumIterations(ITERATIONS)
+							.useNegativeSamples(5);
+					// Every third job trains in chunks which are tasks of the pool too
+					if (i % 3 == 2)
+						builder.useNumThreads(2);
+					corpora.add(corpus);
+					jobs.add(scheduler.submit("job" + i, builder, corpus));
+				}
+				scheduler.awaitTermination();
+			}
+
+			for (int i = 0; i < jobs.size(); i++) {
+				TrainingScheduler.Job job = jobs.get(i);
+				assertTrue(job.toString(), job.isDone());
+				Word2VecModel model = job.getModel();
+				// Every word of the corpus, and </s>
+				assertEquals(VOCAB_SIZE + 1, model.vocab.size());
+				assertEquals(10, model.layerSize);
+				// Every word and end of sentence read, in every iteration
+				long sentences = Iterables.size(corpora.get(i));
+				assertEquals(job.toString(), ITERATIONS * (corpora.get(i).getNumTokens() + sentences), job.getWordsTrained());
+			}
+		}
+	}
+}
@@ -0,0 +1,175 @@
+package com.medallia.word2vec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Tests for {@link Vocabulary}
+ */
+public class VocabularyTest {
+	private File file;
+
+	@Before public void setUp() throws IOException {
+		file = File.createTempFile(VocabularyTest.class.getSimpleName() + "-", ".vocab");
+	}
+
+	@After public void tearDown() {
+		file.delete();
+	}
+
+	/** Test that words of all kinds are stored and found like in a list */
+	@Test public void testLikeList() {
+		List<String> words = randomWords(5000);
+		Vocabulary vocab = Vocabulary.copyOf(words);
+		assertEquals(words, vocab);
+		assertEquals(words.hashCode(), vocab.hashCode());
+		for (int i = 0; i < words.size(); i++) {
+			assertEquals(words.get(i), vocab.get(i));
+			assertEquals(i, vocab.indexOf(words.get(i)));
+		}
+		assertEquals(-1, vocab.indexOf("not a word"));
+		assertFalse(vocab.contains(null));
+		assertFalse(vocab.contains(42));
+		assertSame(vocab, Vocabulary.copyOf(vocab));
+
+		Vocabulary empty = Vocabulary.copyOf(ImmutableList.<String>of());
+		assertTrue(empty.isEmpty());
+		assertEquals(-1, empty.indexOf(""));
+	}
+
+	/** Test that, like {@link List#indexOf(Object)}, the first of duplicate words is found */
+	@Test public void testDuplicates() {
+		List<String> words = Arrays.asList("a", "b", "a", "", "c", "b", "", "a");
+		Vocabulary vocab = Vocabulary.copyOf(words);
+		assertEquals(words, vocab);
+		for (String word : words) {
+			assertEquals(word, words.indexOf(word), vocab.indexOf(word));
+			assertEquals(word, words.lastIndexOf(word), vocab.lastIndexOf(word));
+		}
+	}
+
+	/** Test words with equal {@link String#hashCode()} but different bytes */
+	@Test public void testCollidingHashes() {
+		// "Aa" and "BB" have the same hash code, so do all strings made of the same number of them
+		List<String> colliding = new ArrayList<>();
+		for (int i = 0; i < 1 << 10; i++) {
+			StringBuilder sb = new StringBuilder();
+			for (int bit = 0; bit < 10; bit++)
+				sb.append((i >> bit & 1) == 0 ? "Aa" : "BB");
+			colliding.add(sb.toString());
+		}
+		assertEquals(1, colliding.stream().mapToInt(String::hashCode).distinct().count());
+
+		// Keep every other one, with a duplicate and other words in between
+		List<String> words = new ArrayList<>();
+		for (int i = 0; i < colliding.size(); i += 2) {
+			words.add(colliding.get(i));
+			words.add("other" + i);
+		}
+		words.add(colliding.get(0));
+		Vocabulary vocab = Vocabulary.copyOf(words);
+		for (int i = 0; i < colliding.size(); i++)
+			assertEquals(colliding.get(i), i % 2 == 0 ? i : -1, vocab.indexOf(colliding.get(i)));
+		for (int i = 0; i < colliding.size(); i += 2)
+			assertEquals(i + 1, vocab.indexOf("other" + i));
+	}
+
+	/** Test that a written vocabulary maps back to the same words */
+	@Test public void testWriteAndMap() throws IOException {
+		List<String> words = randomWords(3000);
+		Vocabulary vocab = Vocabulary.copyOf(words);
+		vocab.writeTo(file);
+		assertEquals(vocab.sizeInBytes(), file.length());
+
+		Vocabulary mapped = Vocabulary.map(file);
+		assertEquals(words, mapped);
+		for (int i = 0; i < words.size(); i++)
+			assertEquals(words.indexOf(words.get(i)), mapped.indexOf(words.get(i)));
+		assertEquals(-1, mapped.indexOf("not a word"));
+
+		// Writing again replaces a longer file
+		Vocabulary.copyOf(words.subList(0, 10)).writeTo(file);
+		assertEquals(words.subList(0, 10), Vocabulary.map(file));
+	}
+
+	/** Test that files which are not vocabularies, or damaged ones, are refused instead of misread */
+	@Test public void testCorrupted() throws IOException {
+		Vocabulary.copyOf(Arrays.asList("one", "two", "three")).writeTo(file);
+		final byte[] valid = Files.readAllBytes(file.toPath());
+		// Header, 4 offsets, table of 8 slots, then the blob
+		final int offsets = 20;
+		final int table = offsets + 4 * 4;
+
+		assertCorrupted(Arrays.copyOf(valid, 12), "Not a vocabulary");
+		assertCorrupted(Arrays.copyOf(valid, valid.length - 1), "Vocabulary is corrupted");
+		assertCorrupted(Arrays.copyOf(valid, valid.length + 1), "Vocabulary is corrupted");
+		assertCorrupted(withInt(valid, 0, 0x12345678), "Not a vocabulary");
+		assertCorrupted(withInt(valid, 4, Vocabulary.VERSION + 1), "Not a vocabulary");
+		assertCorrupted(withInt(valid, 8, -1), "Vocabulary is corrupted");
+		assertCorrupted(withInt(valid, 12, 1 << 31), "Vocabulary is corrupted");
+		assertCorrupted(withInt(valid, offsets, 1), "Vocabulary is corrupted");
+		assertCorrupted(withInt(valid, offsets + 4, 100), "Vocabulary is corrupted at word 1");
+		assertCorrupted(withInt(valid, offsets + 12, 10), "Vocabulary is corrupted");
+
+		// A row that does not exist, and a table without an empty slot, where lookups would not end
+		int slot = 0;
+		while (ByteBuffer.wrap(valid).order(ByteOrder.LITTLE_ENDIAN).getInt(table + 8 * slot + 4) == 0)
+			slot++;
+		assertCorrupted(withInt(valid, table + 8 * slot + 4, 4), "Vocabulary is corrupted at slot " + slot);
+		byte[] full = valid.clone();
+		for (int i = 0; i < 8; i++)
+			full = withInt(full, table + 8 * i + 4, 1);
+		assertCorrupted(full, "Vocabulary is corrupted");
+	}
+
+	private void assertCorrupted(byte[] bytes, String message) throws IOException {
+		Files.write(file.toPath(), bytes);
+		try {
+			Vocabulary.map(file);
+			fail("Mapped " + message);
+		} catch (IllegalArgumentException e) {
+			assertEquals(message, e.getMessage());
+		}
+	}
+
+	private static byte[] withInt(byte[] bytes, int offset, int value) {
+		final byte[] copy = bytes.clone();
+		ByteBuffer.wrap(copy).order(ByteOrder.LITTLE_ENDIAN).putInt(offset, value);
+		return copy;
+	}
+
+	/** @return Distinct words of varied lengths, including an empty one and some that are not ASCII */
+	private static List<String> randomWords(int count) {
+		Random random = new Random(1);
+		List<String> words = new ArrayList<>();
+		words.add("");
+		while (words.size() < count) {
+			StringBuilder sb = new StringBuilder();
+			int length = 1 + random.nextInt(12);
+			for (int i = 0; i < length; i++)
+				sb.append(random.nextInt(10) == 0 ? (char) (0xe0 + random.nextInt(0x500)) : (char) ('a' + random.nextInt(26)));
+			if (!words.contains(sb.toString()))
+				words.add(sb.toString());
+		}
+		return words;
+	}
+}
@@ -8,12 +8,19 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
 import java.util.List;
 
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.google.common.base.Predicate;
+import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Floats;
 import com.medallia.word2vec.Searcher.UnknownWordException;
 import com.medallia.word2vec.util.Common;
 
@@ -47,6 +54,42 @@ public class Word2VecBinTest {
     assertEquals(binModel, txtModel);
   }
 
+  /**
+   * Tests that loading only the first words accepted by a filter, and their first dimensions, gives
+   * the same vectors from the binary and text representations as loading the full model
+   */
+  @Test
+  public void testPartialLoad() throws IOException, UnknownWordException {
+    File binFile = Common.getResourceAsFile(
+            this.getClass(),
+            "/com/medallia/word2vec/tokensModel.bin");
+    File txtFile = Common.getResourceAsFile(
+            this.getClass(),
+            "/com/medallia/word2vec/tokensModel.txt");
+    final Word2VecModel fullModel = Word2VecModel.fromBinFile(binFile);
+    final Predicate<String> filter = new Predicate<String>() {
+      @Override public boolean apply(String word) {
+        return word.length() % 2 == 0;
+      }
+    };
+
+    final Word2VecModel binModel = Word2VecModel.loader()
+            .setMaxVocabSize(100).setWordFilter(filter).setMaxLayerSize(50).fromBinFile(binFile);
+    final Word2VecModel txtModel = Word2VecModel.loader()
+            .setMaxVocabSize(100).setWordFilter(filter).setMaxLayerSize(50).useNumThreads(3).fromTextFile(txtFile);
+
+    final List<String> expectedVocab = FluentIterable.from(fullModel.getVocab()).filter(filter).limit(100).toList();
+    Assert.assertEquals(expectedVocab, ImmutableList.copyOf(binModel.getVocab()));
+    Assert.assertEquals(expectedVocab, ImmutableList.copyOf(txtModel.getVocab()));
+    Assert.assertEquals(50, binModel.layerSize);
+    for (int row = 0; row < expectedVocab.size(); row++) {
+      final int fullRow = fullModel.vocab.indexOf(expectedVocab.get(row));
+      for (int j = 0; j < 50; j++)
+        Assert.assertEquals(fullModel.vectors.get(fullRow * fullModel.layerSize + j), binModel.vectors.get(row * 50 + j), 0);
+    }
+    assertEquals(binModel, txtModel);
+  }
+
   private Path tempFile = null;
 
   /**
@@ -68,10 +111,96 @@ public class Word2VecBinTest {
     assertEquals(model, modelCopy);
   }
 
+  /**
+   * Tests that multi-byte UTF-8 words round-trip through the bin format
+   */
+  @Test
+  public void testUtf8RoundTrip() throws IOException, UnknownWordException {
+    final List<String> vocab = Arrays.asList("caf\u00e9", "na\u00efve", "\u65e5\u672c", "plain");
+    final double[] vectors = new double[vocab.size() * 3];
+    for (int i = 0; i < vectors.length; i++)
+      vectors[i] = i + 1;
+    final Word2VecModel model = new Word2VecModel(vocab, 3, vectors);
+
+    tempFile = Files.createTempFile(
+            String.format("%s-", Word2VecBinTest.class.getSimpleName()), ".bin");
+    try (final OutputStream os = Files.newOutputStream(tempFile)) {
+      model.toBinFile(os);
+    }
+
+    final Word2VecModel modelCopy = Word2VecModel.fromBinFile(tempFile.toFile());
+    Assert.assertEquals(vocab, ImmutableList.copyOf(modelCopy.getVocab()));
+    assertEquals(model, modelCopy);
+  }
+
+  /**
+   * Tests that a {@link Searcher} over a {@link BinFileIndex} gives the same results as the one
+   * over the loaded model
+   */
+  @Test
+  public void testIndex() throws IOException, UnknownWordException {
+    tempFile = Files.createTempFile(
+            String.format("%s-", Word2VecBinTest.class.getSimpleName()), ".bin");
+    Files.copy(
+            Common.getResourceAsFile(this.getClass(), "/com/medallia/word2vec/tokensModel.bin").toPath(),
+            tempFile,
+            StandardCopyOption.REPLACE_EXISTING);
+    BinFileIndex.build(tempFile.toFile());
+    final Searcher indexSearcher = BinFileIndex.open(tempFile.toFile()).forSearch();
+    final Word2VecModel model = Word2VecModel.fromBinFile(tempFile.toFile());
+    final Searcher searcher = model.forSearch();
+
+    Assert.assertFalse(indexSearcher.contains("not-a-word"));
+    Assert.assertEquals(-1, indexSearcher.getWordIndex("not-a-word"));
+    for (String word : model.getVocab()) {
+      Assert.assertEquals(searcher.getWordIndex(word), indexSearcher.getWordIndex(word));
+      Assert.assertArrayEquals(
+              Floats.toArray(searcher.getRawVector(word)),
+              Floats.toArray(indexSearcher.getRawVector(word)),
+              1e-6f);
+    }
+    Assert.assertEquals(searcher.cosineDistance("protein", "receptor"), indexSearcher.cosineDistance("protein", "receptor"), 1e-6f);
+    Assert.assertEquals(
+            Lists.transform(searcher.getMatches("protein", 10), Searcher.Match.TO_WORD),
+            Lists.transform(indexSearcher.getMatches("protein", 10), Searcher.Match.TO_WORD));
+  }
+
+  /**
+   * Tests that zero vectors read through a {@link BinFileIndex} stay zero, and that searches rank them
+   * like the searcher over the loaded model does
+   */
+  @Test
+  public void testIndexZeroVector() throws IOException, UnknownWordException {
+    tempFile = Files.createTempFile(
+            String.format("%s-", Word2VecBinTest.class.getSimpleName()), ".bin");
+    final Word2VecModel model = new Word2VecModel(
+            ImmutableList.of("a", "zero", "b", "c"),
+            3,
+            new double[] { 1, 2, 3, 0, 0, 0, 3, 2, 1, -1, 0, 1 });
+    model.toBinFile(tempFile.toFile());
+    BinFileIndex.build(tempFile.toFile());
+    try (BinFileIndex index = BinFileIndex.open(tempFile.toFile())) {
+      final Searcher indexSearcher = index.forSearch();
+      final Searcher searcher = model.forSearch();
+      Assert.assertArrayEquals(new float[3], Floats.toArray(indexSearcher.getRawVector("zero")), 0);
+      Assert.assertEquals(0, indexSearcher.cosineDistance("a", "zero"), 0);
+      for (String word : model.getVocab()) {
+        final List<Searcher.Match> matches = indexSearcher.getMatches(word, 3);
+        Assert.assertEquals(
+                Lists.transform(searcher.getMatches(word, 3), Searcher.Match.TO_WORD),
+                Lists.transform(matches, Searcher.Match.TO_WORD));
+        for (Searcher.Match match : matches)
+          assertTrue(word + ": " + match, !Double.isNaN(match.distance()));
+      }
+    }
+  }
+
   @After
   public void cleanupTempFile() throws IOException {
-    if(tempFile != null)
+    if(tempFile != null) {
+      Files.deleteIfExists(BinFileIndex.fileFor(tempFile.toFile()).toPath());
       Files.delete(tempFile);
+    }
   }
 
   private void assertEquals(
@@ -89,20 +218,17 @@ public class Word2VecBinTest {
     }
     // test vector
     for (String vocab : leftModel.getVocab()) {
-      final List<Double> leftVector = leftSearcher.getRawVector(vocab);
-      final List<Double> rightVector = rightSearcher.getRawVector(vocab);
+      final float[] leftVector = new float[leftSearcher.getLayerSize()];
+      final float[] rightVector = new float[rightSearcher.getLayerSize()];
+      leftSearcher.getRawVector(vocab, leftVector);
+      rightSearcher.getRawVector(vocab, rightVector);
       assertEquals(leftVector, rightVector);
     }
   }
 
   private void assertEquals(
-      final List<Double> leftVector,
-      final List<Double> rightVector) {
-    Assert.assertEquals(leftVector.size(), rightVector.size());
-    for (int i = 0; i < leftVector.size(); i++) {
-      double txtD = leftVector.get(i);
-      double binD = rightVector.get(i);
-      Assert.assertEquals(txtD, binD, 0.0001);
-    }
+      final float[] leftVector,
+      final float[] rightVector) {
+    Assert.assertArrayEquals(leftVector, rightVector, 0.0001f);
   }
 }
@@ -0,0 +1,238 @@
+package com.medallia.word2vec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+
+import com.medallia.word2vec.Searcher.Match;
+import com.medallia.word2vec.Word2VecTrainerBuilder.TrainingProgressListener.Stage;
+import com.medallia.word2vec.neuralnetwork.NeuralNetworkType;
+
+/**
+ * Tests for {@link Word2VecTrainerBuilder}
+ */
+public class Word2VecTrainerBuilderTest {
+	/** Words occurring at least twice in the sentences, and &lt;/s&gt; */
+	private static final int VOCAB_SIZE = 2996;
+	private static final int TOPICS = 20;
+	private static final int TOPIC_WORDS = 25;
+	private static final int STOP_WORDS = 20;
+
+	/**
+	 * Test that training with one thread gives the models of the trainer as it was before its vocabulary
+	 * hash grew with the vocabulary, recorded as hash codes of the vectors of a seeded corpus
+	 */
+	@Test public void testGolden() throws InterruptedException {
+		List<List<String>> sentences = sentences();
+		assertGolden(364924337, sentences, NeuralNetworkType.CBOW, false);
+		assertGolden(-296150734, sentences, NeuralNetworkType.SKIP_GRAM, false);
+		assertGolden(1463712307, sentences, NeuralNetworkType.CBOW, true);
+		assertGolden(-1026431078, sentences, NeuralNetworkType.SKIP_GRAM, true);
+	}
+
+	/** Test that training in chunks on several threads completes, with every word read in every iteration counted */
+	@Test(timeout = 60000) public void testChunks() throws InterruptedException {
+		List<List<String>> sentences = sentences();
+		for (int numThreads : new int[] { 2, 3 }) {
+			AtomicLong wordsTrained = new AtomicLong();
+			Word2VecModel model = Word2VecModel.trainer()
+					.useNumThreads(numThreads)
+					.setNumIterations(3)
+					.setLayerSize(20)
+					.setMinVocabFrequency(2)
+					.useNegativeSamples(5)
+					.train(sentences, Optional.<ExecutorService>absent(), wordsTrained);
+			assertEquals(VOCAB_SIZE, model.vocab.size());
+
+			// Words of the vocabulary and the end of every sentence
+			Set<String> vocab = ImmutableSet.copyOf(model.vocab);
+			long words = sentences.size();
+			for (List<String> sentence : sentences) {
+				for (String word : sentence) {
+					if (vocab.contains(word))
+						words++;
+				}
+			}
+			assertEquals(3 * words, wordsTrained.get());
+		}
+	}
+
+	/**
+	 * Test that buffering the updates of hot rows trains vectors of about the same length, whose nearest
+	 * neighbours are as often words of the same topic, as updating the rows directly
+	 */
+	@Test(timeout = 120000) public void testHotRowBuffers() throws InterruptedException {
+		List<List<String>> sentences = topicSentences();
+		Word2VecModel direct = trainTopics(sentences, 0);
+		Word2VecModel buffered = trainTopics(sentences, 50);
+
+		double directPrecision = topicPrecision(direct);
+		double bufferedPrecision = topicPrecision(buffered);
+		assertTrue("Precision without buffers " + directPrecision, directPrecision > 0.8);
+		assertEquals(directPrecision, bufferedPrecision, 0.05);
+
+		// Stop words are hot rows, topic words mostly are not
+		for (String prefix : new String[] { "stop", "topic" }) {
+			double ratio = meanNorm(buffered, prefix) / meanNorm(direct, prefix);
+			assertTrue(prefix + " norms differ by a factor of " + ratio, ratio > 0.85 && ratio < 1.15);
+		}
+	}
+
+	/** Test that the listener is told of every stage in order, and of the progress of training in between */
+	@Test public void testListener() throws InterruptedException {
+		List<List<String>> sentences = topicSentences();
+		for (int numThreads : new int[] { 1, 2 }) {
+			final List<Stage> stages = new ArrayList<>();
+			final List<Double> progresses = new ArrayList<>();
+			Word2VecModel.trainer()
+					.useNumThreads(numThreads)
+					.setNumIterations(2)
+					.setLayerSize(10)
+					.setMinVocabFrequency(1)
+					.useNegativeSamples(5)
+					.setListener((stage, progress) -> {
+						synchronized (stages) {
+							stages.add(stage);
+							progresses.add(progress);
+						}
+					})
+					.train(sentences);
+
+			List<Stage> expected = Arrays.asList(
+					Stage.ACQUIRE_VOCAB, Stage.ACQUIRE_VOCAB,
+					Stage.FILTER_SORT_VOCAB, Stage.FILTER_SORT_VOCAB,
+					Stage.CREATE_HUFFMAN_ENCODING, Stage.CREATE_HUFFMAN_ENCODING);
+			assertEquals(expected, stages.subList(0, expected.size()));
+			assertEquals(Arrays.asList(0.0, 1.0, 0.0, 1.0, 0.0, 1.0), progresses.subList(0, expected.size()));
+
+			// Training starts at 0 and ends at 1, with progress in between
+			List<Double> training = progresses.subList(expected.size(), progresses.size());
+			assertTrue("Only " + training, training.size() > 3);
+			assertEquals(0, training.get(0), 0);
+			assertEquals(1, training.get(training.size() - 1), 0);
+			for (int i = expected.size(); i < stages.size(); i++)
+				assertEquals(Stage.TRAIN_NEURAL_NETWORK, stages.get(i));
+			for (int i = 1; i < training.size(); i++)
+				assertTrue(training.toString(), training.get(i) >= training.get(i - 1));
+		}
+	}
+
+	private static Word2VecModel trainTopics(List<List<String>> sentences, int hotRows) throws InterruptedException {
+		return Word2VecModel.trainer()
+				.type(NeuralNetworkType.SKIP_GRAM)
+				.useNumThreads(2)
+				.useHotRowBuffers(hotRows)
+				.setNumIterations(5)
+				.setLayerSize(30)
+				.setMinVocabFrequency(1)
+				.useNegativeSamples(5)
+				.train(sentences);
+	}
+
+	/** @return Fraction of the nearest neighbours of topic words which are words of the same topic */
+	private static double topicPrecision(Word2VecModel model) {
+		Searcher searcher = model.forSearch();
+		int same = 0;
+		int total = 0;
+		for (int topic = 0; topic < TOPICS; topic++) {
+			for (int i = 0; i < TOPIC_WORDS; i++) {
+				for (Match match : searcher.getMatches(topicWord(topic, i), 5)) {
+					if (match.match().startsWith("topic" + topic + "_"))
+						same++;
+					total++;
+				}
+			}
+		}
+		return same / (double) total;
+	}
+
+	private static double meanNorm(Word2VecModel model, String prefix) {
+		double sum = 0;
+		int count = 0;
+		for (int i = 0; i < model.vocab.size(); i++) {
+			if (!model.vocab.get(i).startsWith(prefix))
+				continue;
+			double norm = 0;
+			for (int j = 0; j < model.layerSize; j++)
+				norm += model.vectors.get(i * model.layerSize + j) * model.vectors.get(i * model.layerSize + j);
+			sum += Math.sqrt(norm);
+			count++;
+		}
+		return sum / count;
+	}
+
+	private static String topicWord(int topic, int i) {
+		return "topic" + topic + "_" + i;
+	}
+
+	/**
+	 * @return Sentences about one topic each, made of words of that topic, the first ones more frequent,
+	 * and of stop words shared by all topics
+	 */
+	private static List<List<String>> topicSentences() {
+		Random random = new Random(1);
+		List<List<String>> sentences = new ArrayList<>();
+		for (int i = 0; i < 4000; i++) {
+			int topic = random.nextInt(TOPICS);
+			List<String> sentence = new ArrayList<>();
+			for (int j = 0; j < 10; j++) {
+				if (random.nextInt(10) < 3)
+					sentence.add("stop" + random.nextInt(STOP_WORDS));
+				else
+					sentence.add(topicWord(topic, (int) (Math.pow(random.nextDouble(), 2) * TOPIC_WORDS)));
+			}
+			sentences.add(sentence);
+		}
+		return sentences;
+	}
+
+	private static void assertGolden(int expected, List<List<String>> sentences, NeuralNetworkType type, boolean negativeSampling) throws InterruptedException {
+		Word2VecTrainerBuilder builder = Word2VecModel.trainer()
+				.type(type)
+				.useNumThreads(1)
+				.setNumIterations(2)
+				.setLayerSize(20)
+				.setWindowSize(5)
+				.setMinVocabFrequency(2)
+				.setDownSamplingRate(1e-3)
+				.setInitialLearningRate(0.025)
+				.useNegativeSamples(negativeSampling ? 5 : 0);
+		if (!negativeSampling)
+			builder.useHierarchicalSoftmax();
+		Word2VecModel model = builder.train(sentences);
+
+		assertEquals(VOCAB_SIZE, model.vocab.size());
+		assertEquals("</s>", model.vocab.get(0));
+		assertEquals(20, model.layerSize);
+		float[] vectors = new float[model.vectors.capacity()];
+		for (int i = 0; i < vectors.length; i++)
+			vectors[i] = (float) model.vectors.get(i);
+		assertEquals(type + (negativeSampling ? " with negative sampling" : " with hierarchical softmax"),
+				expected, Arrays.hashCode(vectors));
+	}
+
+	/** @return 3000 sentences of 20 words, with a skewed distribution of the words */
+	private static List<List<String>> sentences() {
+		Random random = new Random(1);
+		List<List<String>> sentences = new ArrayList<>();
+		for (int i = 0; i < 3000; i++) {
+			List<String> sentence = new ArrayList<>();
+			for (int j = 0; j < 20; j++)
+				sentence.add("w" + (int) (Math.pow(random.nextDouble(), 3) * 3000));
+			sentences.add(sentence);
+		}
+		return sentences;
+	}
+}
@@ -0,0 +1,176 @@
+package com.medallia.word2vec.ported;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+import com.medallia.word2vec.Searcher;
+import com.medallia.word2vec.Word2VecModel;
+import com.medallia.word2vec.ported.Word2VecWordAccuracy.AccuracyResult;
+import com.medallia.word2vec.ported.Word2VecWordAccuracy.Method;
+import com.medallia.word2vec.thrift.Word2VecModelThrift;
+
+/**
+ * Tests for {@link Word2VecWordAccuracy}
+ */
+public class Word2VecWordAccuracyTest {
+	private static final int NUM_SECTIONS = 8;
+	private static final int PAIRS_PER_SECTION = 10;
+	private static final int LAYER_SIZE = 30;
+
+	/** Test that the blocked parallel scan gives the same result as answering one question at a time with a {@link Searcher} */
+	@Test public void testSameAsPerQuestionSearch() {
+		Word2VecModel model = analogyModel();
+		List<String> questions = questions();
+		for (int threshold : new int[] { Integer.MAX_VALUE, 150 }) {
+			AccuracyResult expected = perQuestionAccuracy(model, threshold, questions);
+			assertTrue(expected.toString(), expected.totalAccuracy > 10 && expected.totalAccuracy < 90);
+			for (int numThreads : new int[] { 1, 3 }) {
+				AccuracyResult actual = new Word2VecWordAccuracy(model, numThreads).computeWordAccuracy(threshold, questions);
+				assertEquals(expected, actual);
+			}
+		}
+	}
+
+	/** Test that 3CosMul picks the same answers as computing its objective for every word */
+	@Test public void testCosMul() {
+		Word2VecModel model = analogyModel();
+		List<String> questions = questions();
+		Searcher searcher = model.forSearch();
+		int correct = 0;
+		int total = 0;
+		for (String line : questions) {
+			String[] words = line.toLowerCase().split(" ");
+			if (words[0].equals(":") || !searcher.contains(words[2]))
+				continue;
+			total++;
+			String best = null;
+			double bestScore = Double.NEGATIVE_INFINITY;
+			for (String word : model.getVocab()) {
+				if (word.equals(words[0]) || word.equals(words[1]) || word.equals(words[2]))
+					continue;
+				double cosA = (searcher.cosineDistance(word, words[0]) + 1) / 2;
+				double cosB = (searcher.cosineDistance(word, words[1]) + 1) / 2;
+				double cosC = (searcher.cosineDistance(word, words[2]) + 1) / 2;
+				double score = cosB * cosC / (cosA + 0.001);
+				if (score > bestScore) {
+					bestScore = score;
+					best = word;
+				}
+			}
+			if (best.equals(words[3]))
+				correct++;
+		}
+
+		AccuracyResult actual = new Word2VecWordAccuracy(model, 2).computeWordAccuracy(Integer.MAX_VALUE, questions, Method.COS_MUL);
+		assertEquals(total, actual.questionsSeen);
+		assertEquals(100.0 * correct / total, actual.totalAccuracy, 1e-9);
+	}
+
+	/**
+	 * Answers the questions one by one with {@link Searcher#getMatchesFromVector(float[], int, java.util.Set)},
+	 * as {@link Word2VecWordAccuracy} did before it scanned the vocabulary for blocks of questions
+	 */
+	private static AccuracyResult perQuestionAccuracy(Word2VecModel model, int threshold, List<String> questions) {
+		Searcher searcher = model.forSearch();
+		int sections = 0, seen = 0, total = 0, correct = 0, semantic = 0, semanticCorrect = 0, syntactic = 0, syntacticCorrect = 0;
+		for (String line : questions) {
+			String[] words = line.trim().split(" ");
+			if (words[0].equals(":") || words[0].equals("EXIT")) {
+				sections++;
+				continue;
+			}
+			total++;
+			boolean outOfVocab = false;
+			for (int i = 0; i < 4; i++) {
+				words[i] = words[i].toLowerCase();
+				if (!searcher.contains(words[i]) || searcher.getWordIndex(words[i]) >= threshold)
+					outOfVocab = true;
+			}
+			if (outOfVocab)
+				continue;
+			seen++;
+
+			float[] target = new float[LAYER_SIZE];
+			for (int i = 0; i < LAYER_SIZE; i++)
+				target[i] = (searcher.getRawVector(words[1]).get(i) - searcher.getRawVector(words[0]).get(i)) + searcher.getRawVector(words[2]).get(i);
+			String match = searcher.getMatchesFromVector(target, 5, ImmutableSet.of(words[0], words[1], words[2])).get(0).match();
+			boolean isCorrect = match.equals(words[3]);
+			if (isCorrect)
+				correct++;
+			// As in compute-accuracy.c, the first five sections are semantic
+			if (sections <= 5) {
+				semantic++;
+				semanticCorrect += isCorrect ? 1 : 0;
+			} else {
+				syntactic++;
+				syntacticCorrect += isCorrect ? 1 : 0;
+			}
+		}
+		return new AccuracyResult(seen, total,
+				correct / (double) seen * 100,
+				semanticCorrect / (double) semantic * 100,
+				syntacticCorrect / (double) syntactic * 100);
+	}
+
+	/** @return Questions a:b :: c:d over all pairs of every section, some of them with unknown words */
+	private static List<String> questions() {
+		List<String> questions = new ArrayList<>();
+		for (int s = 0; s < NUM_SECTIONS; s++) {
+			questions.add(": section" + s);
+			for (int i = 0; i < PAIRS_PER_SECTION; i++) {
+				for (int j = 0; j < PAIRS_PER_SECTION; j++) {
+					if (i != j)
+						questions.add(String.format("A%d_%d b%d_%d a%d_%d B%d_%d", s, i, s, i, s, j, s, j));
+				}
+			}
+			questions.add(String.format("a%d_0 b%d_0 unknown b%d_1", s, s, s));
+		}
+		return questions;
+	}
+
+	/**
+	 * @return Model where b_i is close to a_i plus an offset shared by the section, with enough noise
+	 * that only some analogies are answered correctly
+	 */
+	private static Word2VecModel analogyModel() {
+		Random random = new Random(3);
+		List<String> vocab = new ArrayList<>();
+		List<Double> values = new ArrayList<>();
+		for (int s = 0; s < NUM_SECTIONS; s++) {
+			double[] offset = gaussian(random, 1);
+			for (int i = 0; i < PAIRS_PER_SECTION; i++) {
+				double[] a = gaussian(random, 1);
+				double[] noise = gaussian(random, 1.2);
+				vocab.add("a" + s + "_" + i);
+				for (int j = 0; j < LAYER_SIZE; j++)
+					values.add(a[j]);
+				vocab.add("b" + s + "_" + i);
+				for (int j = 0; j < LAYER_SIZE; j++)
+					values.add(a[j] + offset[j] + noise[j]);
+			}
+		}
+		for (int i = 0; i < 100; i++) {
+			vocab.add("filler" + i);
+			for (double d : gaussian(random, 1))
+				values.add(d);
+		}
+		return Word2VecModel.fromThrift(new Word2VecModelThrift()
+				.setVocab(vocab)
+				.setLayerSize(LAYER_SIZE)
+				.setVectors(values));
+	}
+
+	private static double[] gaussian(Random random, double scale) {
+		double[] vector = new double[LAYER_SIZE];
+		for (int j = 0; j < LAYER_SIZE; j++)
+			vector[j] = scale * random.nextGaussian();
+		return vector;
+	}
+}
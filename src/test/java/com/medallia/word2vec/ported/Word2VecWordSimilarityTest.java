@@ -0,0 +1,66 @@
+package com.medallia.word2vec.ported;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.medallia.word2vec.Searcher;
+import com.medallia.word2vec.Word2VecModel;
+import com.medallia.word2vec.ported.Word2VecWordSimilarity.Dataset;
+import com.medallia.word2vec.ported.Word2VecWordSimilarity.SimilarityResult;
+import com.medallia.word2vec.thrift.Word2VecModelThrift;
+
+/**
+ * Tests for {@link Word2VecWordSimilarity}
+ */
+public class Word2VecWordSimilarityTest {
+	/** Test the correlations against values computed by hand */
+	@Test public void testCorrelation() {
+		double[] x = { 1, 2, 3, 4, 5 };
+		double[] y = { 2, 1, 4, 3, 5 };
+		assertEquals(0.8, Word2VecWordSimilarity.pearson(x, y), 1e-9);
+		assertEquals(0.8, Word2VecWordSimilarity.spearman(x, y), 1e-9);
+
+		// Spearman only depends on the ranks, ties share their average rank
+		double[] squares = { 1, 4, 9, 16, 25 };
+		assertEquals(1.0, Word2VecWordSimilarity.spearman(x, squares), 1e-9);
+		assertEquals(Math.sqrt(0.75), Word2VecWordSimilarity.spearman(new double[] { 1, 1, 2 }, new double[] { 1, 2, 3 }), 1e-9);
+
+		// Undefined without variance or with less than two pairs
+		assertTrue(Double.isNaN(Word2VecWordSimilarity.pearson(new double[] { 1, 1, 1 }, new double[] { 1, 2, 3 })));
+		assertTrue(Double.isNaN(Word2VecWordSimilarity.spearman(new double[] { 1 }, new double[] { 2 })));
+	}
+
+	/** Test that comments and empty lines are skipped and words are lower cased */
+	@Test public void testDataset() {
+		Dataset dataset = Dataset.fromLines("test", Arrays.asList("# word1\tword2\tscore", "", "Tiger\tcat\t7.35", "book\tpaper\t7.46"));
+		assertEquals(2, dataset.size());
+		assertEquals("tiger", dataset.word1(0));
+		assertEquals("cat", dataset.word2(0));
+		assertEquals("book", dataset.word1(1));
+	}
+
+	/** Test that pairs with unknown words are skipped, and the others correlated with the cosine distances */
+	@Test public void testEvaluate() {
+		Searcher searcher = Word2VecModel.fromThrift(new Word2VecModelThrift()
+				.setVocab(Arrays.asList("tiger", "cat", "book", "paper", "car"))
+				.setLayerSize(2)
+				.setVectors(Arrays.asList(1.0, 0.0, 0.8, 0.6, 0.0, 1.0, 0.8, 0.6, 0.0, 1.0)))
+				.forSearch();
+		Dataset dataset = Dataset.fromLines("test", Arrays.asList(
+				"Tiger\tcat\t7.35", "book\tpaper\t7.46", "tiger\tunicorn\t5.0", "car\ttiger\t2.0"));
+
+		SimilarityResult result = Word2VecWordSimilarity.evaluate(searcher, dataset);
+		assertEquals(3, result.pairsSeen);
+		assertEquals(4, result.pairsTotal);
+		assertEquals(0.75, result.coverage(), 1e-9);
+
+		// Cosine distances of 0.8, 0.6 and 0 swap the ranks of the first two pairs
+		assertEquals(0.5, result.spearman, 1e-9);
+		double pearson = Word2VecWordSimilarity.pearson(new double[] { 7.35, 7.46, 2.0 }, new double[] { 0.8, 0.6, 0.0 });
+		assertEquals(pearson, result.pearson, 1e-6);
+	}
+}
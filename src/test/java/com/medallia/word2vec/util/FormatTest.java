@@ -0,0 +1,84 @@
+package com.medallia.word2vec.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link Format}
+ */
+public class FormatTest {
+	/** Test that random values of all magnitudes are formatted like %f */
+	@Test public void testRandom() {
+		Random random = new Random(1);
+		for (int i = 0; i < 200000; i++) {
+			double value = random.nextGaussian() * Math.pow(10, random.nextInt(22) - 10);
+			assertFormatted(value);
+			assertFormatted((float) value);
+		}
+	}
+
+	/** Test values that are halfway between two outputs, or one ulp away from it */
+	@Test public void testNearTies() {
+		Random random = new Random(2);
+		for (int i = 0; i < 50000; i++) {
+			long units = random.nextInt(4) == 0 ? random.nextInt(2000) : (long) (random.nextDouble() * 1e15);
+			double tie = (units + 0.5) / 1e6;
+			assertFormatted(tie);
+			assertFormatted(-tie);
+			assertFormatted(Math.nextUp(tie));
+			assertFormatted(Math.nextDown(tie));
+			assertFormatted((float) tie);
+		}
+	}
+
+	/** Test values around the limit of the fast path */
+	@Test public void testNearLimit() {
+		Random random = new Random(3);
+		for (double base : new double[] { 1e9, -1e9 }) {
+			double value = base;
+			for (int i = 0; i < 1000; i++) {
+				assertFormatted(value);
+				value = Math.nextDown(Math.abs(value)) * Math.signum(base);
+			}
+			for (int i = 0; i < 20000; i++)
+				assertFormatted(base - Math.signum(base) * random.nextDouble() * 1000);
+		}
+		assertFormatted(999999999.9999995);
+		assertFormatted(999999999.9999994);
+		assertFormatted(1e9 + 0.5);
+	}
+
+	/** Test zeros, special values and extreme magnitudes */
+	@Test public void testSpecialValues() {
+		for (double value : new double[] {
+				0.0, -0.0, 1e-7, -1e-7, 4e-7, -5e-7, 5e-7, 6e-7, Double.MIN_VALUE, -Double.MIN_VALUE,
+				0.5, 1.5, 2.5, 0.0000005, 0.0000015, 1.0000005, 123.456789, -123.4567895,
+				Double.MAX_VALUE, -Double.MAX_VALUE, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+				Long.MAX_VALUE, 1e15, 1e300 })
+			assertFormatted(value);
+	}
+
+	/** Test that bytes are written at the offset, leaving the rest of the array alone */
+	@Test public void testOffset() {
+		byte[] dest = new byte[Format.MAX_FIXED_LENGTH + 10];
+		int end = Format.formatFixed(-12.5, dest, 7);
+		assertEquals("-12.500000", new String(dest, 7, end - 7, StandardCharsets.US_ASCII));
+		assertEquals(0, dest[6]);
+		assertEquals(0, dest[end]);
+
+		end = Format.formatFixed(-Double.MAX_VALUE, dest, 10);
+		assertEquals(String.format(Locale.ROOT, "%f", -Double.MAX_VALUE), new String(dest, 10, end - 10, StandardCharsets.US_ASCII));
+	}
+
+	private static void assertFormatted(double value) {
+		byte[] dest = new byte[Format.MAX_FIXED_LENGTH];
+		int end = Format.formatFixed(value, dest, 0);
+		String expected = String.format(Locale.ROOT, "%f", value);
+		assertEquals(Double.toString(value), expected, new String(dest, 0, end, StandardCharsets.US_ASCII));
+	}
+}
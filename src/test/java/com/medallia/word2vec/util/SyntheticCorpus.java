@@ -0,0 +1,199 @@
+package com.medallia.word2vec.util;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.AbstractIterator;
+import org.apache.commons.math3.distribution.IntegerDistribution;
+import org.apache.commons.math3.distribution.UniformIntegerDistribution;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Corpus of random sentences whose word frequencies follow Zipf's law, like natural text, for load
+ * testing training at any scale.
+ * <p>
+ * Sentences are generated lazily from the seed while iterating, so the corpus is never held in memory
+ * and every iteration yields the same sentences. The word of rank r (0 being the most frequent) is
+ * {@code "w" + r}, see {@link #word(int)}. Sentence lengths follow any {@link IntegerDistribution},
+ * sampled by inversion with the generator of the corpus so that the seed determines them too.
+ * <p>
+ * Only meant for tests and benchmarks, so it is not part of the published jar.
+ */
+public class SyntheticCorpus implements Iterable<List<String>> {
+	private final long numTokens;
+	private final IntegerDistribution sentenceLength;
+	private final long seed;
+	/** Cumulative, unnormalized probability of the words up to each rank */
+	private final double[] cumulative;
+
+	private SyntheticCorpus(Builder builder) {
+		this.numTokens = builder.numTokens;
+		this.sentenceLength = builder.sentenceLength;
+		this.seed = builder.seed;
+
+		cumulative = new double[builder.vocabSize];
+		double sum = 0;
+		for (int rank = 0; rank < cumulative.length; rank++) {
+			sum += 1 / Math.pow(rank + 1, builder.zipfExponent);
+			cumulative[rank] = sum;
+		}
+	}
+
+	/** @return {@link Builder} for a corpus */
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/** @return Word of the given frequency rank */
+	public static String word(int rank) {
+		return "w" + rank;
+	}
+
+	/** @return Number of words in the corpus */
+	public long getNumTokens() {
+		return numTokens;
+	}
+
+	@Override public Iterator<List<String>> iterator() {
+		final Random random = new Random(seed);
+		return new AbstractIterator<List<String>>() {
+			private long remaining = numTokens;
+
+			@Override protected List<String> computeNext() {
+				if (remaining == 0)
+					return endOfData();
+
+				final int length = (int) Math.min(remaining, nextSentenceLength(random));
+				final List<String> sentence = new ArrayList<>(length);
+				for (int i = 0; i < length; i++)
+					sentence.add(word(nextRank(random)));
+				remaining -= length;
+				return sentence;
+			}
+		};
+	}
+
+	/** @return Random sentence length, at least 1 */
+	private int nextSentenceLength(Random random) {
+		return Math.max(1, sentenceLength.inverseCumulativeProbability(random.nextDouble()));
+	}
+
+	/** @return Rank of a random word */
+	private int nextRank(Random random) {
+		final int index = Arrays.binarySearch(cumulative, random.nextDouble() * cumulative[cumulative.length - 1]);
+		return index < 0 ? Math.min(-index - 1, cumulative.length - 1) : index;
+	}
+
+	/** Writes the corpus to the given file, one sentence per line with words separated by spaces */
+	public void writeTo(File file) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+			writeTo(writer);
+		}
+	}
+
+	/** Writes the corpus, one sentence per line with words separated by spaces */
+	public void writeTo(Writer writer) throws IOException {
+		for (List<String> sentence : this) {
+			for (int i = 0; i < sentence.size(); i++) {
+				if (i > 0)
+					writer.write(' ');
+				writer.write(sentence.get(i));
+			}
+			writer.write('\n');
+		}
+		writer.flush();
+	}
+
+	/** Builder for {@link SyntheticCorpus} */
+	public static class Builder {
+		private int vocabSize = 100000;
+		private double zipfExponent = 1.0;
+		private long numTokens = 1000000;
+		private IntegerDistribution sentenceLength = new UniformIntegerDistribution(10, 30);
+		private long seed = 42;
+
+		private Builder() {
+		}
+
+		/**
+		 * Number of distinct words
+		 * <p>
+		 * Defaults to 100000
+		 */
+		public Builder setVocabSize(int vocabSize) {
+			Preconditions.checkArgument(vocabSize > 0, "Value must be positive");
+			this.vocabSize = vocabSize;
+			return this;
+		}
+
+		/**
+		 * Exponent of the Zipf distribution; the frequency of the word of rank r is proportional to
+		 * 1 / (r + 1)^exponent
+		 * <p>
+		 * Defaults to 1.0, which is close to English text
+		 */
+		public Builder setZipfExponent(double zipfExponent) {
+			Preconditions.checkArgument(zipfExponent >= 0, "Value must be non-negative");
+			this.zipfExponent = zipfExponent;
+			return this;
+		}
+
+		/**
+		 * Total number of words in the corpus
+		 * <p>
+		 * Defaults to 1000000
+		 */
+		public Builder setNumTokens(long numTokens) {
+			Preconditions.checkArgument(numTokens >= 0, "Value must be non-negative");
+			this.numTokens = numTokens;
+			return this;
+		}
+
+		/**
+		 * Sentence lengths are drawn uniformly between min and max, both inclusive
+		 * <p>
+		 * Defaults to between 10 and 30
+		 */
+		public Builder setSentenceLength(int min, int max) {
+			Preconditions.checkArgument(min > 0 && min <= max, "Invalid sentence length range [%s, %s]", min, max);
+			return setSentenceLengthDistribution(new UniformIntegerDistribution(min, max));
+		}
+
+		/**
+		 * Distribution of the sentence lengths, e.g. a {@link org.apache.commons.math3.distribution.PoissonDistribution}
+		 * or a {@link org.apache.commons.math3.distribution.GeometricDistribution} for the long tail of
+		 * natural text. Lengths below 1 are raised to 1. Only its inverse cumulative probability is
+		 * used, so its own random generator does not matter.
+		 * <p>
+		 * Defaults to uniform between 10 and 30
+		 */
+		public Builder setSentenceLengthDistribution(IntegerDistribution sentenceLength) {
+			this.sentenceLength = Preconditions.checkNotNull(sentenceLength);
+			return this;
+		}
+
+		/**
+		 * Seed of the random generator; corpora with the same settings and seed are identical
+		 * <p>
+		 * Defaults to 42
+		 */
+		public Builder setSeed(long seed) {
+			this.seed = seed;
+			return this;
+		}
+
+		/** @return {@link SyntheticCorpus} with the current settings */
+		public SyntheticCorpus build() {
+			return new SyntheticCorpus(this);
+		}
+	}
+}
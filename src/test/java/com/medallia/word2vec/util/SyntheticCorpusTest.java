@@ -0,0 +1,66 @@
+package com.medallia.word2vec.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.math3.distribution.PoissonDistribution;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+
+/**
+ * Tests for {@link SyntheticCorpus}
+ */
+public class SyntheticCorpusTest {
+	/** Test that every iteration yields the same sentences with the requested number of words */
+	@Test public void testRepeatable() {
+		SyntheticCorpus corpus = SyntheticCorpus.builder().setVocabSize(1000).setNumTokens(10001).build();
+		List<List<String>> first = ImmutableList.copyOf(corpus);
+		assertEquals(first, ImmutableList.copyOf(corpus));
+		assertEquals(10001, Iterables.size(Iterables.concat(first)));
+		for (List<String> sentence : first.subList(0, first.size() - 1))
+			assertTrue(sentence.size() >= 10 && sentence.size() <= 30);
+	}
+
+	/** Test that sentence lengths follow the given distribution */
+	@Test public void testSentenceLengthDistribution() {
+		SyntheticCorpus corpus = SyntheticCorpus.builder()
+				.setNumTokens(200000)
+				.setSentenceLengthDistribution(new PoissonDistribution(8))
+				.build();
+		List<Integer> lengths = new ArrayList<>();
+		for (List<String> sentence : corpus)
+			lengths.add(sentence.size());
+		lengths.remove(lengths.size() - 1);
+
+		double mean = 0;
+		double variance = 0;
+		for (int length : lengths)
+			mean += length;
+		mean /= lengths.size();
+		for (int length : lengths)
+			variance += (length - mean) * (length - mean);
+		variance /= lengths.size();
+		// Mean and variance of a Poisson distribution are both its parameter, slightly raised by the minimum length of 1
+		assertEquals(8, mean, 0.1);
+		assertEquals(8, variance, 0.4);
+	}
+
+	/** Test that word frequencies decrease with their rank like Zipf's law */
+	@Test public void testZipf() {
+		SyntheticCorpus corpus = SyntheticCorpus.builder().setVocabSize(1000).setNumTokens(500000).build();
+		Map<String, Integer> counts = new HashMap<>();
+		for (String word : Iterables.concat(corpus))
+			counts.merge(word, 1, Integer::sum);
+		// With an exponent of 1, the word of rank r is r + 1 times less frequent than the first one
+		double first = counts.get(SyntheticCorpus.word(0));
+		assertEquals(2, first / counts.get(SyntheticCorpus.word(1)), 0.1);
+		assertEquals(10, first / counts.get(SyntheticCorpus.word(9)), 1);
+	}
+}
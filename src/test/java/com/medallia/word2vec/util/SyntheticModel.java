@@ -0,0 +1,76 @@
+package com.medallia.word2vec.util;
+
+import com.google.common.base.Preconditions;
+import com.medallia.word2vec.Word2VecModel;
+import com.medallia.word2vec.thrift.Word2VecModelThrift;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Models with random vectors, in memory for unit tests, or written in the binary format of the C
+ * version of word2vec for load testing loaders and searchers at any size. Written vectors are streamed
+ * out as they are generated, so the model is never held in memory.
+ * <p>
+ * The vocabulary is {@link SyntheticCorpus#word(int)} for every rank, and vector components are
+ * Gaussian with zero mean and unit variance.
+ * <p>
+ * Only meant for tests and benchmarks, so it is not part of the published jar.
+ */
+public final class SyntheticModel {
+	private SyntheticModel() {
+	}
+
+	/** @return Random model with the given dimensions */
+	public static Word2VecModel gaussian(int vocabSize, int layerSize, long seed) {
+		Preconditions.checkArgument(vocabSize > 0 && layerSize > 0, "Invalid dimensions %s x %s", vocabSize, layerSize);
+		final Random random = new Random(seed);
+		final List<String> vocab = new ArrayList<>(vocabSize);
+		for (int i = 0; i < vocabSize; i++)
+			vocab.add(SyntheticCorpus.word(i));
+		final List<Double> vectors = new ArrayList<>(vocabSize * layerSize);
+		for (int i = 0; i < vocabSize * layerSize; i++)
+			vectors.add(random.nextGaussian());
+		return Word2VecModel.fromThrift(new Word2VecModelThrift()
+				.setVocab(vocab)
+				.setLayerSize(layerSize)
+				.setVectors(vectors));
+	}
+
+	/** Writes a random model with the given dimensions to the given file */
+	public static void writeBinFile(File file, int vocabSize, int layerSize, long seed) throws IOException {
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), FileUtils.ONE_MB)) {
+			writeBinFile(out, vocabSize, layerSize, seed);
+		}
+	}
+
+	/** Writes a random model with the given dimensions to the given stream */
+	public static void writeBinFile(OutputStream out, int vocabSize, int layerSize, long seed) throws IOException {
+		Preconditions.checkArgument(vocabSize > 0 && layerSize > 0, "Invalid dimensions %s x %s", vocabSize, layerSize);
+		final Random random = new Random(seed);
+		out.write(String.format("%d %d\n", vocabSize, layerSize).getBytes(StandardCharsets.UTF_8));
+
+		final ByteBuffer buffer = ByteBuffer.allocate(4 * layerSize);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);	// The C version uses this byte order.
+		for (int i = 0; i < vocabSize; i++) {
+			out.write((SyntheticCorpus.word(i) + " ").getBytes(StandardCharsets.UTF_8));
+
+			buffer.clear();
+			for (int j = 0; j < layerSize; j++)
+				buffer.putFloat((float) random.nextGaussian());
+			out.write(buffer.array());
+
+			out.write('\n');
+		}
+		out.flush();
+	}
+}
@@ -0,0 +1,102 @@
+package com.medallia.word2vec.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.thrift.TException;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.medallia.word2vec.Word2VecModel;
+import com.medallia.word2vec.thrift.Word2VecModelThrift;
+
+/**
+ * Tests for {@link ThriftUtils} with {@link Word2VecModelThrift}
+ */
+public class ThriftUtilsTest {
+	/**
+	 * Model with the words "a", "b&eacute;" and "c" and layer size 2, serialized with the compact protocol
+	 * by the version of {@link Word2VecModelThrift} before the packed fields were added
+	 */
+	private static final byte[] LIST_FORM = {
+		25, 56, 1, 97, 3, 98, -61, -87, 1, 99, 21, 4, 25, 103, -102, -103, -103, -103, -103, -103, -71, 63,
+		0, 0, 0, 0, 0, 0, 4, -64, 0, 0, 0, 0, 0, 0, 0, 0, -4, -87, -15, -46, 77, 98, 80, 63,
+		0, 0, 0, 0, 0, 0, 8, 64, 0, 0, 0, 0, 0, 0, -24, -65, 0,
+	};
+
+	/** Test that a packed model survives compact serialization with its vectors rounded to floats */
+	@Test public void testPackedRoundTrip() throws TException {
+		Word2VecModel model = randomModel();
+		Word2VecModelThrift packed = model.toPackedThrift();
+		assertFalse(packed.isSetVocab());
+		assertFalse(packed.isSetVectors());
+
+		Word2VecModel copy = Word2VecModel.fromThrift(ThriftUtils.deserializeCompact(new Word2VecModelThrift(), ThriftUtils.serializeCompact(packed)));
+		assertEquals(ImmutableList.copyOf(model.getVocab()), ImmutableList.copyOf(copy.getVocab()));
+		List<Double> expected = model.toThrift().getVectors();
+		List<Double> actual = copy.toThrift().getVectors();
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++)
+			assertEquals((float) (double) expected.get(i), actual.get(i), 0);
+
+		// Packing again gives the same bytes
+		assertEquals(packed, copy.toPackedThrift());
+	}
+
+	/** Test that the list form is still written and read exactly, with both protocols */
+	@Test public void testListRoundTrip() throws TException {
+		Word2VecModel model = randomModel();
+		Word2VecModelThrift thrift = model.toThrift();
+		assertFalse(thrift.isSetPackedVocab());
+		assertFalse(thrift.isSetPackedVectors());
+
+		Word2VecModelThrift compact = ThriftUtils.deserializeCompact(new Word2VecModelThrift(), ThriftUtils.serializeCompact(thrift));
+		assertEquals(thrift, Word2VecModel.fromThrift(compact).toThrift());
+		Word2VecModelThrift json = ThriftUtils.deserializeJson(new Word2VecModelThrift(), ThriftUtils.serializeJson(thrift));
+		assertEquals(thrift, Word2VecModel.fromThrift(json).toThrift());
+	}
+
+	/** Test that bytes written before the packed fields existed still read */
+	@Test public void testReadsListForm() throws TException {
+		Word2VecModelThrift thrift = ThriftUtils.deserializeCompact(new Word2VecModelThrift(), LIST_FORM);
+		assertFalse(thrift.isSetPackedVocab());
+		Word2VecModel model = Word2VecModel.fromThrift(thrift);
+		assertEquals(ImmutableList.of("a", "b\u00e9", "c"), ImmutableList.copyOf(model.getVocab()));
+		assertEquals(Arrays.asList(0.1, -2.5, 0.0, 1e-3, 3.0, -0.75), model.toThrift().getVectors());
+		// And write the same bytes
+		assertTrue(Arrays.equals(LIST_FORM, ThriftUtils.serializeCompact(model.toThrift())));
+	}
+
+	/** Test that an empty model round trips in the packed form */
+	@Test public void testEmpty() throws TException {
+		Word2VecModel model = Word2VecModel.fromThrift(new Word2VecModelThrift()
+				.setVocab(ImmutableList.<String>of())
+				.setLayerSize(3)
+				.setVectors(ImmutableList.<Double>of()));
+		Word2VecModel copy = Word2VecModel.fromThrift(ThriftUtils.deserializeCompact(new Word2VecModelThrift(), ThriftUtils.serializeCompact(model.toPackedThrift())));
+		assertTrue(ImmutableList.copyOf(copy.getVocab()).isEmpty());
+		assertEquals(3, copy.toThrift().getLayerSize());
+	}
+
+	/** @return Model with a few hundred words, some of them not ASCII, and Gaussian vectors */
+	private static Word2VecModel randomModel() {
+		Random random = new Random(1);
+		List<String> vocab = new ArrayList<>();
+		List<Double> vectors = new ArrayList<>();
+		for (int i = 0; i < 300; i++) {
+			vocab.add(i % 7 == 0 ? "w\u00f6rd" + i : "word" + i);
+			for (int j = 0; j < 25; j++)
+				vectors.add(random.nextGaussian());
+		}
+		return Word2VecModel.fromThrift(new Word2VecModelThrift()
+				.setVocab(vocab)
+				.setLayerSize(25)
+				.setVectors(vectors));
+	}
+}